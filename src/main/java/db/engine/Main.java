@@ -111,6 +111,7 @@ public class Main {
                 }
             }
         }
+        storage.close();
     }
 
     private static void deleteIfExists(String path) {
@@ -123,7 +124,7 @@ public class Main {
 }
 
 /* -------------------------------------------------------------------------
- * Example queries (current supported types: SELECT, INSERT, DELETE, INNER JOIN)
+ * Example queries (current supported types: SELECT, INSERT, DELETE, VACUUM, COPY, INNER JOIN)
  * Tables:
  *   students(id INT, name VARCHAR, active BOOLEAN)
  *   enrollments(id INT, student_id INT, course VARCHAR)
@@ -135,12 +136,20 @@ public class Main {
  *
  * INSERT (all columns must be provided in schema order or explicitly listed):
  * 1. INSERT INTO students (id, name, active) VALUES (11, 'Kim', true)
+ * 2. INSERT INTO students (id, name, active) VALUES (12, 'Lou', false), (13, 'Max', true)
  *
  * DELETE (optionally with WHERE; without WHERE removes all rows):
  * 1. DELETE FROM students WHERE id = 2
  * 2. DELETE FROM students WHERE active = false AND id > 5
  * 3. DELETE FROM students
  *
+ * VACUUM (compact pages holding deleted rows, truncate empty trailing pages):
+ * 1. VACUUM students
+ *
+ * COPY (bulk load a CSV file, one row per line in schema order; HEADER skips the first line):
+ * 1. COPY students FROM 'data/students.csv'
+ * 2. COPY students FROM 'data/students.csv' HEADER
+ *
  * INNER JOIN:
  * 1. SELECT * FROM students JOIN enrollments ON id = student_id
  * 2. SELECT name, course FROM students JOIN enrollments ON id = student_id WHERE active = true
@@ -14,6 +14,11 @@ public class BenchmarkConfig {
     public final boolean useNames;
     public final Path benchRoot;
     public final List<String> queries;
+    public final String replacementPolicy; // buffer pool policy: lru, clock or 2q
+    public final int bufferPoolPages;
+    public final String accessMode; // heap read path: buffered or mmap
+    public final int readAheadPages; // sequential scan prefetch window (0 = off)
+    public final int indexFanout; // B+ tree fanout of the id index (0 = sized to the page)
 
     public BenchmarkConfig(long rowsStudents,
                            long rowsEnrollments,
@@ -23,7 +28,12 @@ public class BenchmarkConfig {
                            long seed,
                            boolean useNames,
                            Path benchRoot,
-                           List<String> queries) {
+                           List<String> queries,
+                           String replacementPolicy,
+                           int bufferPoolPages,
+                           String accessMode,
+                           int readAheadPages,
+                           int indexFanout) {
         this.rowsStudents = rowsStudents;
         this.rowsEnrollments = rowsEnrollments;
         this.idPoolSize = idPoolSize;
@@ -33,6 +43,11 @@ public class BenchmarkConfig {
         this.useNames = useNames;
         this.benchRoot = benchRoot;
         this.queries = queries;
+        this.replacementPolicy = replacementPolicy;
+        this.bufferPoolPages = bufferPoolPages;
+        this.accessMode = accessMode;
+        this.readAheadPages = readAheadPages;
+        this.indexFanout = indexFanout;
     }
 
     public static BenchmarkConfig defaultConfig(Path benchRoot) {
@@ -48,7 +63,12 @@ public class BenchmarkConfig {
                 42L,     // random seed
                 true,    // use names
                 benchRoot,
-                Arrays.asList("scan", "equality_hit", "equality_seq", "equality_miss", "range", "join")
+                Arrays.asList("scan", "equality_hit", "equality_seq", "equality_miss", "range", "join", "mixed"),
+                "lru",   // buffer pool replacement policy
+                1024,    // buffer pool pages
+                "buffered", // heap access mode
+                64,      // read-ahead pages
+                0        // index fanout: sized to the page
         );
     }
 
@@ -59,6 +79,11 @@ public class BenchmarkConfig {
         int warmup = 5;
         long seed = 42L;
         boolean useNames = true;
+        String policy = "lru";
+        int poolPages = 1024;
+        String access = "buffered";
+        int readAhead = 64;
+        int indexFanout = 0;
 
         for (String a : args) {
             if (a == null) continue;
@@ -71,6 +96,16 @@ public class BenchmarkConfig {
                 try { warmup = Integer.parseInt(s.substring("--warmup=".length())); } catch (NumberFormatException ignored) {}
             } else if (s.startsWith("--seed=")) {
                 try { seed = Long.parseLong(s.substring("--seed=".length())); } catch (NumberFormatException ignored) {}
+            } else if (s.startsWith("--policy=")) {
+                policy = s.substring("--policy=".length());
+            } else if (s.startsWith("--pool-pages=")) {
+                try { poolPages = Integer.parseInt(s.substring("--pool-pages=".length())); } catch (NumberFormatException ignored) {}
+            } else if (s.startsWith("--access=")) {
+                access = s.substring("--access=".length());
+            } else if (s.startsWith("--readahead=")) {
+                try { readAhead = Integer.parseInt(s.substring("--readahead=".length())); } catch (NumberFormatException ignored) {}
+            } else if (s.startsWith("--index-fanout=")) {
+                try { indexFanout = Integer.parseInt(s.substring("--index-fanout=".length())); } catch (NumberFormatException ignored) {}
             } else if (s.equals("--no-names")) {
                 useNames = false;
             }
@@ -88,7 +123,12 @@ public class BenchmarkConfig {
                 seed,
                 useNames,
                 benchRoot,
-                Arrays.asList("scan", "equality_hit", "equality_seq", "equality_miss", "range", "join")
+                Arrays.asList("scan", "equality_hit", "equality_seq", "equality_miss", "range", "join", "mixed"),
+                policy,
+                poolPages,
+                access,
+                readAhead,
+                indexFanout
         );
     }
 }
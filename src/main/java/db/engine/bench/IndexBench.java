@@ -0,0 +1,69 @@
+package db.engine.bench;
+
+import db.engine.index.BPlusTree;
+import db.engine.storage.RID;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Microbenchmark of the in-memory B+ tree alone, without tables or the buffer pool: builds a
+ * tree of unique keys inserted in random order, then reports the heap it occupies and the
+ * latency of point lookups for present and absent keys.
+ * Usage: IndexBench [--keys=10000000] [--order=4] [--lookups=1000000] [--seed=42]
+ * Run with a heap large enough for the tree (-Xmx4g for the defaults).
+ */
+public class IndexBench {
+    public static void main(String[] args) {
+        int keys = 10_000_000;
+        int order = 4;
+        int lookups = 1_000_000;
+        long seed = 42L;
+        for (String a : args) {
+            if (a.startsWith("--keys=")) keys = Integer.parseInt(a.substring(7));
+            else if (a.startsWith("--order=")) order = Integer.parseInt(a.substring(8));
+            else if (a.startsWith("--lookups=")) lookups = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--seed=")) seed = Long.parseLong(a.substring(7));
+        }
+        Random rnd = new Random(seed);
+        int[] shuffled = new int[keys];
+        for (int i = 0; i < keys; i++) shuffled[i] = i * 2; // even keys present, odd keys missing
+        for (int i = keys - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = shuffled[i]; shuffled[i] = shuffled[j]; shuffled[j] = t;
+        }
+        int[] probes = new int[lookups];
+        for (int i = 0; i < lookups; i++) probes[i] = shuffled[rnd.nextInt(keys)];
+
+        long before = usedHeap();
+        long t0 = System.nanoTime();
+        BPlusTree tree = new BPlusTree(order);
+        for (int i = 0; i < keys; i++) tree.insert(shuffled[i], new RID(i / 100, i % 100));
+        long buildNs = System.nanoTime() - t0;
+        long heap = usedHeap() - before;
+        System.out.printf(Locale.ROOT, "build -> keys=%d order=%d time=%.0fms heap=%.1fMB (%.1f bytes/key)%n",
+                keys, order, buildNs / 1e6, heap / (1024.0 * 1024.0), (double) heap / keys);
+
+        long found = 0;
+        for (int round = 0; round < 3; round++) { // last round is measured, the others warm up
+            found = 0;
+            t0 = System.nanoTime();
+            for (int p : probes) found += tree.search(p).size();
+            long hitNs = System.nanoTime() - t0;
+            t0 = System.nanoTime();
+            for (int p : probes) found += tree.search(p + 1).size();
+            long missNs = System.nanoTime() - t0;
+            if (round == 2) {
+                System.out.printf(Locale.ROOT, "lookup_hit -> count=%d mean=%.0fns%n", lookups, (double) hitNs / lookups);
+                System.out.printf(Locale.ROOT, "lookup_miss -> count=%d mean=%.0fns%n", lookups, (double) missNs / lookups);
+            }
+        }
+        if (found != lookups) throw new IllegalStateException("expected " + lookups + " hits, found " + found);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,118 @@
+package db.engine.bench;
+
+import db.engine.index.DiskBPlusTree;
+import db.engine.storage.BufferManager;
+import db.engine.storage.RID;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Throughput of one disk B+ tree shared by several threads: builds a tree of unique keys, then
+ * for each thread count runs a read-only workload (point lookups) and a mixed one (lookups plus
+ * --write-percent inserts and deletes of keys of the thread's own) for --seconds each, and
+ * reports operations per second and the speedup over one thread.
+ * Usage: IndexConcurrencyBench [--keys=1000000] [--threads=1,2,4,8] [--seconds=3]
+ *        [--write-percent=10] [--pool-pages=4096] [--file=target/bench-concurrency.idx] [--seed=42]
+ */
+public class IndexConcurrencyBench {
+    public static void main(String[] args) throws Exception {
+        int keys = 1_000_000;
+        int[] threadCounts = {1, 2, 4, 8};
+        double seconds = 3;
+        int writePercent = 10;
+        int poolPages = 4096;
+        String file = "target/bench-concurrency.idx";
+        long seed = 42L;
+        for (String a : args) {
+            if (a.startsWith("--keys=")) keys = Integer.parseInt(a.substring(7));
+            else if (a.startsWith("--threads=")) threadCounts = Arrays.stream(a.substring(10).split(",")).mapToInt(Integer::parseInt).toArray();
+            else if (a.startsWith("--seconds=")) seconds = Double.parseDouble(a.substring(10));
+            else if (a.startsWith("--write-percent=")) writePercent = Integer.parseInt(a.substring(16));
+            else if (a.startsWith("--pool-pages=")) poolPages = Integer.parseInt(a.substring(13));
+            else if (a.startsWith("--file=")) file = a.substring(7);
+            else if (a.startsWith("--seed=")) seed = Long.parseLong(a.substring(7));
+        }
+        BufferManager pool = new BufferManager(4096, poolPages);
+        DiskBPlusTree tree = DiskBPlusTree.create(pool, file, DiskBPlusTree.maxOrder(4096));
+        Random rnd = new Random(seed);
+        int[] shuffled = new int[keys];
+        for (int i = 0; i < keys; i++) shuffled[i] = i * 2; // even keys present, odd keys free for writers
+        for (int i = keys - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = shuffled[i]; shuffled[i] = shuffled[j]; shuffled[j] = t;
+        }
+        long t0 = System.nanoTime();
+        for (int i = 0; i < keys; i++) tree.insert(shuffled[i], new RID(i / 100, i % 100));
+        System.out.printf(Locale.ROOT, "build -> keys=%d height=%d nodes=%d time=%.0fms cpus=%d%n",
+                keys, tree.height(), tree.nodeCount(), (System.nanoTime() - t0) / 1e6, Runtime.getRuntime().availableProcessors());
+
+        String[] workloads = {"read_only", "mixed"};
+        for (String workload : workloads) {
+            int writes = workload.equals("mixed") ? writePercent : 0;
+            run(tree, keys, 1, writes, Math.min(1, seconds), seed); // warm up
+            double base = 0;
+            for (int threads : threadCounts) {
+                double opsPerSec = run(tree, keys, threads, writes, seconds, seed);
+                if (base == 0) base = opsPerSec;
+                System.out.printf(Locale.ROOT, "%s -> threads=%d write_percent=%d ops_per_sec=%.0f speedup=%.2f%n",
+                        workload, threads, writes, opsPerSec, opsPerSec / base);
+            }
+        }
+        tree.close();
+        pool.getDiskManager().closeAll();
+    }
+
+    // Operations per second of threads hammering the tree for the given time. Thread t writes
+    // only odd keys congruent to t modulo the thread count, deleting each one it inserted, so
+    // the tree keeps its size and writers never touch the same entry.
+    private static double run(DiskBPlusTree tree, int keys, int threads, int writePercent, double seconds, long seed) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> counts = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                counts.add(pool.submit(() -> {
+                    Random rnd = new Random(seed + thread);
+                    long ops = 0;
+                    int written = 0;
+                    int pending = -1; // key inserted and not yet deleted
+                    while (running.get()) {
+                        if (rnd.nextInt(100) < writePercent) {
+                            if (pending < 0) {
+                                pending = ((written++ * threads + thread) % keys) * 2 + 1;
+                                tree.insert(pending, new RID(thread, written));
+                            } else {
+                                if (!tree.delete(pending, new RID(thread, written))) {
+                                    throw new IllegalStateException("lost key " + pending);
+                                }
+                                pending = -1;
+                            }
+                        } else if (tree.search(rnd.nextInt(keys) * 2).size() != 1) {
+                            throw new IllegalStateException("lookup missed a present key");
+                        }
+                        ops++;
+                    }
+                    if (pending >= 0) tree.delete(pending, new RID(thread, written));
+                    return ops;
+                }));
+            }
+            long start = System.nanoTime();
+            Thread.sleep((long) (seconds * 1000));
+            running.set(false);
+            long total = 0;
+            for (Future<Long> count : counts) total += count.get();
+            return total / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
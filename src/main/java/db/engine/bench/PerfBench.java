@@ -6,7 +6,10 @@ import db.engine.catalog.DataType;
 import db.engine.catalog.TableSchema;
 import db.engine.index.IndexManager;
 import db.engine.query.QueryProcessor;
+import db.engine.storage.AccessMode;
+import db.engine.storage.BufferManager;
 import db.engine.storage.Record;
+import db.engine.storage.StorageConfig;
 import db.engine.storage.StorageManager;
 
 import java.io.File;
@@ -22,10 +25,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Random;
 import java.util.Iterator;
+import java.util.stream.IntStream;
 
 public class PerfBench {
     private static final String STUDENTS = "bench_students";
     private static final String ENROLLMENTS = "bench_enrollments";
+    private static final String STUDENTS_ID_IDX = "bench_students_id_idx";
+    private static final int MIXED_LOOKUPS = 50; // point lookups per scan in the mixed workload
     public static void main(String[] args) throws Exception {
         Path root = Paths.get("benchdata");
         Files.createDirectories(root);
@@ -38,8 +44,16 @@ public class PerfBench {
         Files.createDirectories(dataDir);
 
         CatalogManager catalog = new CatalogManager();
-        StorageManager storage = new StorageManager(catalog);
-        IndexManager index = new IndexManager(catalog, storage);
+        StorageManager storage = new StorageManager(catalog, StorageConfig.defaults()
+                .withReplacementPolicy(cfg.replacementPolicy)
+                .withBufferPoolPages(cfg.bufferPoolPages)
+                .withAccessMode(AccessMode.parse(cfg.accessMode))
+                .withReadAheadPages(cfg.readAheadPages));
+        System.out.println("Buffer pool: " + cfg.bufferPoolPages + " pages, policy=" + storage.getBufferManager().getPolicyName()
+                + ", heap access=" + cfg.accessMode);
+        long openStart = System.nanoTime();
+        IndexManager index = new IndexManager(catalog, storage); // opens the indexes persisted by earlier runs
+        System.out.printf("Opened indexes in %.1f ms%n", (System.nanoTime() - openStart) / 1e6);
 
         // Seed tables if missing; use --reseed to force fresh data (delete existing .tbl files).
         boolean forceReseed = false;
@@ -65,26 +79,39 @@ public class PerfBench {
             // ID pool size matches students to scale with dataset
             DataPool idPool = new DataPool((int) cfg.rowsStudents, cfg.seed);
             NamePool names = new NamePool();
+            // The persisted index describes the old rows; it is rebuilt below
+            if (catalog.getIndexSchema(STUDENTS_ID_IDX) != null) index.dropIndex(STUDENTS_ID_IDX);
             seedStudents(catalog, storage, dataDir, (int) cfg.rowsStudents, idPool, cfg.useNames ? names : null, STUDENTS);
             seedEnrollments(catalog, storage, dataDir, (int) cfg.rowsEnrollments, idPool, ENROLLMENTS);
         } else {
             System.out.println("Using existing bench tables under: " + dataDir.toAbsolutePath());
         }
 
-        // Build index on students(id) used by equality/range queries
-        index.createIndex("bench_students_id_idx", STUDENTS, "id");
+        // Index on students(id) used by equality/range queries; reopened from its file when it exists
+        long indexStart = System.nanoTime();
+        int fanout = cfg.indexFanout > 0 ? cfg.indexFanout : index.defaultFanout();
+        if (catalog.getIndexSchema(STUDENTS_ID_IDX) != null && index.stats(STUDENTS_ID_IDX).fanout() != fanout) {
+            index.dropIndex(STUDENTS_ID_IDX); // built with another fanout by an earlier run
+        }
+        index.createIndex(STUDENTS_ID_IDX, STUDENTS, "id", cfg.indexFanout);
+        IndexManager.IndexStats indexStats = index.stats(STUDENTS_ID_IDX);
+        System.out.printf("Index ready: %s in %.1f ms (fanout=%d height=%d nodes=%d)%n", STUDENTS_ID_IDX,
+                (System.nanoTime() - indexStart) / 1e6, indexStats.fanout(), indexStats.height(), indexStats.nodes());
         QueryProcessor qp = new QueryProcessor(catalog, storage, index);
 
         Map<String, StatsAggregator> stats = new LinkedHashMap<>();
         Map<String, StatsAggregator> rowStats = new LinkedHashMap<>();
         Map<String, String> sqlTemplates = new LinkedHashMap<>();
+        Map<String, Double> hitRatios = new LinkedHashMap<>();
+        BufferManager pool = storage.getBufferManager();
         Map<String, String> descriptions = Map.of(
             "scan", "Full table scan of students",
             "equality_hit", "Indexed equality lookup for existing id",
             "equality_seq", "Sequential equality lookup for existing name (non-indexed VARCHAR)",
             "equality_miss", "Non-indexed equality lookup for non-existing name",
             "range", "Indexed range query on id",
-            "join", "Inner join students ↔ enrollments on id = student_id"
+            "join", "Inner join students ↔ enrollments on id = student_id",
+            "mixed", "Full scan of students followed by " + MIXED_LOOKUPS + " indexed lookups of a hot id set"
         );
         DataPool idPool = new DataPool((int) cfg.rowsStudents, cfg.seed);
         // Collect existing ids/names to ensure hit queries use present literals
@@ -110,6 +137,7 @@ public class PerfBench {
             StatsAggregator agg = new StatsAggregator();
             StatsAggregator rowsAgg = new StatsAggregator();
             for (int i = 0; i < cfg.warmup; i++) runQueryOnce(qp, storage, q, idPool, existingNames, literalRng, 0, sampledIds, sampledNames);
+            pool.resetStats(); // hit ratio covers measured runs only
             for (int i = 0; i < cfg.runs; i++) {
                 long t0 = System.nanoTime();
                 RunResult result = runQueryOnce(qp, storage, q, idPool, existingNames, literalRng, i, sampledIds, sampledNames);
@@ -121,6 +149,7 @@ public class PerfBench {
             }
             stats.put(q, agg);
             rowStats.put(q, rowsAgg);
+            hitRatios.put(q, pool.hitRatio());
                 // Print in both ms and µs to avoid 0.000ms for ultra-fast ops
                 double meanNs = agg.mean();
                 double medNs = agg.median();
@@ -134,13 +163,18 @@ public class PerfBench {
                 double minUs = minNs / 1_000.0;
                 double maxUs = maxNs / 1_000.0;
                 System.out.printf(Locale.ROOT,
-                    "%s -> count=%d mean=%.2fms median=%.3fms (%.1fµs) min=%.3fms (%.1fµs) max=%.3fms (%.1fµs)\n",
-                    q, agg.count(), meanMs, medianMs, medianUs, minMs, minUs, maxMs, maxUs);
+                    "%s -> count=%d mean=%.2fms median=%.3fms (%.1fµs) min=%.3fms (%.1fµs) max=%.3fms (%.1fµs) hit=%.1f%%\n",
+                    q, agg.count(), meanMs, medianMs, medianUs, minMs, minUs, maxMs, maxUs, pool.hitRatio() * 100.0);
+                if ("equality_hit".equals(q)) {
+                    System.out.printf(Locale.ROOT, "  index -> fanout=%d height=%d nodes=%d%n",
+                        indexStats.fanout(), indexStats.height(), indexStats.nodes());
+                }
         }
 
         ReportWriter writer = new ReportWriter(root.resolve("results"));
-        writer.writeJson(stats, rowStats, descriptions, sqlTemplates, cfg);
+        writer.writeJson(stats, rowStats, descriptions, sqlTemplates, hitRatios, indexStats, cfg);
         System.out.println("Wrote JSON to: " + root.resolve("results").toAbsolutePath());
+        storage.close();
     }
 
     private static boolean fileExists(TableSchema ts) {
@@ -168,7 +202,8 @@ public class PerfBench {
             );
             storage.createTable(students);
         } else {
-            // Recreate file for fresh seed
+            // Recreate file for fresh seed (release any open handle first)
+            storage.closeTable(tableName);
             File f = new File(existing.filePath());
             if (f.exists()) f.delete();
             try {
@@ -179,16 +214,13 @@ public class PerfBench {
             }
         }
 
-        final int LOG_INTERVAL = Math.max(1, count / 10);
-        for (int i = 1; i <= count; i++) {
+        long start = System.nanoTime();
+        int loaded = storage.bulkLoad(tableName, IntStream.rangeClosed(1, count).mapToObj(i -> {
             int id = pool.randomId();
             String name = names != null ? names.randomFullName() : "Name" + i;
-            List<Object> vals = List.of(id, name);
-            storage.insert(tableName, new Record(vals));
-            if (i % LOG_INTERVAL == 0) {
-                System.out.println("Seeded students: " + i + "/" + count);
-            }
-        }
+            return new Record(List.of(id, name));
+        }).iterator());
+        System.out.printf("Seeded students: %d rows in %.1f ms%n", loaded, (System.nanoTime() - start) / 1e6);
     }
 
     private static void seedEnrollments(CatalogManager catalog,
@@ -210,6 +242,7 @@ public class PerfBench {
             );
             storage.createTable(enrollments);
         } else {
+            storage.closeTable(tableName);
             File f = new File(existing.filePath());
             if (f.exists()) f.delete();
             try {
@@ -220,16 +253,13 @@ public class PerfBench {
             }
         }
 
-        final int LOG_INTERVAL = Math.max(1, count / 10);
-        for (int i = 1; i <= count; i++) {
+        long start = System.nanoTime();
+        int loaded = storage.bulkLoad(tableName, IntStream.rangeClosed(1, count).mapToObj(i -> {
             int sid = pool.randomId();
             String course = "C" + ((i % 200) + 1);
-            List<Object> vals = List.of(sid, course);
-            storage.insert(tableName, new Record(vals));
-            if (i % LOG_INTERVAL == 0) {
-                System.out.println("Seeded enrollments: " + i + "/" + count);
-            }
-        }
+            return new Record(List.of(sid, course));
+        }).iterator());
+        System.out.printf("Seeded enrollments: %d rows in %.1f ms%n", loaded, (System.nanoTime() - start) / 1e6);
     }
 
     private static RunResult runQueryOnce(QueryProcessor qp, StorageManager storage, String q, DataPool pool,
@@ -297,6 +327,18 @@ public class PerfBench {
                 template = "SELECT * FROM " + STUDENTS + " JOIN " + ENROLLMENTS + " ON id = student_id";
                 count = countRows(qp.execute(sql));
                 break;
+            case "mixed": {
+                // A scan sweeps the whole table through the pool; the lookups then revisit a
+                // small hot set, so the hit ratio shows whether the scan evicted it.
+                count = countRows(qp.execute("SELECT * FROM " + STUDENTS));
+                int hot = Math.min(MIXED_LOOKUPS, sampledIds.size());
+                for (int i = 0; i < MIXED_LOOKUPS; i++) {
+                    int id = sampledIds.get(i % hot);
+                    count += countRows(qp.execute("SELECT * FROM " + STUDENTS + " WHERE id = " + id));
+                }
+                template = "SELECT * FROM " + STUDENTS + "; " + MIXED_LOOKUPS + " x SELECT * FROM " + STUDENTS + " WHERE id = ?";
+                break;
+            }
             default:
                 return new RunResult(0, "");
         }
@@ -11,6 +11,8 @@ import java.util.LinkedHashMap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import db.engine.index.IndexManager;
+
 public class ReportWriter {
     private final Path outDir;
 
@@ -24,6 +26,8 @@ public class ReportWriter {
                   Map<String, StatsAggregator> rowsPerQuery,
                   Map<String, String> queryDescriptions,
                   Map<String, String> querySql,
+                  Map<String, Double> hitRatios,
+                  IndexManager.IndexStats indexStats,
                   BenchmarkConfig cfg) throws IOException {
         if (!Files.exists(outDir)) Files.createDirectories(outDir);
         String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
@@ -37,6 +41,11 @@ public class ReportWriter {
         config.put("runs", cfg.runs);
         config.put("warmup", cfg.warmup);
         config.put("names", cfg.useNames);
+        config.put("replacement_policy", cfg.replacementPolicy);
+        config.put("buffer_pool_pages", cfg.bufferPoolPages);
+        config.put("access_mode", cfg.accessMode);
+        config.put("readahead_pages", cfg.readAheadPages);
+        config.put("index_fanout", cfg.indexFanout);
         root.put("config", config);
 
         Map<String, Object> queries = new LinkedHashMap<>();
@@ -71,6 +80,14 @@ public class ReportWriter {
               entry.put("rows", r.median());
             }
           }
+          Double hr = hitRatios.get(key);
+          if (hr != null) entry.put("buffer_hit_ratio", Math.round(hr * 10000.0) / 10000.0);
+          if ("equality_hit".equals(key) && indexStats != null) {
+            // Shape of the id index the lookups descend
+            entry.put("index_fanout", indexStats.fanout());
+            entry.put("index_height", indexStats.height());
+            entry.put("index_nodes", indexStats.nodes());
+          }
           queries.put(key, entry);
         }
         root.put("queries", queries);
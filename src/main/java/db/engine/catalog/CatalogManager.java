@@ -53,6 +53,12 @@ public class CatalogManager {
         return indexes.get(name);
     }
 
+    public boolean unregisterIndex(String name) {
+        if (indexes.remove(name) == null) return false;
+        saveIndexes();
+        return true;
+    }
+
     /**
      * Expose all registered index schemas. Returned map should be treated as read-only by callers.
      */
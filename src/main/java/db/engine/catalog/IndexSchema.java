@@ -1,4 +1,12 @@
 package db.engine.catalog;
 
-// Immutable data carrier for an index definition.
-public record IndexSchema(String name, String table, String column, String filePath) {}
\ No newline at end of file
+// Immutable data carrier for an index definition. fanout is the B+ tree order (max children per
+// node); 0 sizes nodes to fill a page. Every node takes a whole page whatever its fanout, so a
+// small fanout only leaves pages mostly empty (16 fills about 1% of a 16KB page). fillFactor is
+// the percentage of each node filled when the index is built from its table; 0 uses the default.
+// Entries saved before these existed load with 0.
+public record IndexSchema(String name, String table, String column, String filePath, int fanout, int fillFactor) {
+    public IndexSchema(String name, String table, String column, String filePath) {
+        this(name, table, column, filePath, 0, 0);
+    }
+}
\ No newline at end of file
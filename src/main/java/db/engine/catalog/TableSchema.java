@@ -3,4 +3,13 @@ package db.engine.catalog;
 import java.util.List;
 
 // Immutable data carrier for a table schema.
-public record TableSchema(String name, List<ColumnSchema> columns, String filePath) {}
\ No newline at end of file
+// recordFormat: how rows are serialized in the heap file (see Record). Tables created before
+// the format existed load from the catalog with 0, the original sequential layout.
+public record TableSchema(String name, List<ColumnSchema> columns, String filePath, int recordFormat) {
+    public static final int LEGACY_RECORD_FORMAT = 0;  // columns back to back, VARCHARs length-prefixed
+    public static final int CURRENT_RECORD_FORMAT = 1; // null bitmap, fixed-width columns, VARCHAR offset table
+
+    public TableSchema(String name, List<ColumnSchema> columns, String filePath) {
+        this(name, columns, filePath, CURRENT_RECORD_FORMAT);
+    }
+}
\ No newline at end of file
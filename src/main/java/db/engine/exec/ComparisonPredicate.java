@@ -37,7 +37,7 @@ public class ComparisonPredicate implements Predicate {
 
     @Override
     public boolean test(Row row) {
-        int v = (Integer) row.values().get(columnIndex);
+        int v = row.intValue(columnIndex);
         return switch (op) {
             case EQ -> v == value;
             case LT -> v < value;
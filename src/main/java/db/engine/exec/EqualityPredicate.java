@@ -11,10 +11,12 @@ import db.engine.catalog.DataType;
 public class EqualityPredicate implements Predicate {
     private final int columnIndex;
     private final Object expected;
+    private final byte[] expectedUtf8; // VARCHAR literal pre-encoded for in-place comparison; null otherwise
 
     public EqualityPredicate(int columnIndex, Object expected) {
         this.columnIndex = columnIndex;
         this.expected = expected;
+        this.expectedUtf8 = expected instanceof String s ? s.getBytes(java.nio.charset.StandardCharsets.UTF_8) : null;
     }
 
     public static EqualityPredicate forColumnName(List<ColumnSchema> schema, String columnName, Object expected) {
@@ -40,7 +42,8 @@ public class EqualityPredicate implements Predicate {
 
     @Override
     public boolean test(Row row) {
-        Object v = row.values().get(columnIndex);
+        if (expectedUtf8 != null) return row.stringEquals(columnIndex, expectedUtf8, (String) expected);
+        Object v = row.value(columnIndex);
         return expected == null ? v == null : expected.equals(v);
     }
 
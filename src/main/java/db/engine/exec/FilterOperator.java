@@ -2,7 +2,8 @@ package db.engine.exec;
 
 /**
  * Operator that filters rows from its child based on a Predicate.
- * Pulls rows until one matches or child is exhausted.
+ * Pulls rows until one matches or child is exhausted. Lazy rows are tested in place and only
+ * the matching ones are materialized.
  */
 public class FilterOperator implements Operator {
     private final Operator child;
@@ -20,7 +21,7 @@ public class FilterOperator implements Operator {
     public Row next() {
         Row r;
         while ((r = child.next()) != null) {
-            if (predicate.test(r)) return r;
+            if (predicate.test(r)) return r.materialize();
         }
         return null;
     }
@@ -13,6 +13,7 @@ import db.engine.storage.StorageManager;
 /**
  * Index scan operator using RID APIs in IndexManager.
  * Supports equality or range scan over INT key columns.
+ * Given a column list it decodes and returns only those columns of each row, in that order.
  */
 public class IndexScanOperator implements Operator {
     private final IndexManager indexManager;
@@ -21,6 +22,7 @@ public class IndexScanOperator implements Operator {
     private final Integer equalityKey; // if non-null => equality scan
     private final Integer rangeLow;
     private final Integer rangeHigh;
+    private final int[] projection; // table columns to return; null = all
 
     private List<RID> rids;
     private Iterator<RID> iter;
@@ -30,22 +32,31 @@ public class IndexScanOperator implements Operator {
 
     // Equality constructor
     public IndexScanOperator(IndexManager indexManager, StorageManager storage, String indexName, int key) {
-        this(indexManager, storage, indexName, key, null, null);
+        this(indexManager, storage, indexName, key, null, null, null);
+    }
+
+    public IndexScanOperator(IndexManager indexManager, StorageManager storage, String indexName, int key, int[] projection) {
+        this(indexManager, storage, indexName, key, null, null, projection);
     }
 
     // Range factory
     public static IndexScanOperator range(IndexManager indexManager, StorageManager storage, String indexName, int lowInclusive, int highInclusive) {
-        return new IndexScanOperator(indexManager, storage, indexName, null, lowInclusive, highInclusive);
+        return range(indexManager, storage, indexName, lowInclusive, highInclusive, null);
+    }
+
+    public static IndexScanOperator range(IndexManager indexManager, StorageManager storage, String indexName, int lowInclusive, int highInclusive, int[] projection) {
+        return new IndexScanOperator(indexManager, storage, indexName, null, lowInclusive, highInclusive, projection);
     }
 
     private IndexScanOperator(IndexManager indexManager, StorageManager storage, String indexName,
-                              Integer equalityKey, Integer rangeLow, Integer rangeHigh) {
+                              Integer equalityKey, Integer rangeLow, Integer rangeHigh, int[] projection) {
         this.indexManager = indexManager;
         this.storage = storage;
         this.indexName = indexName;
         this.equalityKey = equalityKey;
         this.rangeLow = rangeLow;
         this.rangeHigh = rangeHigh;
+        this.projection = projection;
     }
 
     @Override
@@ -56,6 +67,7 @@ public class IndexScanOperator implements Operator {
         // Acquire schema metadata for projection propagation
         TableSchema ts = storage.getCatalog().getTableSchema(tableName);
         this.schema = (ts != null) ? ts.columns() : null;
+        if (schema != null && projection != null) schema = SeqScanOperator.project(schema, projection);
         if (equalityKey != null) {
             rids = indexManager.searchRids(indexName, equalityKey);
         } else if (rangeLow != null && rangeHigh != null) {
@@ -72,7 +84,7 @@ public class IndexScanOperator implements Operator {
         if (!opened || iter == null) return null;
         if (!iter.hasNext()) return null;
         RID rid = iter.next();
-        Record rec = storage.read(tableName, rid);
+        Record rec = projection == null ? storage.read(tableName, rid) : storage.read(tableName, rid, projection);
         return Row.of(rec, rid, schema);
     }
 
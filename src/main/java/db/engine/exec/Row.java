@@ -4,31 +4,80 @@ import java.util.List;
 
 import db.engine.storage.RID;
 import db.engine.storage.Record;
+import db.engine.storage.RecordView;
 import db.engine.catalog.ColumnSchema;
 
 /**
  * Row is an execution pipeline unit (values + RID + optional schema metadata).
  * Record is storage-level serialization; Row wraps Record with identity and schema (optionally).
+ * A lazy row (Row.lazy) reads its columns straight from the page through a RecordView and
+ * only builds the Record when values() or record() is called. It is valid only until the
+ * operator that produced it is asked for its next row; materialize() makes it safe to keep.
+ * A lazy row may expose only some of the record's columns (a scan with a pushed-down
+ * projection); column i of the row is then record column columns[i].
  */
 public class Row {
-    private final Record record;
+    private Record record;
+    private RecordView view; // non-null while the row is still lazy
+    private int[] columns;   // record columns exposed by a lazy row; null = all
     private final RID rid;
     private final List<ColumnSchema> schema; // can be null
 
     public static Row of(Record record, RID rid) { return new Row(record, rid, null); }
     public static Row of(Record record, RID rid, List<ColumnSchema> schema) { return new Row(record, rid, schema); }
 
+    public static Row lazy(RecordView view, RID rid) {
+        return lazy(view, rid, null, view.columns());
+    }
+
+    public static Row lazy(RecordView view, RID rid, int[] columns, List<ColumnSchema> schema) {
+        Row r = new Row(null, rid, schema);
+        r.view = view;
+        r.columns = columns;
+        return r;
+    }
+
     public Row(Record record, RID rid, List<ColumnSchema> schema) {
         this.record = record;
         this.rid = rid;
         this.schema = schema;
     }
 
-    public Record record() { return record; }
+    public Record record() { return materialize().record; }
     public RID rid() { return rid; }
-    public List<Object> values() { return record.getValues(); }
+    public List<Object> values() { return record().getValues(); }
     public List<ColumnSchema> schema() { return schema; }
 
+    /** One column value; a lazy row decodes just this column. */
+    public Object value(int index) {
+        if (view != null) return view.get(columns == null ? index : columns[index]);
+        return record.getValues().get(index);
+    }
+
+    /** One INT column value without boxing on a lazy row. */
+    public int intValue(int index) {
+        if (view != null) return view.getInt(columns == null ? index : columns[index]);
+        return (Integer) record.getValues().get(index);
+    }
+
+    /** True while the row still reads its columns from the page. */
+    public boolean isLazy() { return view != null; }
+
+    /** VARCHAR column equality against pre-encoded UTF-8 bytes; a lazy row compares the page bytes in place. */
+    public boolean stringEquals(int index, byte[] utf8, String expected) {
+        if (view != null) return view.stringEquals(columns == null ? index : columns[index], utf8);
+        return expected.equals(record.getValues().get(index));
+    }
+
+    /** Decode a lazy row into its own Record so it outlives the page it was read from. */
+    public Row materialize() {
+        if (view != null) {
+            record = columns == null ? view.toRecord() : view.toRecord(columns);
+            view = null;
+        }
+        return this;
+    }
+
     @Override
     public String toString() {
         return "Row" + values() + " rid=" + rid + (schema != null ? " schemaCols=" + schema.size() : "");
@@ -1,37 +1,73 @@
 package db.engine.exec;
 
-import java.util.Iterator;
 import java.util.List;
-import java.io.File;
 import java.io.IOException;
 
 import db.engine.catalog.TableSchema;
 import db.engine.catalog.ColumnSchema;
-import db.engine.storage.Record;
+import db.engine.storage.RecordView;
 import db.engine.storage.RID;
 import db.engine.storage.StorageManager;
 import db.engine.storage.HeapPage;
+import db.engine.storage.Page;
+import db.engine.storage.ReadAhead;
 
 /**
  * Physical operator that performs a full table scan
  * Used when no index is applied or when the query requests all rows
+ * With lazyRows it returns lazy rows (see Row) over a single reused RecordView, for a parent
+ * such as FilterOperator that reads a few columns and materializes the rows it keeps.
+ * Given a column list it decodes and returns only those columns, in that order (projection
+ * pushed into the scan); the other columns of a record are never read.
+ * Given a predicate (compiled against the scan's output columns) it filters in place: the
+ * predicate reads each slot's bytes on the page through a reused probe row, and a Row is
+ * built only for slots that match.
  */
 public class SeqScanOperator implements Operator {
     private final StorageManager storage;
     private final String tableName;
+    private final boolean lazyRows;
+    private final int[] projection; // table columns to return; null = all
+    private final Predicate predicate; // evaluated on the page bytes; null = every row
 
     // Metadata & state
     private TableSchema tableSchema;
     private List<ColumnSchema> columns;
+    private List<ColumnSchema> outputSchema; // columns, or the projected subset
     private int pageCount;
     private int currentPageId;
-    private Iterator<Integer> currentSlotIter;
+    private int nextSlot;  // next slot id to look at on the current page
+    private int slotCount; // slot entries on the current page
     private HeapPage currentHeapPage;
+    private Page currentPage; // pinned while its slots are being read
+    private boolean mapped;   // read pages from the memory-mapped file instead of the pool
+    private ReadAhead readAhead; // prefetches the pages ahead of a sequential scan
+    private RecordView view; // reused for every row
+    private Row probe;       // lazy row over view that the predicate tests
     private boolean opened;
 
     public SeqScanOperator(StorageManager storage, String tableName) {
+        this(storage, tableName, false);
+    }
+
+    public SeqScanOperator(StorageManager storage, String tableName, boolean lazyRows) {
+        this(storage, tableName, lazyRows, null);
+    }
+
+    public SeqScanOperator(StorageManager storage, String tableName, boolean lazyRows, int[] projection) {
+        this(storage, tableName, lazyRows, projection, null);
+    }
+
+    public SeqScanOperator(StorageManager storage, String tableName, int[] projection, Predicate predicate) {
+        this(storage, tableName, false, projection, predicate);
+    }
+
+    private SeqScanOperator(StorageManager storage, String tableName, boolean lazyRows, int[] projection, Predicate predicate) {
         this.storage = storage;
         this.tableName = tableName;
+        this.lazyRows = lazyRows;
+        this.projection = projection;
+        this.predicate = predicate;
     }
 
     @Override
@@ -39,12 +75,16 @@ public class SeqScanOperator implements Operator {
         tableSchema = storage.getCatalog().getTableSchema(tableName);
         if (tableSchema == null) throw new IllegalArgumentException("Unknown table: " + tableName);
         columns = tableSchema.columns();
-        File f = new File(tableSchema.filePath());
-        long len = f.exists() ? f.length() : 0L;
-        pageCount = len == 0 ? 0 : (int) ((len + StorageManager.PAGE_SIZE - 1) / StorageManager.PAGE_SIZE);
+        outputSchema = projection == null ? columns : project(columns, projection);
+        view = new RecordView(columns, tableSchema.recordFormat());
+        probe = null;
+        pageCount = storage.pageCount(tableName); // includes appended pages not yet written back
         currentPageId = 0;
-        currentSlotIter = null;
+        nextSlot = 0;
+        slotCount = 0;
         currentHeapPage = null;
+        mapped = storage.isMapped(tableName);
+        readAhead = mapped ? null : storage.readAhead(tableName, pageCount); // the OS reads ahead on mappings
         opened = true;
     }
 
@@ -52,38 +92,77 @@ public class SeqScanOperator implements Operator {
     public Row next() {
         if (!opened) return null;
         while (true) {
-            if (currentSlotIter == null || !currentSlotIter.hasNext()) {
-                if (currentPageId >= pageCount) return null; // done
+            if (nextSlot >= slotCount) {
+                if (currentPageId >= pageCount) { // done
+                    releasePage();
+                    return null;
+                }
                 loadPage(currentPageId++);
+                continue;
             }
-            if (currentSlotIter != null && currentSlotIter.hasNext()) {
-                int slotId = currentSlotIter.next();
-                Record rec = currentHeapPage.readRecord(slotId, columns);
-                return Row.of(rec, new RID(currentHeapPage.pageId(), slotId), columns);
+            int slotId = nextSlot++;
+            if (!currentHeapPage.isLive(slotId)) continue;
+            if (predicate != null) {
+                currentHeapPage.readView(slotId, view);
+                if (probe == null || !probe.isLazy()) probe = Row.lazy(view, null, projection, outputSchema); // a predicate may have materialized it
+                if (!predicate.test(probe)) continue;
+                RID rid = new RID(currentHeapPage.pageId(), slotId);
+                return Row.of(projection == null ? view.toRecord() : view.toRecord(projection), rid, outputSchema);
             }
+            RID rid = new RID(currentHeapPage.pageId(), slotId);
+            if (lazyRows) return Row.lazy(currentHeapPage.readView(slotId, view), rid, projection, outputSchema);
+            currentHeapPage.readView(slotId, view);
+            return Row.of(projection == null ? view.toRecord() : view.toRecord(projection), rid, outputSchema);
         }
     }
 
     private void loadPage(int pageId) {
-        byte[] bytes;
+        releasePage();
+        nextSlot = 0;
+        if (mapped) {
+            currentHeapPage = storage.mappedPage(tableName, pageId); // no copy, no pin
+            slotCount = currentHeapPage.slotCount();
+            return;
+        }
+        readAhead.onAccess(pageId);
         try {
-            bytes = storage.getBufferManager().getPage(tableSchema.filePath(), pageId).data();
+            currentPage = storage.getBufferManager().pin(tableSchema.filePath(), pageId);
         } catch (IOException e) {
             throw new RuntimeException("Failed loading page " + pageId + " for table " + tableName, e);
         }
-        currentHeapPage = HeapPage.wrap(tableSchema.filePath(), pageId, bytes, StorageManager.PAGE_SIZE);
-        currentSlotIter = currentHeapPage.liveSlotIds().iterator();
+        currentHeapPage = HeapPage.wrap(tableSchema.filePath(), pageId, currentPage.data(), StorageManager.PAGE_SIZE);
+        slotCount = currentHeapPage.slotCount();
+    }
+
+    // Unpin the page we were reading (if any)
+    private void releasePage() {
+        if (currentPage != null) {
+            currentPage.close();
+            currentPage = null;
+        }
     }
 
     @Override
     public void close() {
         opened = false;
+        releasePage();
         currentHeapPage = null;
-        currentSlotIter = null;
+        nextSlot = 0;
+        slotCount = 0;
+        readAhead = null;
+        view = null;
+        probe = null;
         columns = null;
+        outputSchema = null;
         tableSchema = null;
     }
-    
+
     @Override
-    public List<ColumnSchema> schema() { return columns; }
+    public List<ColumnSchema> schema() { return outputSchema; }
+
+    static List<ColumnSchema> project(List<ColumnSchema> columns, int[] projection) {
+        List<ColumnSchema> out = new java.util.ArrayList<>(projection.length);
+        for (int idx : projection) out.add(columns.get(idx));
+        return out;
+    }
 }
@@ -1,10 +1,20 @@
 package db.engine.index;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import db.engine.storage.RID;
 
+/**
+ * In-memory B+ tree from INT keys to record ids.
+ * Nodes hold their keys in an int[] and leaves their record ids in a parallel long[] of
+ * packed RIDs (pageId << 32 | slotId), so comparisons never unbox and a leaf entry costs
+ * 12 bytes instead of a boxed key, a list and a RID object. A duplicate key is stored as one
+ * entry per RID, next to the existing ones; a run of duplicates may span several leaves,
+ * so lookups start at the leftmost leaf that can hold the key and follow the leaf chain.
+ * Not thread-safe: indexes shared between threads are DiskBPlusTrees, which latch their nodes.
+ */
 public class BPlusTree {
     private final int order;              // max children per internal node
     private final int maxKeys;            // order - 1
@@ -18,7 +28,7 @@ public class BPlusTree {
         this.order = order;
         this.maxKeys = order - 1;
         this.medianKeyIndex = (order - 1) / 2; // used for splits
-        this.root = new Node(true); // start as empty leaf
+        this.root = new Node(true, maxKeys); // start as empty leaf
     }
 
     // Expose order for potential diagnostics / external validation
@@ -26,39 +36,53 @@ public class BPlusTree {
         return order;
     }
 
-    // Search for key - return immutable list of RIDs (may be empty)
-    public List<RID> search(int key) { return searchRecursive(root, key); }
+    static long pack(RID rid) {
+        return pack(rid.pageId(), rid.slotId());
+    }
+
+    static long pack(int pageId, int slotId) {
+        return ((long) pageId << 32) | (slotId & 0xFFFFFFFFL);
+    }
+
+    static RID unpack(long rid) {
+        return new RID((int) (rid >>> 32), (int) rid);
+    }
 
-    private List<RID> searchRecursive(Node node, int key) {
-        if (node.isLeaf) {
-            int pos = lowerBound(node.keys, key); // first >= key
-            if (pos < node.keys.size() && node.keys.get(pos) == key) {
-                return List.copyOf(node.values.get(pos));
+    // Search for key - return immutable list of RIDs in insertion order (may be empty)
+    public List<RID> search(int key) {
+        Node leaf = findLeaf(key);
+        int pos = lowerBound(leaf.keys, leaf.size, key); // first >= key
+        List<RID> out = null;
+        while (leaf != null) {
+            for (int i = pos; i < leaf.size; i++) {
+                if (leaf.keys[i] != key) return out == null ? Collections.emptyList() : Collections.unmodifiableList(out);
+                if (out == null) out = new ArrayList<>(2);
+                out.add(unpack(leaf.rids[i]));
             }
-            return Collections.emptyList();
+            leaf = leaf.next;
+            pos = 0;
         }
-        int childIndex = upperBound(node.keys, key); // first > key
-        return searchRecursive(node.children.get(childIndex), key);
+        return out == null ? Collections.emptyList() : Collections.unmodifiableList(out);
     }
 
-    // lowerBound: first index with keys[i] >= key (or keys.size() if none).
-    // Used for leaf insertion and range scan start.
-    private int lowerBound(List<Integer> keys, int key) {
-        int lo = 0, hi = keys.size();
+    // lowerBound: first index with keys[i] >= key (or size if none).
+    // Used for descending to the first occurrence of a key and for range scan start.
+    private static int lowerBound(int[] keys, int size, int key) {
+        int lo = 0, hi = size;
         while (lo < hi) {
-            int mid = (lo + hi) / 2;
-            if (keys.get(mid) < key) lo = mid + 1; else hi = mid;
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) lo = mid + 1; else hi = mid;
         }
         return lo;
     }
 
-    // upperBound: first index with keys[i] > key (or keys.size() if none).
-    // Used for internal routing: childIndex = upperBound(separators, key) where equal keys go right.
-    private int upperBound(List<Integer> keys, int key) {
-        int lo = 0, hi = keys.size();
+    // upperBound: first index with keys[i] > key (or size if none).
+    // Used for insertion: a new entry goes after every existing entry with an equal key.
+    private static int upperBound(int[] keys, int size, int key) {
+        int lo = 0, hi = size;
         while (lo < hi) {
-            int mid = (lo + hi) / 2;
-            if (keys.get(mid) <= key) lo = mid + 1; else hi = mid;
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] <= key) lo = mid + 1; else hi = mid;
         }
         return lo;
     }
@@ -73,14 +97,12 @@ public class BPlusTree {
         List<RID> result = new ArrayList<>();
         if (lowInclusive > highInclusive) return result;
         Node leaf = findLeaf(lowInclusive);
-        if (leaf == null) return result;
 
-        int pos = lowerBound(leaf.keys, lowInclusive); // first key >= low
+        int pos = lowerBound(leaf.keys, leaf.size, lowInclusive); // first key >= low
         while (leaf != null) {
-            for (int i = pos; i < leaf.keys.size(); i++) {
-                int k = leaf.keys.get(i);
-                if (k > highInclusive) return result; // past range
-                result.addAll(leaf.values.get(i));
+            for (int i = pos; i < leaf.size; i++) {
+                if (leaf.keys[i] > highInclusive) return result; // past range
+                result.add(unpack(leaf.rids[i]));
             }
             leaf = leaf.next;
             pos = 0; // restart at new leaf head
@@ -88,175 +110,160 @@ public class BPlusTree {
         return result;
     }
 
-    // Descend to the leaf that would contain the given key (first >= key or rightmost)
+    // Descend to the leftmost leaf that can contain key. Separators are copies of the first key
+    // of their right subtree, and a run of equal keys may have been split across a separator,
+    // so equal keys go left.
     private Node findLeaf(int key) {
         Node current = root;
         while (!current.isLeaf) {
-            int childIndex = upperBound(current.keys, key); // first separator > key
-            current = current.children.get(childIndex);
+            current = current.children[lowerBound(current.keys, current.size, key)];
         }
         return current;
     }
 
-    
+
     // Insert (key, RID)
     public void insert(int key, RID rid) {
+        insert(key, pack(rid));
+    }
+
+    // Insert (key, packed RID)
+    void insert(int key, long rid) {
         Node r = root;
-        if (r.keys.size() == maxKeys) {
+        if (r.size == maxKeys) {
             // root is full, split
-            Node newRoot = new Node(false);
-            newRoot.children.add(r);
+            Node newRoot = new Node(false, maxKeys);
+            newRoot.children[0] = r;
             splitChild(newRoot, 0, r);
             root = newRoot;
         }
-        insertNonFull(root, key, rid);
+        // Descend splitting full children on the way, so the leaf always has room
+        Node node = root;
+        while (!node.isLeaf) {
+            int pos = upperBound(node.keys, node.size, key);
+            Node child = node.children[pos];
+            if (child.size == maxKeys) {
+                splitChild(node, pos, child);
+                if (key >= node.keys[pos]) {
+                    pos++;
+                }
+            }
+            node = node.children[pos];
+        }
+        leafInsert(node, key, rid);
     }
 
     /**
      * Delete one (key,rid) pair.
-     * No rebalancing or separator key fixes; key removed if last rid list entry;
-     * root may shrink only in trivial cases. Returns true if removed, false otherwise.
+     * No rebalancing or separator key fixes; a leaf may be left empty.
+     * Returns true if removed, false otherwise.
      */
     public boolean delete(int key, RID rid) {
-         // Descend to leaf
-         List<Node> path = new ArrayList<>();
-         Node current = root;
-         while (!current.isLeaf) {
-             path.add(current);
-             int childIndex = upperBound(current.keys, key);
-             current = current.children.get(childIndex);
-         }
-         int pos = lowerBound(current.keys, key);
-         if (pos >= current.keys.size() || current.keys.get(pos) != key) {
-             return false; // key not found
-         }
-    List<RID> rids = current.values.get(pos);
-         boolean removed = rids.remove(rid);
-         if (!removed) return false; // rid not present
-         if (rids.isEmpty()) {
-             current.keys.remove(pos);
-             current.values.remove(pos);
-             // Root shrink (will decide if necessary later)
-             if (root != current && root.keys.isEmpty() && !root.isLeaf && root.children.size() == 1) {
-                 root = root.children.get(0);
-             } else if (root == current && root.keys.isEmpty() && root.isLeaf) {
-                 // all entries removed -> empty tree
-             }
-         }
-         return true;
-     }
-
-    // Insert into non-full node
-    private void insertNonFull(Node node, int key, RID rid) {
-        if (node.isLeaf) {
-            leafInsert(node, key, rid);
-        } else {
-            int pos = upperBound(node.keys, key);
-
-            Node child = node.children.get(pos);
-            if (child.keys.size() == maxKeys) {
-                splitChild(node, pos, child);
-                if (key >= node.keys.get(pos)) {
-                    pos++;
+        long packed = pack(rid);
+        Node leaf = findLeaf(key);
+        int pos = lowerBound(leaf.keys, leaf.size, key);
+        while (leaf != null) {
+            for (int i = pos; i < leaf.size; i++) {
+                if (leaf.keys[i] != key) return false; // key not found, or rid not under it
+                if (leaf.rids[i] == packed) {
+                    int tail = leaf.size - i - 1;
+                    System.arraycopy(leaf.keys, i + 1, leaf.keys, i, tail);
+                    System.arraycopy(leaf.rids, i + 1, leaf.rids, i, tail);
+                    leaf.size--;
+                    return true;
                 }
             }
-            insertNonFull(node.children.get(pos), key, rid);
+            leaf = leaf.next;
+            pos = 0;
         }
+        return false;
     }
 
-    // Insert into a leaf node at correct sorted position (or append to existing key's RID list)
-    private void leafInsert(Node leaf, int key, RID rid) {
-        int pos = lowerBound(leaf.keys, key);
-        if (pos < leaf.keys.size() && leaf.keys.get(pos) == key) {
-            leaf.values.get(pos).add(rid);
-        } else {
-            leaf.keys.add(pos, key);
-            List<RID> list = new ArrayList<>();
-            list.add(rid);
-            leaf.values.add(pos, list);
-        }
+    // Insert into a non-full leaf after any entries with the same key
+    private void leafInsert(Node leaf, int key, long rid) {
+        int pos = upperBound(leaf.keys, leaf.size, key);
+        int tail = leaf.size - pos;
+        System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, tail);
+        System.arraycopy(leaf.rids, pos, leaf.rids, pos + 1, tail);
+        leaf.keys[pos] = key;
+        leaf.rids[pos] = rid;
+        leaf.size++;
     }
 
     // Split child
     private void splitChild(Node parent, int index, Node child) {
+        int separator;
+        Node sibling;
         if (child.isLeaf) {
-            splitLeafChild(parent, index, child);
+            sibling = splitLeaf(child);
+            separator = sibling.keys[0];
         } else {
-            splitInternalChild(parent, index, child);
+            separator = child.keys[medianKeyIndex];
+            sibling = splitInternal(child);
         }
+        // Make room in the parent for the separator and the new right sibling
+        int tail = parent.size - index;
+        System.arraycopy(parent.keys, index, parent.keys, index + 1, tail);
+        System.arraycopy(parent.children, index + 1, parent.children, index + 2, tail);
+        parent.keys[index] = separator;
+        parent.children[index + 1] = sibling;
+        parent.size++;
     }
 
-    // Split a full leaf node; promote first key of the new right sibling
-    private void splitLeafChild(Node parent, int index, Node leaf) {
-        int total = leaf.keys.size(); // == maxKeys prior to split
-        Node sibling = new Node(true);
-
+    // Split a full leaf node; the caller promotes the first key of the new right sibling
+    private Node splitLeaf(Node leaf) {
+        int total = leaf.size; // == maxKeys prior to split
         // Balanced split: left gets ceil(total/2), right gets the rest.
         int leftSize = (total + 1) / 2; // ensures left >= right when odd
         int rightSize = total - leftSize;
 
-        // Move rightSize entries from end of leaf to sibling (preserve order)
-        List<Integer> moveKeys = new ArrayList<>(rightSize);
-    List<List<RID>> moveVals = new ArrayList<>(rightSize);
-        for (int i = total - rightSize; i < total; i++) {
-            moveKeys.add(leaf.keys.get(i));
-            moveVals.add(leaf.values.get(i));
-        }
-
-        // Trim leaf down to leftSize
-        while (leaf.keys.size() > leftSize) leaf.keys.remove(leaf.keys.size() - 1);
-        while (leaf.values.size() > leftSize) leaf.values.remove(leaf.values.size() - 1);
-
-        // Assign sibling contents
-        sibling.keys.addAll(moveKeys);
-        sibling.values.addAll(moveVals);
+        Node sibling = new Node(true, maxKeys);
+        System.arraycopy(leaf.keys, leftSize, sibling.keys, 0, rightSize);
+        System.arraycopy(leaf.rids, leftSize, sibling.rids, 0, rightSize);
+        sibling.size = rightSize;
+        leaf.size = leftSize;
 
         // Chain leaves
         sibling.next = leaf.next;
         leaf.next = sibling;
-
-        // Promote first key of sibling to parent
-        parent.keys.add(index, sibling.keys.get(0));
-        parent.children.add(index + 1, sibling);
+        return sibling;
     }
 
-    // Split a full internal node; promote median key; left keeps < median, right keeps > median
-    private void splitInternalChild(Node parent, int index, Node internal) {
+    // Split a full internal node around the median key, which the caller promotes;
+    // left keeps keys < median, right keeps keys > median
+    private Node splitInternal(Node internal) {
         int mid = medianKeyIndex; // median separator
-        int medianKey = internal.keys.get(mid);
-        Node sibling = new Node(false);
+        int rightKeys = internal.size - mid - 1;
 
-        // Right sibling copies keys > median
-        for (int i = mid + 1; i < internal.keys.size(); i++) sibling.keys.add(internal.keys.get(i));
-        // Children to right of median
-        for (int i = mid + 1; i < internal.children.size(); i++) sibling.children.add(internal.children.get(i));
+        Node sibling = new Node(false, maxKeys);
+        System.arraycopy(internal.keys, mid + 1, sibling.keys, 0, rightKeys);
+        System.arraycopy(internal.children, mid + 1, sibling.children, 0, rightKeys + 1);
+        sibling.size = rightKeys;
 
         // Trim left node to keys < median and corresponding children
-        while (internal.keys.size() > mid) internal.keys.remove(internal.keys.size() - 1);
-        while (internal.children.size() > mid + 1) internal.children.remove(internal.children.size() - 1);
-
-        // Parent takes median and pointer to new right sibling
-        parent.keys.add(index, medianKey);
-        parent.children.add(index + 1, sibling);
+        Arrays.fill(internal.children, mid + 1, internal.size + 1, null);
+        internal.size = mid;
+        return sibling;
     }
 
     // Internal node structure
     private static final class Node {
         final boolean isLeaf;
-        final List<Integer> keys;
-        final List<Node> children;        // internal nodes only (null for leaves)
-    final List<List<RID>> values;    // leaf nodes only (null for internals)
-        Node next;                        // link leaf nodes (mutable linkage)
+        final int[] keys;        // sorted; the first size entries are in use
+        final Node[] children;   // internal nodes only, size + 1 in use (null for leaves)
+        final long[] rids;       // leaf nodes only, packed RID of keys[i] (null for internals)
+        int size;
+        Node next;               // link leaf nodes (mutable linkage)
 
-        Node(boolean isLeaf) {
+        Node(boolean isLeaf, int maxKeys) {
             this.isLeaf = isLeaf;
-            this.keys = new ArrayList<>();
+            this.keys = new int[maxKeys];
             if (isLeaf) {
-                this.values = new ArrayList<>();
+                this.rids = new long[maxKeys];
                 this.children = null;
             } else {
-                this.children = new ArrayList<>();
-                this.values = null;
+                this.children = new Node[maxKeys + 1];
+                this.rids = null;
             }
         }
     }
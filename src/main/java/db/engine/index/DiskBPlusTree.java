@@ -0,0 +1,796 @@
+package db.engine.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import db.engine.storage.BufferManager;
+import db.engine.storage.CorruptPageException;
+import db.engine.storage.Page;
+import db.engine.storage.RID;
+
+/**
+ * B+ tree from INT keys to record ids stored in an index file, one node per page, read and
+ * written through the buffer pool like heap pages. Only the nodes on the current path are
+ * pinned, so a tree can be far larger than the pool, and reopening an index costs one page
+ * read instead of a table scan. Semantics match BPlusTree: a duplicate key is one entry per
+ * RID, kept in insertion order, and deletes do not rebalance.
+ *
+ * Page 0 holds the tree's metadata; every other page is a node:
+ * <pre>
+ * [0..3]   int count            keys in use
+ * [4]      byte kind            1 = leaf, 2 = internal
+ * [6..7]   short formatVersion  2, as for heap pages, so the pool stamps and checks a checksum
+ * [8..15]  long pageLsn         always 0: index changes are not logged
+ * [16..19] int checksum         CRC32C, stamped by the pool on write-back
+ * [20..23] int next             leaf: page id of the right sibling (-1 for the last leaf)
+ * [24..]   int keys[maxKeys], then long rids[maxKeys] (leaf) or int children[maxKeys + 1]
+ * </pre>
+ * Index changes are not logged, so the file is only trusted if it was closed cleanly: the
+ * metadata page carries a flag that is cleared (and forced to disk) before the first change
+ * after an open and set again by close(). open() returns null for a file without it, and the
+ * caller rebuilds the index from the table.
+ *
+ * A new tree can be filled bottom-up from entries in key order (see bulkBuilder()) instead of
+ * one insert at a time: leaves are written left to right, then each internal level above them.
+ *
+ * Threads may search, insert and delete concurrently. Every node has a StampedLock latch (and
+ * the root page id and height one of their own), used with optimistic lock coupling: readers
+ * take no lock at all, they note the latch's stamp, read the node and check the stamp is still
+ * valid before trusting what they read (or following a child pointer), and start over from the
+ * root if it is not. Writers descend the same way and only turn the stamps of the nodes they
+ * change into write latches: the leaf for an insert or delete, plus its parent for a split.
+ * Full nodes are split on the way down, so a split never reaches above the parent.
+ * Latches are striped: a fixed array of LATCH_STRIPES locks is shared by page id, so their
+ * memory does not grow with the tree. Nodes sharing a stripe only cost readers an occasional
+ * needless restart.
+ */
+public class DiskBPlusTree {
+    private static final int MAGIC = 0x42505431; // "BPT1"
+    private static final short PAGE_FORMAT = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int COUNT_POS = 0;
+    private static final int KIND_POS = 4;
+    private static final int FORMAT_POS = 6;
+    private static final int NEXT_POS = 20;
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    private static final int NO_PAGE = -1;
+    // Metadata page
+    private static final int META_PAGE = 0;
+    private static final int MAGIC_POS = 0;
+    private static final int ROOT_POS = 20;
+    private static final int ORDER_POS = 24;
+    private static final int HEIGHT_POS = 28;
+    private static final int CLEAN_POS = 32;
+    private static final int LATCH_STRIPES = 1024; // a power of two
+
+    private final BufferManager pool;
+    private final String filePath;
+    private final int order;           // max children per internal node
+    private final int maxKeys;         // order - 1, for leaves and internal nodes alike
+    private final int medianKeyIndex;  // cached median index for splits
+    private final int valuesPos;       // start of rids (leaf) or children (internal)
+    private final StampedLock[] latches = new StampedLock[LATCH_STRIPES]; // by page id, see latch()
+    private final StampedLock rootLatch = new StampedLock(); // guards rootPageId and height
+    private volatile int rootPageId;
+    private volatile int height;       // levels, counting the leaves
+    private volatile boolean clean;    // the file on disk says it was closed cleanly
+
+    private DiskBPlusTree(BufferManager pool, String filePath, int order) {
+        if (order < 3 || order > maxOrder(pool.getPageSize())) {
+            throw new IllegalArgumentException("B+ tree order must be between 3 and " + maxOrder(pool.getPageSize()) + " (got " + order + ")");
+        }
+        this.pool = pool;
+        this.filePath = filePath;
+        this.order = order;
+        this.maxKeys = order - 1;
+        this.medianKeyIndex = (order - 1) / 2;
+        this.valuesPos = HEADER_SIZE + 4 * maxKeys;
+        for (int i = 0; i < LATCH_STRIPES; i++) latches[i] = new StampedLock();
+    }
+
+    /** Largest order whose nodes fit in one page of the given size. */
+    public static int maxOrder(int pageSize) {
+        int leafKeys = (pageSize - HEADER_SIZE) / 12;          // int key + long rid
+        int internalKeys = (pageSize - HEADER_SIZE - 4) / 8;   // int key + int child, plus one more child
+        return Math.min(leafKeys, internalKeys) + 1;
+    }
+
+    /**
+     * Create an empty tree in filePath, replacing any file already there. Each node takes one
+     * page whatever the order, so an order well below maxOrder() mostly stores empty space.
+     */
+    public static DiskBPlusTree create(BufferManager pool, String filePath, int order) {
+        DiskBPlusTree tree = new DiskBPlusTree(pool, filePath, order);
+        try {
+            pool.invalidateFile(filePath);
+            pool.getDiskManager().closeFile(filePath);
+            File f = new File(filePath);
+            if (f.getParentFile() != null) f.getParentFile().mkdirs();
+            // A new file rather than a truncated one: a handle still open elsewhere keeps the old one
+            if (f.exists() && !f.delete()) throw new IOException("Cannot delete " + filePath);
+            try (Page meta = pool.pinNew(filePath); Page root = pool.pinNew(filePath)) {
+                initNode(root, LEAF);
+                tree.rootPageId = root.pageId();
+                tree.height = 1;
+                synchronized (meta) {
+                    ByteBuffer b = ByteBuffer.wrap(meta.data());
+                    b.putInt(MAGIC_POS, MAGIC);
+                    b.putShort(FORMAT_POS, PAGE_FORMAT);
+                    b.putInt(ORDER_POS, order);
+                }
+            }
+            tree.writeMeta(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed creating index file " + filePath, e);
+        }
+        return tree;
+    }
+
+    /**
+     * Open the tree stored in filePath. Returns null if there is no usable tree there: no file,
+     * not an index file, a page failing its checksum, or a file not closed cleanly.
+     */
+    public static DiskBPlusTree open(BufferManager pool, String filePath) {
+        if (!new File(filePath).exists()) return null;
+        try {
+            if (pool.pageCount(filePath) < 2) return null;
+            try (Page meta = pool.pin(filePath, META_PAGE)) {
+                ByteBuffer b = ByteBuffer.wrap(meta.data());
+                if (b.getInt(MAGIC_POS) != MAGIC || b.getInt(CLEAN_POS) != 1) return null;
+                int order = b.getInt(ORDER_POS);
+                if (order < 3 || order > maxOrder(pool.getPageSize())) return null;
+                DiskBPlusTree tree = new DiskBPlusTree(pool, filePath, order);
+                tree.rootPageId = b.getInt(ROOT_POS);
+                tree.height = b.getInt(HEIGHT_POS);
+                tree.clean = true;
+                return tree;
+            }
+        } catch (CorruptPageException e) {
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed opening index file " + filePath, e);
+        }
+    }
+
+    public String filePath() { return filePath; }
+
+    // Expose order for potential diagnostics / external validation
+    public int getOrder() { return order; }
+
+    /** Levels in the tree, counting the leaves (1 for a tree that is a single leaf). */
+    public int height() { return height; }
+
+    /** True if the tree holds no entries (deletes do not shrink it, so only a tree never filled). */
+    public boolean isEmpty() {
+        long stamp = rootLatch.readLock();
+        try {
+            if (height != 1) return false;
+            StampedLock latch = latch(rootPageId);
+            long rootStamp = latch.readLock();
+            try (Page root = pool.pin(filePath, rootPageId)) {
+                return count(ByteBuffer.wrap(root.data())) == 0;
+            } finally {
+                latch.unlockRead(rootStamp);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed reading index " + filePath, e);
+        } finally {
+            rootLatch.unlockRead(stamp);
+        }
+    }
+
+    /** Pages holding tree nodes (every page of the file but the metadata page). */
+    public int nodeCount() {
+        try {
+            return pool.pageCount(filePath) - 1;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed reading size of index file " + filePath, e);
+        }
+    }
+
+    /**
+     * Write back every page of the tree, force the file to disk and mark it closed cleanly, so
+     * the next open() trusts it. The tree stays usable; a later change clears the mark again.
+     * Not to be called while other threads change the tree.
+     */
+    public void close() {
+        try {
+            pool.flushFile(filePath);
+            pool.getDiskManager().sync(filePath);
+            if (!clean) {
+                writeMeta(true);
+                pool.flushFile(filePath);
+                pool.getDiskManager().sync(filePath);
+                clean = true;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed closing index file " + filePath, e);
+        }
+    }
+
+    // Search for key - return immutable list of RIDs in insertion order (may be empty)
+    public List<RID> search(int key) {
+        List<RID> out = collect(key, key);
+        return out.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(out);
+    }
+
+    /**
+     * Range search: returns all record ids whose key is in [lowInclusive, highInclusive].
+     * Keys returned preserve ascending key order; duplicate key record ids preserve insertion order.
+     */
+    public List<RID> rangeSearch(int lowInclusive, int highInclusive) {
+        if (lowInclusive > highInclusive) return new ArrayList<>();
+        return collect(lowInclusive, highInclusive);
+    }
+
+    // Record ids of keys in [low, high], starting over whenever a leaf changed while it was read
+    private List<RID> collect(int low, int high) {
+        List<RID> out = new ArrayList<>(2);
+        try {
+            while (!tryCollect(low, high, out)) {
+                out.clear();
+                Thread.yield(); // let the writer holding the latch finish
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed reading index " + filePath, e);
+        }
+        return out;
+    }
+
+    private boolean tryCollect(int low, int high, List<RID> out) throws IOException {
+        Cursor leaf = findLeaf(low);
+        if (leaf == null) return false;
+        try {
+            int pos = lowerBound(ByteBuffer.wrap(leaf.page.data()), low); // first key >= low
+            while (true) {
+                ByteBuffer b = ByteBuffer.wrap(leaf.page.data());
+                boolean past = false;
+                for (int i = pos, n = count(b); i < n; i++) {
+                    if (keyAt(b, i) > high) { // past range
+                        past = true;
+                        break;
+                    }
+                    out.add(BPlusTree.unpack(b.getLong(valuesPos + 8 * i)));
+                }
+                int next = b.getInt(NEXT_POS);
+                if (!leaf.latch.validate(leaf.stamp)) return false;
+                if (past || next == NO_PAGE) return true;
+                if (!leaf.moveTo(next)) return false;
+                pos = 0; // restart at new leaf head
+            }
+        } finally {
+            leaf.page.close();
+        }
+    }
+
+    // Pin the leftmost leaf that can contain key (equal keys go left, see BPlusTree.findLeaf),
+    // coupling optimistic reads from the root down; null if a node changed on the way
+    private Cursor findLeaf(int key) throws IOException {
+        long rootStamp = rootLatch.tryOptimisticRead();
+        Cursor node = new Cursor(rootPageId);
+        if (!rootLatch.validate(rootStamp)) {
+            node.page.close();
+            return null;
+        }
+        while (true) {
+            ByteBuffer b = ByteBuffer.wrap(node.page.data());
+            if (b.get(KIND_POS) == LEAF) {
+                if (node.latch.validate(node.stamp)) return node;
+                node.page.close();
+                return null;
+            }
+            if (!node.moveTo(childAt(b, lowerBound(b, key)))) {
+                node.page.close();
+                return null;
+            }
+        }
+    }
+
+    // Insert (key, RID)
+    public void insert(int key, RID rid) {
+        insert(key, BPlusTree.pack(rid));
+    }
+
+    // Insert (key, packed RID)
+    void insert(int key, long rid) {
+        try {
+            beginChange();
+            while (!tryInsert(key, rid)) Thread.yield();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed updating index " + filePath, e);
+        }
+    }
+
+    // One optimistic descent; false to start over, because a node read on the way changed or
+    // because a full node was split (after which the path is looked up again). Full nodes are
+    // split on the way down, so the leaf always has room: the split latches the parent (the
+    // root pointer for the root) and the node, and nothing else.
+    private boolean tryInsert(int key, long rid) throws IOException {
+        StampedLock parentLatch = rootLatch;
+        long parentStamp = rootLatch.tryOptimisticRead();
+        Page parent = null; // null while node is the root
+        int index = 0;      // position of node among the parent's children
+        Cursor node = new Cursor(rootPageId);
+        try {
+            if (!rootLatch.validate(parentStamp)) return false;
+            while (true) {
+                ByteBuffer b = ByteBuffer.wrap(node.page.data());
+                boolean leaf = b.get(KIND_POS) == LEAF;
+                int n = count(b);
+                int pos = leaf ? 0 : upperBound(b, key);
+                int child = leaf ? NO_PAGE : childAt(b, pos);
+                if (!node.latch.validate(node.stamp)) return false;
+                if (n == maxKeys) {
+                    long parentWrite = parentLatch.tryConvertToWriteLock(parentStamp);
+                    if (parentWrite == 0) return false;
+                    try {
+                        // A node on the parent's stripe is covered by the parent's write latch
+                        boolean shared = node.latch == parentLatch;
+                        long write = shared ? parentWrite : node.latch.tryConvertToWriteLock(node.stamp);
+                        if (write == 0) return false;
+                        try {
+                            if (parent == null) splitRoot(node.page); else splitChild(parent, index, node.page);
+                        } finally {
+                            if (!shared) node.latch.unlockWrite(write);
+                        }
+                    } finally {
+                        parentLatch.unlockWrite(parentWrite);
+                    }
+                    return false;
+                }
+                if (leaf) {
+                    long write = node.latch.tryConvertToWriteLock(node.stamp);
+                    if (write == 0) return false;
+                    try {
+                        leafInsert(node.page, key, rid);
+                    } finally {
+                        node.latch.unlockWrite(write);
+                    }
+                    return true;
+                }
+                Page above = node.page;
+                StampedLock aboveLatch = node.latch;
+                long aboveStamp = node.stamp;
+                if (!node.moveTo(child, false)) return false;
+                if (parent != null) parent.close();
+                parent = above;
+                parentLatch = aboveLatch;
+                parentStamp = aboveStamp;
+                index = pos;
+            }
+        } finally {
+            node.page.close();
+            if (parent != null) parent.close();
+        }
+    }
+
+    /**
+     * Delete one (key,rid) pair.
+     * No rebalancing or separator key fixes; a leaf may be left empty.
+     * Returns true if removed, false otherwise.
+     */
+    public boolean delete(int key, RID rid) {
+        long packed = BPlusTree.pack(rid);
+        try {
+            beginChange();
+            while (true) {
+                int removed = tryDelete(key, packed);
+                if (removed >= 0) return removed == 1;
+                Thread.yield();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed updating index " + filePath, e);
+        }
+    }
+
+    // 1 if removed, 0 if not there, -1 to start over; only the leaf changed is latched
+    private int tryDelete(int key, long rid) throws IOException {
+        Cursor leaf = findLeaf(key);
+        if (leaf == null) return -1;
+        try {
+            int pos = lowerBound(ByteBuffer.wrap(leaf.page.data()), key);
+            while (true) {
+                ByteBuffer b = ByteBuffer.wrap(leaf.page.data());
+                int n = count(b);
+                int found = -1;
+                boolean past = false;
+                for (int i = pos; i < n; i++) {
+                    if (keyAt(b, i) != key) { // key not found, or rid not under it
+                        past = true;
+                        break;
+                    }
+                    if (b.getLong(valuesPos + 8 * i) == rid) {
+                        found = i;
+                        break;
+                    }
+                }
+                int next = b.getInt(NEXT_POS);
+                if (found >= 0) {
+                    long write = leaf.latch.tryConvertToWriteLock(leaf.stamp); // fails if the leaf changed since it was read
+                    if (write == 0) return -1;
+                    try {
+                        synchronized (leaf.page) {
+                            leaf.page.markDirty();
+                            byte[] d = leaf.page.data();
+                            int tail = n - found - 1;
+                            System.arraycopy(d, HEADER_SIZE + 4 * (found + 1), d, HEADER_SIZE + 4 * found, 4 * tail);
+                            System.arraycopy(d, valuesPos + 8 * (found + 1), d, valuesPos + 8 * found, 8 * tail);
+                            b.putInt(COUNT_POS, n - 1);
+                        }
+                    } finally {
+                        leaf.latch.unlockWrite(write);
+                    }
+                    return 1;
+                }
+                if (!leaf.latch.validate(leaf.stamp)) return -1;
+                if (past || next == NO_PAGE) return 0;
+                if (!leaf.moveTo(next)) return -1;
+                pos = 0;
+            }
+        } finally {
+            leaf.page.close();
+        }
+    }
+
+    // Split the full root under a new root. The caller holds the write latches of the root
+    // pointer and of the root.
+    private void splitRoot(Page root) throws IOException {
+        try (Page newRoot = pool.pinNew(filePath)) {
+            initNode(newRoot, INTERNAL);
+            synchronized (newRoot) {
+                ByteBuffer.wrap(newRoot.data()).putInt(valuesPos, root.pageId());
+            }
+            splitChild(newRoot, 0, root);
+            rootPageId = newRoot.pageId();
+            height++;
+            writeMeta(false);
+        }
+    }
+
+    /**
+     * A pinned node and the optimistic stamp its latch had when the read of it started. The
+     * node's contents are only trusted once latch.validate(stamp) confirms that no writer
+     * latched it since.
+     */
+    private final class Cursor {
+        Page page;
+        StampedLock latch;
+        long stamp;
+
+        Cursor(int pageId) throws IOException {
+            this.page = pool.pin(filePath, pageId);
+            this.latch = latch(pageId);
+            this.stamp = latch.tryOptimisticRead();
+        }
+
+        // Step to pageId, read from the current node; false (the current page still pinned)
+        // if the current node changed, so pageId may be stale
+        boolean moveTo(int pageId) throws IOException {
+            return moveTo(pageId, true);
+        }
+
+        boolean moveTo(int pageId, boolean release) throws IOException {
+            if (!latch.validate(stamp)) return false;
+            Page next = pool.pin(filePath, pageId);
+            StampedLock nextLatch = latch(pageId);
+            long nextStamp = nextLatch.tryOptimisticRead();
+            if (!latch.validate(stamp)) { // changed while the child was pinned
+                next.close();
+                return false;
+            }
+            if (release) page.close();
+            page = next;
+            latch = nextLatch;
+            stamp = nextStamp;
+            return true;
+        }
+    }
+
+    private StampedLock latch(int pageId) {
+        return latches[pageId & (LATCH_STRIPES - 1)];
+    }
+
+    // Insert into a non-full leaf after any entries with the same key
+    private void leafInsert(Page leaf, int key, long rid) {
+        synchronized (leaf) {
+            leaf.markDirty();
+            byte[] d = leaf.data();
+            ByteBuffer b = ByteBuffer.wrap(d);
+            int n = count(b);
+            int pos = upperBound(b, key);
+            int tail = n - pos;
+            System.arraycopy(d, HEADER_SIZE + 4 * pos, d, HEADER_SIZE + 4 * (pos + 1), 4 * tail);
+            System.arraycopy(d, valuesPos + 8 * pos, d, valuesPos + 8 * (pos + 1), 8 * tail);
+            b.putInt(HEADER_SIZE + 4 * pos, key);
+            b.putLong(valuesPos + 8 * pos, rid);
+            b.putInt(COUNT_POS, n + 1);
+        }
+    }
+
+    // Split the full child at index of parent (which has room) into child and a new right sibling
+    private void splitChild(Page parent, int index, Page child) throws IOException {
+        int separator;
+        try (Page sibling = pool.pinNew(filePath)) {
+            byte[] c = child.data();
+            byte[] s = sibling.data();
+            ByteBuffer cb = ByteBuffer.wrap(c);
+            ByteBuffer sb = ByteBuffer.wrap(s);
+            synchronized (child) {
+                child.markDirty();
+                synchronized (sibling) {
+                    if (cb.get(KIND_POS) == LEAF) {
+                        // Balanced split: left gets ceil(total/2), right gets the rest; promote the right's first key
+                        int leftSize = (maxKeys + 1) / 2;
+                        int rightSize = maxKeys - leftSize;
+                        initHeader(sb, LEAF);
+                        System.arraycopy(c, HEADER_SIZE + 4 * leftSize, s, HEADER_SIZE, 4 * rightSize);
+                        System.arraycopy(c, valuesPos + 8 * leftSize, s, valuesPos, 8 * rightSize);
+                        sb.putInt(COUNT_POS, rightSize);
+                        sb.putInt(NEXT_POS, cb.getInt(NEXT_POS)); // chain leaves
+                        cb.putInt(NEXT_POS, sibling.pageId());
+                        cb.putInt(COUNT_POS, leftSize);
+                        separator = sb.getInt(HEADER_SIZE);
+                    } else {
+                        // Promote the median; left keeps keys < median, right keeps keys > median
+                        int mid = medianKeyIndex;
+                        int rightKeys = maxKeys - mid - 1;
+                        separator = cb.getInt(HEADER_SIZE + 4 * mid);
+                        initHeader(sb, INTERNAL);
+                        System.arraycopy(c, HEADER_SIZE + 4 * (mid + 1), s, HEADER_SIZE, 4 * rightKeys);
+                        System.arraycopy(c, valuesPos + 4 * (mid + 1), s, valuesPos, 4 * (rightKeys + 1));
+                        sb.putInt(COUNT_POS, rightKeys);
+                        cb.putInt(COUNT_POS, mid);
+                    }
+                }
+            }
+            // Make room in the parent for the separator and the new right sibling
+            synchronized (parent) {
+                parent.markDirty();
+                byte[] p = parent.data();
+                ByteBuffer pb = ByteBuffer.wrap(p);
+                int n = count(pb);
+                int tail = n - index;
+                System.arraycopy(p, HEADER_SIZE + 4 * index, p, HEADER_SIZE + 4 * (index + 1), 4 * tail);
+                System.arraycopy(p, valuesPos + 4 * (index + 1), p, valuesPos + 4 * (index + 2), 4 * tail);
+                pb.putInt(HEADER_SIZE + 4 * index, separator);
+                pb.putInt(valuesPos + 4 * (index + 1), sibling.pageId());
+                pb.putInt(COUNT_POS, n + 1);
+            }
+        }
+    }
+
+    /**
+     * Builder that fills this tree, which must still be empty, from entries added in ascending
+     * key order. Nodes are filled to fillFactor (0..1] of their capacity, so that later inserts
+     * find room before they split them.
+     */
+    Builder bulkBuilder(double fillFactor) {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("fill factor must be in (0, 1] (got " + fillFactor + ")");
+        }
+        if (!isEmpty()) throw new IllegalStateException("Bulk build needs an empty tree: " + filePath);
+        try {
+            beginChange();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed updating index " + filePath, e);
+        }
+        return new Builder(fillFactor);
+    }
+
+    /** Writes leaves as entries arrive and the internal levels in finish(); see bulkBuilder(). */
+    final class Builder {
+        private final int leafCapacity;     // entries per leaf
+        private final int internalCapacity; // children per internal node
+        private final int[] keys;           // entries of the leaf being filled
+        private final long[] rids;
+        private int size;
+        private Page lastLeaf;              // last leaf written, pinned until its right sibling exists
+        private int[] levelPages = new int[16]; // page id and first key of every node of the level being built
+        private int[] levelKeys = new int[16];
+        private int levelSize;
+        private long added;
+        private int lastKey;                // last key added
+
+        private Builder(double fillFactor) {
+            this.leafCapacity = Math.max(1, Math.min(maxKeys, (int) Math.round(maxKeys * fillFactor)));
+            this.internalCapacity = Math.max(2, Math.min(order, (int) Math.round(order * fillFactor)));
+            this.keys = new int[leafCapacity];
+            this.rids = new long[leafCapacity];
+        }
+
+        /** Append an entry; key must not be lower than the previous one. */
+        void add(int key, long rid) {
+            if (added > 0 && key < lastKey) {
+                throw new IllegalArgumentException("Bulk build needs keys in ascending order (" + key + " after " + lastKey + ")");
+            }
+            if (size == leafCapacity) writeLeaf();
+            keys[size] = key;
+            rids[size] = rid;
+            size++;
+            added++;
+            lastKey = key;
+        }
+
+        /** Write the last leaf and the internal levels, and make the result the tree's root. */
+        void finish() {
+            try {
+                if (size > 0 || levelSize == 0) writeLeaf();
+                lastLeaf.close();
+                lastLeaf = null;
+                int levels = 1;
+                while (levelSize > 1) {
+                    buildLevel();
+                    levels++;
+                }
+                long stamp = rootLatch.writeLock();
+                try {
+                    rootPageId = levelPages[0];
+                    height = levels;
+                    writeMeta(false);
+                } finally {
+                    rootLatch.unlockWrite(stamp);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed building index " + filePath, e);
+            }
+        }
+
+        /** Entries added so far. */
+        long added() { return added; }
+
+        // Write the buffered entries as the next leaf and link it to the previous one. The first
+        // leaf reuses the empty root leaf the tree was created with, which readers may be
+        // looking at, so leaves are written under their latches.
+        private void writeLeaf() {
+            try {
+                Page leaf = levelSize == 0 ? pool.pin(filePath, rootPageId) : pool.pinNew(filePath);
+                StampedLock latch = latch(leaf.pageId());
+                long stamp = latch.writeLock();
+                try {
+                    synchronized (leaf) {
+                        leaf.markDirty();
+                        ByteBuffer b = ByteBuffer.wrap(leaf.data());
+                        initHeader(b, LEAF);
+                        for (int i = 0; i < size; i++) {
+                            b.putInt(HEADER_SIZE + 4 * i, keys[i]);
+                            b.putLong(valuesPos + 8 * i, rids[i]);
+                        }
+                        b.putInt(COUNT_POS, size);
+                    }
+                } finally {
+                    latch.unlockWrite(stamp);
+                }
+                if (lastLeaf != null) {
+                    StampedLock lastLatch = latch(lastLeaf.pageId());
+                    long lastStamp = lastLatch.writeLock();
+                    try {
+                        synchronized (lastLeaf) {
+                            lastLeaf.markDirty();
+                            ByteBuffer.wrap(lastLeaf.data()).putInt(NEXT_POS, leaf.pageId());
+                        }
+                    } finally {
+                        lastLatch.unlockWrite(lastStamp);
+                    }
+                    lastLeaf.close();
+                }
+                lastLeaf = leaf;
+                addToLevel(leaf.pageId(), keys[0]); // unused when the only leaf is empty
+                size = 0;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed building index " + filePath, e);
+            }
+        }
+
+        private void addToLevel(int pageId, int firstKey) {
+            if (levelSize == levelPages.length) {
+                levelPages = Arrays.copyOf(levelPages, levelSize * 2);
+                levelKeys = Arrays.copyOf(levelKeys, levelSize * 2);
+            }
+            levelPages[levelSize] = pageId;
+            levelKeys[levelSize] = firstKey;
+            levelSize++;
+        }
+
+        // Replace the current level with the internal nodes above it. Children are spread evenly,
+        // so no node is left with a single child. A node's separators are the first keys of its
+        // children after the first, as a split would have promoted them.
+        private void buildLevel() throws IOException {
+            int children = levelSize;
+            int nodes = (children + internalCapacity - 1) / internalCapacity;
+            int[] pages = levelPages;
+            int[] firstKeys = levelKeys;
+            levelPages = new int[nodes];
+            levelKeys = new int[nodes];
+            levelSize = 0;
+            int start = 0;
+            for (int n = 0; n < nodes; n++) {
+                int end = start + children / nodes + (n < children % nodes ? 1 : 0);
+                try (Page node = pool.pinNew(filePath)) {
+                    synchronized (node) {
+                        node.markDirty();
+                        ByteBuffer b = ByteBuffer.wrap(node.data());
+                        initHeader(b, INTERNAL);
+                        for (int c = start; c < end; c++) {
+                            if (c > start) b.putInt(HEADER_SIZE + 4 * (c - start - 1), firstKeys[c]);
+                            b.putInt(valuesPos + 4 * (c - start), pages[c]);
+                        }
+                        b.putInt(COUNT_POS, end - start - 1);
+                    }
+                    addToLevel(node.pageId(), firstKeys[start]);
+                }
+                start = end;
+            }
+        }
+    }
+
+    // Before the first change after a clean open, clear the clean mark on disk. Concurrent first
+    // changes wait here until the mark is gone, so none reaches a page before it.
+    private void beginChange() throws IOException {
+        if (!clean) return;
+        synchronized (this) {
+            if (!clean) return;
+            writeMeta(false);
+            pool.flushFile(filePath); // nothing else is dirty yet: the tree is unchanged since it was opened
+            pool.getDiskManager().sync(filePath);
+            clean = false;
+        }
+    }
+
+    private void writeMeta(boolean cleanMark) throws IOException {
+        try (Page meta = pool.pin(filePath, META_PAGE)) {
+            synchronized (meta) {
+                meta.markDirty();
+                ByteBuffer b = ByteBuffer.wrap(meta.data());
+                b.putInt(ROOT_POS, rootPageId);
+                b.putInt(HEIGHT_POS, height);
+                b.putInt(CLEAN_POS, cleanMark ? 1 : 0);
+            }
+        }
+    }
+
+    private static void initNode(Page page, byte kind) {
+        synchronized (page) {
+            page.markDirty();
+            initHeader(ByteBuffer.wrap(page.data()), kind);
+        }
+    }
+
+    private static void initHeader(ByteBuffer b, byte kind) {
+        b.putInt(COUNT_POS, 0);
+        b.put(KIND_POS, kind);
+        b.putShort(FORMAT_POS, PAGE_FORMAT);
+        b.putInt(NEXT_POS, NO_PAGE);
+    }
+
+    // Clamped, as an optimistic read may see a count torn by a writer (the stamp check then fails)
+    private int count(ByteBuffer b) { return Math.max(0, Math.min(maxKeys, b.getInt(COUNT_POS))); }
+    private static int keyAt(ByteBuffer b, int i) { return b.getInt(HEADER_SIZE + 4 * i); }
+    private int childAt(ByteBuffer b, int i) { return b.getInt(valuesPos + 4 * i); }
+
+    // First index with keys[i] >= key (or count if none)
+    private int lowerBound(ByteBuffer b, int key) {
+        int lo = 0, hi = count(b);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyAt(b, mid) < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index with keys[i] > key (or count if none)
+    private int upperBound(ByteBuffer b, int key) {
+        int lo = 0, hi = count(b);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyAt(b, mid) <= key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,240 @@
+package db.engine.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts (key, packed RID) entries for a bulk build. Entries are gathered in memory and sorted
+ * (Arrays.parallelSort) into runs; runs sorted elsewhere (one per heap range scanned by a
+ * worker) can be added whole with addSortedRun(). Once the runs held in memory reach
+ * runCapacity entries they are merged into one temporary file next to the index, and
+ * drainTo() merges what is left. Entries with equal keys come out in the order they were
+ * added, as repeated inserts would have stored them.
+ */
+final class IndexEntrySorter implements AutoCloseable {
+    private final int runCapacity;
+    private final Path spillDir;
+    private final List<Object> runs = new ArrayList<>(); // SortedRun in memory or Path of a spilled one, in order added
+    private long memoryEntries; // entries held by in-memory runs
+    private int[] keys;
+    private long[] rids;
+    private int size;
+
+    /** Entries sorted by key, equal keys in the order they were added. */
+    record SortedRun(int[] keys, long[] rids, int size) {}
+
+    IndexEntrySorter(int runCapacity, Path spillDir) {
+        if (runCapacity < 1) throw new IllegalArgumentException("runCapacity must be positive (got " + runCapacity + ")");
+        this.runCapacity = runCapacity;
+        this.spillDir = spillDir;
+        this.keys = new int[Math.min(1024, runCapacity)];
+        this.rids = new long[keys.length];
+    }
+
+    void add(int key, long rid) {
+        if (size == keys.length) {
+            if (size == runCapacity) {
+                flushPending();
+            } else {
+                int grown = (int) Math.min(runCapacity, 2L * size);
+                keys = Arrays.copyOf(keys, grown);
+                rids = Arrays.copyOf(rids, grown);
+            }
+        }
+        keys[size] = key;
+        rids[size] = rid;
+        size++;
+    }
+
+    /** Add a run sorted with sort(); its entries follow every entry added before. */
+    void addSortedRun(SortedRun run) {
+        if (run.size() == 0) return;
+        flushPending();
+        hold(run);
+    }
+
+    /** Runs written to disk so far. */
+    int spilledRuns() {
+        int n = 0;
+        for (Object run : runs) if (run instanceof Path) n++;
+        return n;
+    }
+
+    /** Sort the first size entries of keys and rids into a new run; the arrays are left as they are. */
+    static SortedRun sort(int[] keys, long[] rids, int size) {
+        // Key in the high half, entry number in the low half, so equal keys keep their order
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) keys[i] << 32) | i;
+        }
+        Arrays.parallelSort(order);
+        int[] sortedKeys = new int[size];
+        long[] sortedRids = new long[size];
+        for (int j = 0; j < size; j++) {
+            int i = (int) order[j];
+            sortedKeys[j] = keys[i];
+            sortedRids[j] = rids[i];
+        }
+        return new SortedRun(sortedKeys, sortedRids, size);
+    }
+
+    /** Feed every entry to builder in key order. */
+    void drainTo(DiskBPlusTree.Builder builder) {
+        flushPending();
+        if (runs.size() == 1 && runs.get(0) instanceof SortedRun only) {
+            for (int i = 0; i < only.size(); i++) builder.add(only.keys()[i], only.rids()[i]);
+            return;
+        }
+        try {
+            merge(0, builder::add);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed merging sorted index runs", e);
+        }
+    }
+
+    /** Delete the spilled runs. */
+    @Override
+    public void close() {
+        for (Object run : runs) {
+            if (!(run instanceof Path path)) continue;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed deleting sort run " + path, e);
+            }
+        }
+        runs.clear();
+        memoryEntries = 0;
+    }
+
+    // Turn entries gathered by add() into a run held in memory
+    private void flushPending() {
+        if (size == 0) return;
+        SortedRun run = sort(keys, rids, size);
+        size = 0;
+        hold(run);
+    }
+
+    private void hold(SortedRun run) {
+        runs.add(run);
+        memoryEntries += run.size();
+        if (memoryEntries >= runCapacity) spill();
+    }
+
+    // Merge the runs held in memory (always the last ones added) into one file that replaces them
+    private void spill() {
+        int first = runs.size();
+        while (first > 0 && runs.get(first - 1) instanceof SortedRun) first--;
+        try {
+            Files.createDirectories(spillDir);
+            Path path = Files.createTempFile(spillDir, "sort", ".run");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+                merge(first, (key, rid) -> {
+                    out.writeInt(key);
+                    out.writeLong(rid);
+                });
+            } catch (IOException e) {
+                Files.deleteIfExists(path);
+                throw e;
+            }
+            runs.subList(first, runs.size()).clear();
+            runs.add(path);
+            memoryEntries = 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed spilling sorted index runs to " + spillDir, e);
+        }
+    }
+
+    private interface EntrySink { void add(int key, long rid) throws IOException; }
+
+    // k-way merge of runs[first..]; equal keys are taken from the earlier run first
+    private void merge(int first, EntrySink sink) throws IOException {
+        List<RunCursor> cursors = new ArrayList<>(runs.size() - first);
+        PriorityQueue<RunCursor> heap = new PriorityQueue<>((a, b) ->
+                a.key != b.key ? Integer.compare(a.key, b.key) : Integer.compare(a.run, b.run));
+        try {
+            for (int r = first; r < runs.size(); r++) {
+                RunCursor cursor = runs.get(r) instanceof SortedRun mem ? new MemoryCursor(mem, r) : new FileCursor((Path) runs.get(r), r);
+                cursors.add(cursor);
+                if (cursor.advance()) heap.add(cursor);
+            }
+            while (!heap.isEmpty()) {
+                RunCursor top = heap.poll();
+                sink.add(top.key, top.rid);
+                if (top.advance()) heap.add(top);
+            }
+        } finally {
+            for (RunCursor cursor : cursors) cursor.close();
+        }
+    }
+
+    private abstract static class RunCursor {
+        final int run;
+        int key;
+        long rid;
+
+        RunCursor(int run) { this.run = run; }
+
+        abstract boolean advance() throws IOException;
+
+        void close() {}
+    }
+
+    private static final class MemoryCursor extends RunCursor {
+        private final SortedRun entries;
+        private int next;
+
+        MemoryCursor(SortedRun entries, int run) {
+            super(run);
+            this.entries = entries;
+        }
+
+        @Override
+        boolean advance() {
+            if (next == entries.size()) return false;
+            key = entries.keys()[next];
+            rid = entries.rids()[next];
+            next++;
+            return true;
+        }
+    }
+
+    private static final class FileCursor extends RunCursor {
+        private final DataInputStream in;
+
+        FileCursor(Path path, int run) throws IOException {
+            super(run);
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            try {
+                key = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            rid = in.readLong();
+            return true;
+        }
+
+        @Override
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // read-only; the file is deleted with the sorter
+            }
+        }
+    }
+}
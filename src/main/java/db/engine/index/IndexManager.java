@@ -5,61 +5,300 @@ import db.engine.catalog.IndexSchema;
 import db.engine.catalog.TableSchema;
 import db.engine.catalog.ColumnSchema;
 import db.engine.catalog.DataType;
+import db.engine.storage.BufferManager;
 import db.engine.storage.StorageManager;
 import db.engine.storage.RID;
 import db.engine.storage.Record;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+/**
+ * Keeps the B+ tree indexes of the catalog in step with their tables. Each index lives in its
+ * own file (see DiskBPlusTree), paged through the storage manager's buffer pool. Indexes
+ * registered in the catalog are opened when the manager is constructed; one whose file was
+ * not closed cleanly is rebuilt from its table. Changes made to a table while no IndexManager
+ * is attached are not seen by its indexes.
+ * An index is built from its table bottom-up: the (key, RID) pairs of a heap scan are sorted,
+ * spilling sorted runs to disk past SORT_RUN_ENTRIES, and written out as packed leaves and the
+ * levels above them (see DiskBPlusTree.bulkBuilder). Indexes built together on one table
+ * (createIndexes, rebuildIndexes, rebuilds on open) share a single heap scan, split into page
+ * ranges scanned by a fork-join pool with one worker per core.
+ */
 public class IndexManager {
+    /** Percentage of each node filled by a bulk build when the index does not set one. */
+    public static final int DEFAULT_FILL_FACTOR = 90;
+    // Entries sorted in memory before a run is spilled (20 bytes each while sorting)
+    static final int SORT_RUN_ENTRIES = 1 << 22;
+    // Heap pages scanned by one task of an index build
+    static final int SCAN_CHUNK_PAGES = 256;
+    /** Directory new index files are created in unless the manager is given another. */
+    public static final String DEFAULT_INDEX_DIR = "indexes";
+
     private CatalogManager catalog;
     private StorageManager storage;
+    private final BufferManager pool;
+    private final String indexDir;
     private final Map<String, IndexState> indexStates;
 
     public IndexManager(CatalogManager catalog, StorageManager storage) {
+        this(catalog, storage, DEFAULT_INDEX_DIR);
+    }
+
+    /** Manager creating new index files in indexDir; existing indexes stay where the catalog says. */
+    public IndexManager(CatalogManager catalog, StorageManager storage, String indexDir) {
         this.catalog = catalog;
         this.storage = storage;
+        this.indexDir = indexDir;
+        this.pool = storage.getBufferManager();
         this.indexStates = new HashMap<>();
         this.storage.attachIndexManager(this);
+        openIndexes();
+    }
+
+    // Open every catalog index whose table exists, rebuilding the ones that cannot be trusted
+    // (one scan per table for all of its rebuilds)
+    private void openIndexes() {
+        Map<String, List<BuildTarget>> rebuilds = new LinkedHashMap<>();
+        for (IndexSchema iSchema : catalog.allIndexSchemas().values()) {
+            TableSchema tSchema = catalog.getTableSchema(iSchema.table());
+            if (tSchema == null) continue;
+            int colIndex = findColumnIndex(tSchema.columns(), iSchema.column());
+            if (colIndex == -1) continue;
+            int fill = effectiveFillFactor(iSchema.fillFactor());
+            DiskBPlusTree tree = DiskBPlusTree.open(pool, iSchema.filePath());
+            if (tree == null) {
+                System.out.println("[IndexManager] Rebuilding index " + iSchema.name() + " from " + iSchema.table());
+                rebuilds.computeIfAbsent(iSchema.table(), t -> new ArrayList<>())
+                        .add(new BuildTarget(iSchema, colIndex, effectiveFanout(iSchema.fanout()), fill));
+                continue;
+            }
+            indexStates.put(iSchema.name(), new IndexState(iSchema.name(), iSchema.table(), iSchema.column(), colIndex, fill, tree));
+        }
+        rebuilds.forEach(this::buildIndexes);
     }
 
-    // Create index for a table column (only INT supported for now)
+    /** Create index for a table column with nodes sized to fill a page (see the fanout overload). */
     public void createIndex(String indexName, String tableName, String columnName) {
-        TableSchema tSchema = catalog.getTableSchema(tableName);
-        if (tSchema == null) throw new IllegalArgumentException("Table not found: " + tableName);
-
-        List<ColumnSchema> cols = tSchema.columns();
-        int colIndex = findColumnIndex(cols, columnName);
-        if (colIndex == -1) throw new IllegalArgumentException("Column not found: " + columnName);
-        if (cols.get(colIndex).type() != DataType.INT) {
-            throw new IllegalArgumentException("Indexing only supported on INT columns");
-        }
-
-    // Build in-memory B+ tree using RIDs via storage heap scan
-        BPlusTree tree = new BPlusTree(4);
-        storage.scan(tableName, (rid, rec) -> {
-            Object v = rec.getValues().get(colIndex);
-            if (!(v instanceof Integer)) {
-                throw new IllegalStateException("Indexed column expected INT but found: " + (v == null ? "null" : v.getClass().getSimpleName()));
+        createIndex(indexName, tableName, columnName, 0);
+    }
+
+    /**
+     * Create index for a table column (only INT supported for now). fanout is the maximum number
+     * of children per node, 0 for as many as fit in a page. Nodes are whole pages either way, so a
+     * smaller fanout gives a taller tree in a proportionally larger file. Asking again for an index that
+     * already exists with the same definition is a no-op: it was opened with the manager and has
+     * been kept up to date.
+     */
+    public void createIndex(String indexName, String tableName, String columnName, int fanout) {
+        createIndex(indexName, tableName, columnName, fanout, 0);
+    }
+
+    /**
+     * Create index for a table column with the given fanout (0 = sized to the page) and fill
+     * factor: the percentage of each node filled by the build, 10..100, 0 for DEFAULT_FILL_FACTOR.
+     * Space left free lets inserts after the build land without splitting every node.
+     */
+    public void createIndex(String indexName, String tableName, String columnName, int fanout, int fillFactor) {
+        createIndexes(tableName, List.of(new IndexDefinition(indexName, columnName, fanout, fillFactor)));
+    }
+
+    /** An index to create on a table; fanout and fillFactor as for createIndex, 0 for the defaults. */
+    public record IndexDefinition(String indexName, String columnName, int fanout, int fillFactor) {}
+
+    /**
+     * Create several indexes on one table from a single heap scan. Each definition is checked as
+     * createIndex checks it, before anything is built; ones that already exist are skipped.
+     */
+    public void createIndexes(String tableName, List<IndexDefinition> definitions) {
+        List<BuildTarget> targets = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (IndexDefinition def : definitions) {
+            String indexName = def.indexName();
+            int order = effectiveFanout(def.fanout());
+            int fill = effectiveFillFactor(def.fillFactor());
+            if (!names.add(indexName)) throw new IllegalArgumentException("Index " + indexName + " given twice");
+            IndexState existing = indexStates.get(indexName);
+            if (existing != null) {
+                if (existing.tableName.equals(tableName) && existing.columnName.equals(def.columnName())
+                        && existing.tree.getOrder() == order && existing.fillFactor == fill) continue;
+                throw new IllegalArgumentException("Index " + indexName + " already exists on " + existing.tableName
+                        + "(" + existing.columnName + ") with fanout " + existing.tree.getOrder() + " and fill factor " + existing.fillFactor);
             }
-            tree.insert((Integer) v, rid);
-        });
+            TableSchema tSchema = catalog.getTableSchema(tableName);
+            if (tSchema == null) throw new IllegalArgumentException("Table not found: " + tableName);
+
+            List<ColumnSchema> cols = tSchema.columns();
+            int colIndex = findColumnIndex(cols, def.columnName());
+            if (colIndex == -1) throw new IllegalArgumentException("Column not found: " + def.columnName());
+            if (cols.get(colIndex).type() != DataType.INT) {
+                throw new IllegalArgumentException("Indexing only supported on INT columns");
+            }
+            String filePath = new File(indexDir, indexName + ".idx").getPath();
+            targets.add(new BuildTarget(new IndexSchema(indexName, tableName, def.columnName(), filePath, def.fanout(), def.fillFactor()),
+                    colIndex, order, fill));
+        }
+        if (targets.isEmpty()) return;
+        buildIndexes(tableName, targets);
+
+        // Register indexes in catalog
+        for (BuildTarget target : targets) catalog.registerIndex(target.schema());
+    }
+
+    /**
+     * Rebuild every index of a table from the rows now in it, with one heap scan; returns the
+     * number of indexes rebuilt. Each keeps its fanout and fill factor.
+     */
+    public int rebuildIndexes(String tableName) {
+        if (catalog.getTableSchema(tableName) == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        List<BuildTarget> targets = new ArrayList<>();
+        for (Map.Entry<String, IndexState> e : indexStates.entrySet()) {
+            IndexState state = e.getValue();
+            if (!state.tableName.equals(tableName)) continue;
+            targets.add(new BuildTarget(catalog.getIndexSchema(e.getKey()), state.columnIndex, state.tree.getOrder(), state.fillFactor));
+        }
+        buildIndexes(tableName, targets);
+        return targets.size();
+    }
 
-        indexStates.put(indexName, new IndexState(indexName, tableName, columnName, colIndex, tree));
+    /** Fanout used when none is given: as many children as fit in one page of the buffer pool. */
+    public int defaultFanout() {
+        return DiskBPlusTree.maxOrder(pool.getPageSize());
+    }
 
-        // Register index in catalog
-        IndexSchema iSchema = new IndexSchema(indexName, tableName, columnName, "indexes/" + indexName + ".idx");
-        catalog.registerIndex(iSchema);
+    private int effectiveFanout(int fanout) {
+        if (fanout < 0) throw new IllegalArgumentException("fanout must not be negative (got " + fanout + ")");
+        return fanout == 0 ? defaultFanout() : fanout;
+    }
+
+    private static int effectiveFillFactor(int fillFactor) {
+        if (fillFactor == 0) return DEFAULT_FILL_FACTOR;
+        if (fillFactor < 10 || fillFactor > 100) {
+            throw new IllegalArgumentException("fill factor must be between 10 and 100 (got " + fillFactor + ")");
+        }
+        return fillFactor;
+    }
 
+    /** Shape of an index tree, for diagnostics and benchmarks. */
+    public record IndexStats(int fanout, int height, int nodes) {}
+
+    public IndexStats stats(String indexName) {
+        IndexState state = indexStates.get(indexName);
+        if (state == null) throw new IllegalArgumentException("Index not found: " + indexName);
+        return new IndexStats(state.tree.getOrder(), state.tree.height(), state.tree.nodeCount());
+    }
+
+    /** Remove an index: its file is deleted and it is dropped from the catalog. */
+    public void dropIndex(String indexName) {
+        IndexSchema iSchema = catalog.getIndexSchema(indexName);
+        IndexState state = indexStates.remove(indexName);
+        if (state == null && iSchema == null) throw new IllegalArgumentException("Index not found: " + indexName);
+        String filePath = state != null ? state.tree.filePath() : iSchema.filePath(); // not opened if its table is gone
+        pool.invalidateFile(filePath);
+        pool.getDiskManager().closeFile(filePath);
         try {
-            File f = new File("indexes/" + indexName + ".idx");
-            f.getParentFile().mkdirs();
-            f.createNewFile();
+            java.nio.file.Files.deleteIfExists(new File(filePath).toPath());
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new RuntimeException("Failed deleting index file " + filePath, e);
+        }
+        catalog.unregisterIndex(indexName);
+    }
+
+    /** Write every index back to its file and mark it closed cleanly (see DiskBPlusTree.close). */
+    public void close() {
+        for (IndexState state : indexStates.values()) state.tree.close();
+    }
+
+    // An index to build: its definition, the position of its column and its effective shape
+    private record BuildTarget(IndexSchema schema, int columnIndex, int order, int fillFactor) {}
+
+    // Build fresh trees for indexes of one table, bottom-up, from a single heap scan. The pages
+    // are split into ranges of SCAN_CHUNK_PAGES scanned by a fork-join pool, a wave of ranges at
+    // a time to bound memory; each range yields one sorted run per indexed column. The runs go
+    // to the indexes' sorters in page order, so equal keys come out in heap order, as from a
+    // sequential scan.
+    private void buildIndexes(String tableName, List<BuildTarget> targets) {
+        if (targets.isEmpty()) return;
+        int[] columns = targets.stream().mapToInt(BuildTarget::columnIndex).distinct().toArray();
+        List<IndexEntrySorter> sorters = new ArrayList<>(targets.size());
+        for (BuildTarget target : targets) {
+            Path spillDir = Path.of(target.schema().filePath()).toAbsolutePath().getParent();
+            sorters.add(new IndexEntrySorter(SORT_RUN_ENTRIES, spillDir));
+        }
+        ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            int pages = storage.pageCount(tableName);
+            int wave = 2 * workers.getParallelism();
+            List<Callable<IndexEntrySorter.SortedRun[]>> tasks = new ArrayList<>(wave);
+            for (int from = 0; from < pages; from += SCAN_CHUNK_PAGES) {
+                int start = from;
+                int end = Math.min(pages, from + SCAN_CHUNK_PAGES);
+                tasks.add(() -> scanRange(tableName, columns, start, end));
+                if (tasks.size() < wave && end < pages) continue;
+                for (Future<IndexEntrySorter.SortedRun[]> done : workers.invokeAll(tasks)) {
+                    IndexEntrySorter.SortedRun[] runs = done.get();
+                    for (int t = 0; t < targets.size(); t++) {
+                        sorters.get(t).addSortedRun(runs[indexOf(columns, targets.get(t).columnIndex())]);
+                    }
+                }
+                tasks.clear();
+            }
+            for (int t = 0; t < targets.size(); t++) {
+                BuildTarget target = targets.get(t);
+                IndexSchema iSchema = target.schema();
+                DiskBPlusTree tree = DiskBPlusTree.create(pool, iSchema.filePath(), target.order());
+                DiskBPlusTree.Builder builder = tree.bulkBuilder(target.fillFactor() / 100.0);
+                sorters.get(t).drainTo(builder);
+                builder.finish();
+                indexStates.put(iSchema.name(), new IndexState(iSchema.name(), tableName, iSchema.column(),
+                        target.columnIndex(), target.fillFactor(), tree));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted building indexes of " + tableName, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException("Failed building indexes of " + tableName, e.getCause());
+        } finally {
+            workers.shutdown();
+            for (IndexEntrySorter sorter : sorters) sorter.close();
+        }
+    }
+
+    // One task of buildIndexes: the entries of heap pages [fromPage, toPage), one sorted run per column
+    private IndexEntrySorter.SortedRun[] scanRange(String tableName, int[] columns, int fromPage, int toPage) {
+        int[][] keys = new int[columns.length][256];
+        long[][] rids = {new long[256]};
+        int[] count = {0};
+        storage.scanViews(tableName, fromPage, toPage, (pageId, slotId, view) -> {
+            int n = count[0];
+            if (n == rids[0].length) {
+                rids[0] = Arrays.copyOf(rids[0], 2 * n);
+                for (int c = 0; c < columns.length; c++) keys[c] = Arrays.copyOf(keys[c], 2 * n);
+            }
+            for (int c = 0; c < columns.length; c++) {
+                if (view.isNull(columns[c])) throw new IllegalStateException("Indexed column expected INT but found: null");
+                keys[c][n] = view.getInt(columns[c]);
+            }
+            rids[0][n] = BPlusTree.pack(pageId, slotId);
+            count[0] = n + 1;
+        });
+        IndexEntrySorter.SortedRun[] runs = new IndexEntrySorter.SortedRun[columns.length];
+        for (int c = 0; c < columns.length; c++) runs[c] = IndexEntrySorter.sort(keys[c], rids[0], count[0]);
+        return runs;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
         }
+        return -1;
     }
 
     // Lookup using an index
@@ -134,6 +373,45 @@ public class IndexManager {
         }
     }
 
+    /** Distinct columns of a table that carry an index (empty if none). */
+    public int[] indexedColumns(String tableName) {
+        return indexStates.values().stream()
+                .filter(s -> s.tableName.equals(tableName))
+                .mapToInt(s -> s.columnIndex)
+                .distinct()
+                .toArray();
+    }
+
+    /**
+     * To be called by StorageManager after a bulk load: keys[i] of columnIndex belongs to the row
+     * at rids[i] (pageId << 32 | slotId). An empty index is built bottom-up from the sorted
+     * entries; otherwise they are inserted in key order, so each insert lands next to the
+     * previous one instead of at a random leaf.
+     */
+    public void onTableBulkLoad(String tableName, int columnIndex, int[] keys, long[] rids, int count) {
+        long[] order = new long[count]; // key in the high half, row number in the low half
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) keys[i] << 32) | i;
+        }
+        Arrays.parallelSort(order);
+        for (IndexState state : indexStates.values()) {
+            if (!state.tableName.equals(tableName) || state.columnIndex != columnIndex) continue;
+            if (state.tree.isEmpty()) {
+                DiskBPlusTree.Builder builder = state.tree.bulkBuilder(state.fillFactor / 100.0);
+                for (long o : order) {
+                    int i = (int) o;
+                    builder.add(keys[i], rids[i]);
+                }
+                builder.finish();
+                continue;
+            }
+            for (long o : order) {
+                int i = (int) o;
+                state.tree.insert(keys[i], rids[i]);
+            }
+        }
+    }
+
     // To be called by StorageManager after a deletion; oldRecord supplies the key for removal.
     public void onTableDelete(String tableName, RID rid, Record oldRecord) {
         if (oldRecord == null) return; // safety
@@ -157,12 +435,16 @@ public class IndexManager {
     // Runtime index state holder
     private static final class IndexState {
         final String tableName;
+        final String columnName;
         final int columnIndex;
-        final BPlusTree tree;
+        final int fillFactor; // percent
+        final DiskBPlusTree tree;
 
-        IndexState(String indexName, String tableName, String columnName, int columnIndex, BPlusTree tree) {
+        IndexState(String indexName, String tableName, String columnName, int columnIndex, int fillFactor, DiskBPlusTree tree) {
             this.tableName = tableName;
+            this.columnName = columnName;
             this.columnIndex = columnIndex;
+            this.fillFactor = fillFactor;
             this.tree = tree;
         }
     }
@@ -0,0 +1,9 @@
+package db.engine.query;
+
+/** Logical representation of COPY tableName FROM 'file.csv' [HEADER] statement. */
+public record CopyQuery(String tableName, String filePath, boolean header) implements Query {
+    public CopyQuery {
+        if (tableName == null || tableName.isBlank()) throw new IllegalArgumentException("tableName required");
+        if (filePath == null || filePath.isBlank()) throw new IllegalArgumentException("filePath required");
+    }
+}
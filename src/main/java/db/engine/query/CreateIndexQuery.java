@@ -0,0 +1,17 @@
+package db.engine.query;
+
+/**
+ * Logical representation of CREATE INDEX indexName ON tableName (column) [WITH (fanout = n, fillfactor = p)];
+ * 0 leaves an option at its default (fanout sized to the page, IndexManager.DEFAULT_FILL_FACTOR).
+ * A node always occupies a full page, so a fanout below the default makes the index file
+ * larger by about default / fanout without saving anything per node.
+ */
+public record CreateIndexQuery(String indexName, String tableName, String columnName, int fanout, int fillFactor) implements Query {
+    public CreateIndexQuery {
+        if (indexName == null || indexName.isBlank()) throw new IllegalArgumentException("indexName required");
+        if (tableName == null || tableName.isBlank()) throw new IllegalArgumentException("tableName required");
+        if (columnName == null || columnName.isBlank()) throw new IllegalArgumentException("columnName required");
+        if (fanout < 0) throw new IllegalArgumentException("fanout must not be negative");
+        if (fillFactor < 0) throw new IllegalArgumentException("fillFactor must not be negative");
+    }
+}
@@ -0,0 +1,123 @@
+package db.engine.query;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import db.engine.catalog.ColumnSchema;
+import db.engine.storage.Record;
+
+/**
+ * Streams the lines of a CSV input as records typed by a table's columns, one row at a
+ * time, so a load never holds the whole file in memory.
+ * Fields are comma separated; a field in double quotes may contain commas, line breaks and
+ * doubled quotes ("") for a literal quote. Blank lines are skipped.
+ */
+final class CsvRecordReader implements Iterator<Record>, AutoCloseable {
+    private final BufferedReader in;
+    private final List<ColumnSchema> columns;
+    private final StringBuilder field = new StringBuilder();
+    private List<String> next;
+    private long line;     // lines consumed so far
+    private long nextLine; // diagnostics: line the row in next starts on
+
+    CsvRecordReader(Reader in, List<ColumnSchema> columns, boolean header) {
+        this.in = in instanceof BufferedReader b ? b : new BufferedReader(in, 1 << 16);
+        this.columns = columns;
+        advance();
+        if (header) advance();
+    }
+
+    @Override
+    public boolean hasNext() { return next != null; }
+
+    @Override
+    public Record next() {
+        if (next == null) throw new NoSuchElementException();
+        List<String> fields = next;
+        long at = nextLine;
+        advance();
+        if (fields.size() != columns.size()) {
+            throw new IllegalArgumentException("CSV line " + at + ": expected " + columns.size() + " fields, got " + fields.size());
+        }
+        List<Object> vals = new ArrayList<>(fields.size());
+        for (int i = 0; i < fields.size(); i++) vals.add(convert(columns.get(i), fields.get(i), at));
+        return new Record(vals);
+    }
+
+    @Override
+    public void close() throws IOException { in.close(); }
+
+    private Object convert(ColumnSchema col, String raw, long at) {
+        switch (col.type()) {
+            case INT -> {
+                try {
+                    return Integer.parseInt(raw.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("CSV line " + at + ": invalid INT for column '" + col.name() + "': " + raw, e);
+                }
+            }
+            case BOOLEAN -> {
+                String b = raw.trim();
+                if (b.equalsIgnoreCase("true")) return Boolean.TRUE;
+                if (b.equalsIgnoreCase("false")) return Boolean.FALSE;
+                throw new IllegalArgumentException("CSV line " + at + ": invalid BOOLEAN for column '" + col.name() + "': " + raw);
+            }
+            default -> { return raw; }
+        }
+    }
+
+    // Read the next non-blank row into next (null at end of input)
+    private void advance() {
+        try {
+            do {
+                next = readRow();
+            } while (next != null && next.size() == 1 && next.get(0).isEmpty());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed reading CSV input", e);
+        }
+    }
+
+    private List<String> readRow() throws IOException {
+        int c = in.read();
+        if (c < 0) return null;
+        nextLine = ++line;
+        List<String> fields = new ArrayList<>(columns.size());
+        field.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) throw new IllegalArgumentException("CSV line " + nextLine + ": unterminated quoted field");
+                if (c == '"') {
+                    in.mark(1);
+                    int d = in.read();
+                    if (d == '"') field.append('"');
+                    else {
+                        quoted = false;
+                        if (d >= 0) in.reset();
+                    }
+                } else {
+                    if (c == '\n') line++;
+                    field.append((char) c);
+                }
+            } else if (c < 0 || c == '\n') {
+                break;
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -2,12 +2,17 @@ package db.engine.query;
 
 import java.util.List;
 
-/** Logical representation of an INSERT statement. */
-public record InsertQuery(String tableName, List<String> columns, List<Object> values) implements Query {
+/** Logical representation of an INSERT statement; rows holds one value list per VALUES tuple. */
+public record InsertQuery(String tableName, List<String> columns, List<List<Object>> rows) implements Query {
     public InsertQuery {
         if (tableName == null || tableName.isBlank()) throw new IllegalArgumentException("tableName required");
         if (columns == null || columns.isEmpty()) throw new IllegalArgumentException("columns required");
-        if (values == null || values.isEmpty()) throw new IllegalArgumentException("values required");
-        if (columns.size() != values.size()) throw new IllegalArgumentException("Column/value count mismatch: " + columns.size() + " vs " + values.size());
+        if (rows == null || rows.isEmpty()) throw new IllegalArgumentException("values required");
+        for (List<Object> values : rows) {
+            if (values.size() != columns.size()) throw new IllegalArgumentException("Column/value count mismatch: " + columns.size() + " vs " + values.size());
+        }
     }
-}
\ No newline at end of file
+
+    /** Values of the first (for a single-row INSERT, the only) tuple. */
+    public List<Object> values() { return rows.get(0); }
+}
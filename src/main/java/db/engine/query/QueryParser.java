@@ -2,6 +2,7 @@ package db.engine.query;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -168,9 +169,9 @@ public class QueryParser {
         return out;
     }
 
-    // INSERT INTO tableName (col1, col2, ...) VALUES (val1, val2, ...);
+    // INSERT INTO tableName (col1, col2, ...) VALUES (val1, val2, ...)[, (val1, val2, ...) ...];
     private static final Pattern INSERT_PATTERN = Pattern.compile(
-        "^INSERT\\s+INTO\\s+([a-zA-Z_][a-zA-Z0-9_]*)\\s*\\(([^)]+)\\)\\s+VALUES\\s*\\(([^)]+)\\)\\s*;?$",
+        "^INSERT\\s+INTO\\s+([a-zA-Z_][a-zA-Z0-9_]*)\\s*\\(([^)]+)\\)\\s+VALUES\\s*(\\(.+\\))\\s*;?$",
         Pattern.CASE_INSENSITIVE);
 
     // DELETE FROM tableName [WHERE <pred>];
@@ -179,6 +180,29 @@ public class QueryParser {
         "(?:\\s+WHERE\\s+(.+))?;?$",
         Pattern.CASE_INSENSITIVE);
 
+    // VACUUM tableName;
+    private static final Pattern VACUUM_PATTERN = Pattern.compile(
+        "^VACUUM\\s+([a-zA-Z_][a-zA-Z0-9_]*)\\s*;?$",
+        Pattern.CASE_INSENSITIVE);
+
+    // COPY tableName FROM 'file.csv' [HEADER];
+    private static final Pattern COPY_PATTERN = Pattern.compile(
+        "^COPY\\s+([a-zA-Z_][a-zA-Z0-9_]*)\\s+FROM\\s+'([^']+)'(\\s+HEADER)?\\s*;?$",
+        Pattern.CASE_INSENSITIVE);
+
+    // REINDEX [TABLE] tableName;
+    private static final Pattern REINDEX_PATTERN = Pattern.compile(
+        "^REINDEX\\s+(?:TABLE\\s+)?([a-zA-Z_][a-zA-Z0-9_]*)\\s*;?$",
+        Pattern.CASE_INSENSITIVE);
+
+    // CREATE INDEX indexName ON tableName (column) [WITH (fanout = n, fillfactor = p)];
+    private static final Pattern CREATE_INDEX_PATTERN = Pattern.compile(
+        "^CREATE\\s+INDEX\\s+([a-zA-Z_][a-zA-Z0-9_]*)\\s+ON\\s+([a-zA-Z_][a-zA-Z0-9_]*)\\s*\\(\\s*([a-zA-Z_][a-zA-Z0-9_]*)\\s*\\)" +
+        "(?:\\s+WITH\\s*\\(([^)]*)\\))?\\s*;?$",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern INDEX_OPTION_PATTERN = Pattern.compile(
+        "^\\s*([a-zA-Z_]+)\\s*=\\s*(\\d+)\\s*$");
+
     public InsertQuery parseInsert(String sql) {
         if (sql == null) throw new IllegalArgumentException("sql must not be null");
         String trimmed = sql.trim();
@@ -192,12 +216,44 @@ public class QueryParser {
             String col = c.trim(); if (col.isEmpty()) throw new IllegalArgumentException("Empty column name in INSERT");
             cols.add(col);
         }
-        List<Object> vals = new ArrayList<>();
-        for (String vRaw : splitValues(valsPart)) {
-            vals.add(parseLiteral(vRaw.trim()));
+        List<List<Object>> rows = new ArrayList<>();
+        for (String tuple : splitTuples(valsPart, sql)) {
+            List<Object> vals = new ArrayList<>(cols.size());
+            for (String vRaw : splitValues(tuple)) {
+                vals.add(parseLiteral(vRaw.trim()));
+            }
+            if (cols.size() != vals.size()) throw new IllegalArgumentException("Columns count " + cols.size() + " != values count " + vals.size());
+            rows.add(vals);
+        }
+        return new InsertQuery(table, cols, rows);
+    }
+
+    // Split "(...), (...)" into the tuple bodies, respecting parentheses and commas inside single quotes
+    private List<String> splitTuples(String raw, String sql) {
+        List<String> out = new ArrayList<>();
+        boolean inQuote = false;
+        boolean needComma = false; // a tuple just closed
+        int start = -1;
+        for (int i = 0; i < raw.length(); i++) {
+            char ch = raw.charAt(i);
+            if (ch == '\'') {
+                inQuote = !inQuote;
+            } else if (inQuote || start >= 0 && ch != ')') {
+                continue;
+            } else if (ch == ')' && start >= 0) { // a ')' with no tuple open is malformed, below
+                out.add(raw.substring(start, i));
+                start = -1;
+                needComma = true;
+            } else if (ch == '(' && !needComma) {
+                start = i + 1;
+            } else if (ch == ',' && needComma) {
+                needComma = false;
+            } else if (!Character.isWhitespace(ch)) {
+                throw new IllegalArgumentException("Malformed INSERT: " + sql);
+            }
         }
-        if (cols.size() != vals.size()) throw new IllegalArgumentException("Columns count " + cols.size() + " != values count " + vals.size());
-        return new InsertQuery(table, cols, vals);
+        if (inQuote || !needComma) throw new IllegalArgumentException("Malformed INSERT: " + sql);
+        return out;
     }
 
     // Split values respecting commas inside single quotes
@@ -231,4 +287,51 @@ public class QueryParser {
         if (whereTail != null) where = parseWhere(whereTail.trim());
         return new DeleteQuery(table, where);
     }
+
+    public VacuumQuery parseVacuum(String sql) {
+        if (sql == null) throw new IllegalArgumentException("sql must not be null");
+        Matcher m = VACUUM_PATTERN.matcher(sql.trim());
+        if (!m.matches()) throw new IllegalArgumentException("Malformed VACUUM: " + sql);
+        return new VacuumQuery(m.group(1).trim());
+    }
+
+    public CopyQuery parseCopy(String sql) {
+        if (sql == null) throw new IllegalArgumentException("sql must not be null");
+        Matcher m = COPY_PATTERN.matcher(sql.trim());
+        if (!m.matches()) throw new IllegalArgumentException("Malformed COPY: " + sql);
+        return new CopyQuery(m.group(1).trim(), m.group(2), m.group(3) != null);
+    }
+
+    public ReindexQuery parseReindex(String sql) {
+        if (sql == null) throw new IllegalArgumentException("sql must not be null");
+        Matcher m = REINDEX_PATTERN.matcher(sql.trim());
+        if (!m.matches()) throw new IllegalArgumentException("Malformed REINDEX: " + sql);
+        return new ReindexQuery(m.group(1));
+    }
+
+    public CreateIndexQuery parseCreateIndex(String sql) {
+        if (sql == null) throw new IllegalArgumentException("sql must not be null");
+        Matcher m = CREATE_INDEX_PATTERN.matcher(sql.trim());
+        if (!m.matches()) throw new IllegalArgumentException("Malformed CREATE INDEX: " + sql);
+        int fanout = 0;
+        int fillFactor = 0;
+        if (m.group(4) != null) {
+            for (String option : m.group(4).split(",")) {
+                Matcher om = INDEX_OPTION_PATTERN.matcher(option);
+                if (!om.matches()) throw new IllegalArgumentException("Malformed index option: " + option.trim());
+                int value;
+                try {
+                    value = Integer.parseInt(om.group(2));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for " + om.group(1) + ": " + om.group(2));
+                }
+                switch (om.group(1).toLowerCase(Locale.ROOT)) {
+                    case "fanout" -> fanout = value;
+                    case "fillfactor" -> fillFactor = value;
+                    default -> throw new IllegalArgumentException("Unknown index option: " + om.group(1));
+                }
+            }
+        }
+        return new CreateIndexQuery(m.group(1), m.group(2), m.group(3), fanout, fillFactor);
+    }
 }
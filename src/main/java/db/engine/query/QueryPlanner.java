@@ -21,8 +21,11 @@ import db.engine.storage.StorageManager;
  * Planner: builds physical pipeline for a SelectQuery.
  * Current strategy:
  *  1. If there's an INT equality condition on an indexed column: use IndexScanOperator (no extra filter).
- *  2. Otherwise: full table scan (SeqScanOperator) + optional FilterOperator.
- *  3. Apply ProjectionOperator if a non-empty column list was specified (empty list means SELECT *).
+ *  2. Otherwise: full table scan (SeqScanOperator) with the predicate pushed into it.
+ *  3. Select the columns of a non-empty column list (empty list means SELECT *). For a join a
+ *     ProjectionOperator picks them from the joined rows. For a single table the list is pushed
+ *     into the scan: it decodes only the selected columns plus those the filter reads, and a
+ *     ProjectionOperator remains only to drop the filter-only columns.
  */
 public class QueryPlanner {
     private final CatalogManager catalog;
@@ -41,7 +44,6 @@ public class QueryPlanner {
     public Operator plan(SelectQuery query) {
         // If join present, build left & right sources first; else single-table plan.
         Operator root;
-        List<ColumnSchema> finalSchema;
         if (query.join() != null) {
             // Left side
             TableSchema leftTs = catalog.getTableSchema(query.tableName());
@@ -57,49 +59,84 @@ public class QueryPlanner {
             // Build join
             root = new JoinOperator(withSchema(leftSource, leftSchema), withSchema(rightSource, rightSchema),
                                     query.join().leftColumn(), query.join().rightColumn());
-            finalSchema = concatSchemas(leftSchema, rightSchema);
+            List<ColumnSchema> finalSchema = concatSchemas(leftSchema, rightSchema);
                 if (query.where() != null) {
                     // Compile predicate against combined schema by constructing synthetic SelectQuery with base table only (join ignored by compiler) and combined schema passed explicitly.
                     Predicate pred = predicateCompiler.compile(new SelectQuery(query.tableName(), List.of(), query.where(), null), finalSchema);
                     root = new FilterOperator(root, pred);
                 }
+            int[] idxs = resolveColumns(query.columns(), finalSchema); // projection indexes over the joined rows
+            if (idxs != null) root = new ProjectionOperator(root, idxs);
+            return root;
         } else {
             TableSchema ts = catalog.getTableSchema(query.tableName());
             if (ts == null) throw new IllegalArgumentException("Unknown table: " + query.tableName());
             List<ColumnSchema> schema = ts.columns();
-            Predicate pred = null;
+            int[] selected = resolveColumns(query.columns(), schema); // null for SELECT *
             RangePlan rangePlan = tryRangeIndex(query, schema);
             if (rangePlan != null) {
-                root = IndexScanOperator.range(indexManager, storage, rangePlan.indexName, rangePlan.low, rangePlan.high);
+                root = IndexScanOperator.range(indexManager, storage, rangePlan.indexName, rangePlan.low, rangePlan.high, selected);
             } else if (canUseIntEqualityIndex(query, schema)) {
                 Condition c = query.where().conditions().get(0);
                 String indexName = findIndexForColumn(query.tableName(), c.columnName());
                 int key = (Integer) c.literalValue();
-                root = new IndexScanOperator(indexManager, storage, indexName, key);
+                root = new IndexScanOperator(indexManager, storage, indexName, key, selected);
             } else {
-                root = new SeqScanOperator(storage, query.tableName());
-                pred = predicateCompiler.compile(query, schema); // may be null
-                if (pred != null) root = new FilterOperator(root, pred);
+                int[] scanned = withPredicateColumns(selected, query.where(), schema);
+                List<ColumnSchema> scanSchema = scanned == null ? schema : project(schema, scanned);
+                Predicate pred = predicateCompiler.compile(query, scanSchema); // may be null
+                // The scan evaluates the predicate on the page bytes and builds rows only for matches
+                root = new SeqScanOperator(storage, query.tableName(), scanned, pred);
+                if (scanned != null && scanned.length > selected.length) { // drop the columns only the filter needed
+                    int[] keep = new int[selected.length];
+                    for (int i = 0; i < keep.length; i++) keep[i] = i;
+                    root = new ProjectionOperator(root, keep);
+                }
             }
-            finalSchema = schema;
+            return root; // the scan already returns exactly the selected columns
         }
+    }
 
-        List<String> cols = query.columns();
-        if (cols != null && !cols.isEmpty()) {
-            // Build projection indexes over final schema
-            int[] idxs = new int[cols.size()];
-            for (int i = 0; i < cols.size(); i++) {
-                String name = cols.get(i);
-                int found = -1;
-                for (int j = 0; j < finalSchema.size(); j++) {
-                    if (finalSchema.get(j).name().equals(name)) { found = j; break; }
-                }
-                if (found == -1) throw new IllegalArgumentException("Projection column not found: " + name);
-                idxs[i] = found;
+    // Table column positions of a SELECT list; null for SELECT * (empty list)
+    private int[] resolveColumns(List<String> cols, List<ColumnSchema> schema) {
+        if (cols == null || cols.isEmpty()) return null;
+        int[] idxs = new int[cols.size()];
+        for (int i = 0; i < cols.size(); i++) {
+            String name = cols.get(i);
+            int found = -1;
+            for (int j = 0; j < schema.size(); j++) {
+                if (schema.get(j).name().equals(name)) { found = j; break; }
+            }
+            if (found == -1) throw new IllegalArgumentException("Projection column not found: " + name);
+            idxs[i] = found;
+        }
+        return idxs;
+    }
+
+    // Selected columns followed by any further columns the WHERE clause reads; null stays null (all columns)
+    private int[] withPredicateColumns(int[] selected, WhereClause where, List<ColumnSchema> schema) {
+        if (selected == null || where == null) return selected;
+        int[] out = selected;
+        for (Condition c : where.conditions()) {
+            int col = -1;
+            for (int j = 0; j < schema.size(); j++) {
+                if (schema.get(j).name().equals(c.columnName())) { col = j; break; }
+            }
+            if (col == -1) throw new IllegalArgumentException("Predicate column not found: " + c.columnName());
+            boolean present = false;
+            for (int have : out) present |= have == col;
+            if (!present) {
+                out = java.util.Arrays.copyOf(out, out.length + 1);
+                out[out.length - 1] = col;
             }
-            root = new ProjectionOperator(root, idxs);
         }
-        return root;
+        return out;
+    }
+
+    private static List<ColumnSchema> project(List<ColumnSchema> schema, int[] idxs) {
+        List<ColumnSchema> out = new ArrayList<>(idxs.length);
+        for (int idx : idxs) out.add(schema.get(idx));
+        return out;
     }
 
     private Operator withSchema(Operator op, List<ColumnSchema> schema) {
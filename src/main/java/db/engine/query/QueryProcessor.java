@@ -1,5 +1,9 @@
 package db.engine.query;
 
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -22,11 +26,13 @@ public class QueryProcessor {
     private final QueryPlanner planner;
     private final QueryExecutor executor = new QueryExecutor();
     private final StorageManager storage;
+    private final IndexManager indexManager; // may be null: no CREATE INDEX
     private final PredicateCompiler compiler = new PredicateCompiler();
 
     public QueryProcessor(CatalogManager catalog, StorageManager storage, IndexManager indexManager) {
         this.planner = new QueryPlanner(catalog, storage, compiler, indexManager);
         this.storage = storage;
+        this.indexManager = indexManager;
     }
 
     public Iterable<Row> stream(String sql) {
@@ -38,8 +44,12 @@ public class QueryProcessor {
     /**
      * Unified execution entry point.
      * SELECT  -> returns streamed rows.
-     * INSERT  -> returns single diagnostic row: ["INSERT", pageId, slotId].
+     * INSERT  -> returns single diagnostic row: ["INSERT", pageId, slotId]; for several VALUES tuples ["INSERT", rowsInserted].
      * DELETE  -> returns single diagnostic row: ["DELETE", deletedCount].
+     * VACUUM  -> returns single diagnostic row: ["VACUUM", pagesCompacted, bytesReclaimed, pagesTruncated].
+     * COPY    -> returns single diagnostic row: ["COPY", rowsLoaded].
+     * CREATE INDEX -> returns single diagnostic row: ["CREATE INDEX", fanout, height, nodes].
+     * REINDEX -> returns single diagnostic row: ["REINDEX", indexesRebuilt].
      */
     public Iterable<Row> execute(String sql) {
         if (sql == null) throw new IllegalArgumentException("sql must not be null");
@@ -52,8 +62,16 @@ public class QueryProcessor {
             return List.of(executeInsert(trimmed));
         } else if (upper.startsWith("DELETE")) {
             return List.of(executeDelete(trimmed));
+        } else if (upper.startsWith("VACUUM")) {
+            return List.of(executeVacuum(trimmed));
+        } else if (upper.startsWith("COPY")) {
+            return List.of(executeCopy(trimmed));
+        } else if (upper.startsWith("CREATE")) {
+            return List.of(executeCreateIndex(trimmed));
+        } else if (upper.startsWith("REINDEX")) {
+            return List.of(executeReindex(trimmed));
         } else {
-            throw new IllegalArgumentException("Unrecognized statement (expected SELECT/INSERT/DELETE): " + sql);
+            throw new IllegalArgumentException("Unrecognized statement (expected SELECT/INSERT/DELETE/VACUUM/COPY/CREATE INDEX/REINDEX): " + sql);
         }
     }
 
@@ -65,17 +83,29 @@ public class QueryProcessor {
         var schemaCols = ts.columns();
         Map<String,Integer> posMap = new HashMap<>();
         for (int i=0;i<schemaCols.size();i++) posMap.put(schemaCols.get(i).name(), i);
-        Object[] full = new Object[schemaCols.size()];
-        for (int i=0;i<iq.columns().size();i++) {
+        // Resolve the listed columns to schema positions once for all tuples
+        int[] positions = new int[iq.columns().size()];
+        boolean[] covered = new boolean[schemaCols.size()];
+        for (int i=0;i<positions.length;i++) {
             String col = iq.columns().get(i);
             Integer pos = posMap.get(col);
             if (pos == null) throw new IllegalArgumentException("Column not found in table schema: " + col);
-            full[pos] = iq.values().get(i);
+            positions[i] = pos;
+            covered[pos] = true;
         }
-        for (int i=0;i<full.length;i++) if (full[i] == null)
+        for (int i=0;i<covered.length;i++) if (!covered[i])
             throw new IllegalArgumentException("Missing value for column '" + schemaCols.get(i).name() + "' (no default support)");
-        var rec = new Record(Arrays.asList(full));
-        RID rid = storage.insert(iq.tableName(), rec);
+        List<Record> records = new ArrayList<>(iq.rows().size());
+        for (List<Object> values : iq.rows()) {
+            Object[] full = new Object[schemaCols.size()];
+            for (int i=0;i<positions.length;i++) full[positions[i]] = values.get(i);
+            records.add(new Record(Arrays.asList(full)));
+        }
+        if (records.size() > 1) {
+            List<RID> rids = storage.insertBatch(iq.tableName(), records);
+            return Row.of(new Record(List.of("INSERT", rids.size())), new RID(-1, -1));
+        }
+        RID rid = storage.insert(iq.tableName(), records.get(0));
         return Row.of(new Record(List.of("INSERT", rid.pageId(), rid.slotId())), rid);
     }
 
@@ -102,4 +132,45 @@ public class QueryProcessor {
         int deleted = counter[0];
         return Row.of(new Record(List.of("DELETE", deleted)), new RID(-1, -1));
     }
+
+    /** Parse and execute a VACUUM; returns diagnostic row. */
+    public Row executeVacuum(String sql) {
+        VacuumQuery vq = parser.parseVacuum(sql);
+        if (storage.getCatalog().getTableSchema(vq.tableName()) == null) {
+            throw new IllegalArgumentException("Unknown table: " + vq.tableName());
+        }
+        StorageManager.VacuumStats stats = storage.vacuum(vq.tableName());
+        return Row.of(new Record(List.of("VACUUM", stats.pagesCompacted(), stats.bytesReclaimed(), stats.pagesTruncated())), new RID(-1, -1));
+    }
+
+    /** Parse and execute a COPY (bulk load from a CSV file); returns diagnostic row. */
+    public Row executeCopy(String sql) {
+        CopyQuery cq = parser.parseCopy(sql);
+        var ts = storage.getCatalog().getTableSchema(cq.tableName());
+        if (ts == null) throw new IllegalArgumentException("Unknown table: " + cq.tableName());
+        int loaded;
+        try (CsvRecordReader rows = new CsvRecordReader(new FileReader(cq.filePath(), StandardCharsets.UTF_8), ts.columns(), cq.header())) {
+            loaded = storage.bulkLoad(cq.tableName(), rows);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed reading " + cq.filePath(), e);
+        }
+        return Row.of(new Record(List.of("COPY", loaded)), new RID(-1, -1));
+    }
+
+    /** Parse and execute a CREATE INDEX; returns diagnostic row. */
+    public Row executeCreateIndex(String sql) {
+        CreateIndexQuery cq = parser.parseCreateIndex(sql);
+        if (indexManager == null) throw new IllegalStateException("No index manager attached");
+        indexManager.createIndex(cq.indexName(), cq.tableName(), cq.columnName(), cq.fanout(), cq.fillFactor());
+        IndexManager.IndexStats stats = indexManager.stats(cq.indexName());
+        return Row.of(new Record(List.of("CREATE INDEX", stats.fanout(), stats.height(), stats.nodes())), new RID(-1, -1));
+    }
+
+    /** Parse and execute a REINDEX; returns diagnostic row. */
+    public Row executeReindex(String sql) {
+        ReindexQuery rq = parser.parseReindex(sql);
+        if (indexManager == null) throw new IllegalStateException("No index manager attached");
+        int rebuilt = indexManager.rebuildIndexes(rq.tableName());
+        return Row.of(new Record(List.of("REINDEX", rebuilt)), new RID(-1, -1));
+    }
 }
@@ -0,0 +1,8 @@
+package db.engine.query;
+
+/** Logical representation of REINDEX [TABLE] tableName: rebuild every index of the table. */
+public record ReindexQuery(String tableName) implements Query {
+    public ReindexQuery {
+        if (tableName == null || tableName.isBlank()) throw new IllegalArgumentException("tableName required");
+    }
+}
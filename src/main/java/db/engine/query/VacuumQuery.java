@@ -0,0 +1,8 @@
+package db.engine.query;
+
+/** Logical representation of VACUUM statement. */
+public record VacuumQuery(String tableName) implements Query {
+    public VacuumQuery {
+        if (tableName == null || tableName.isBlank()) throw new IllegalArgumentException("tableName required");
+    }
+}
@@ -0,0 +1,20 @@
+package db.engine.storage;
+
+/**
+ * How heap pages of a table are read.
+ * BUFFERED copies pages into BufferManager frames; MMAP reads records straight out of a
+ * read-only memory mapping of the file and leaves caching to the OS page cache. Writes
+ * always go through the buffer pool.
+ */
+public enum AccessMode {
+    BUFFERED,
+    MMAP;
+
+    public static AccessMode parse(String s) {
+        return switch (s.trim().toLowerCase()) {
+            case "buffered", "pool" -> BUFFERED;
+            case "mmap", "mapped" -> MMAP;
+            default -> throw new IllegalArgumentException("Unknown access mode: " + s + " (expected buffered or mmap)");
+        };
+    }
+}
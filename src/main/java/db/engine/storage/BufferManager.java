@@ -1,92 +1,680 @@
 package db.engine.storage;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.LinkedHashMap;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
 
 /**
- * Very small Last Recently Used (LRU) buffer manager for fixed-size pages.
+ * Very small write-back buffer manager for fixed-size pages.
+ * Callers mutate cached frames in place and mark them dirty; dirty frames are written
+ * back when evicted, on an explicit flush/checkpoint, or by the optional background flusher.
+ *
+ * Frames are handed out pinned: pin() increments the frame's pin count and the caller must
+ * unpin it when done (Page is AutoCloseable, so try-with-resources does this). Pinned frames
+ * are never chosen as eviction victims, so their bytes stay valid while in use.
+ *
+ * The pool is a fixed arena of capacity frames. Each frame's page buffer is allocated once
+ * (on first use) and recycled on eviction; a primitive open-addressing PageTable maps
+ * (fileId, pageId) to frame index, so a hit or a miss allocates nothing once the arena is warm.
+ *
+ * Victim selection is delegated to a ReplacementPolicy (LRU by default; CLOCK and the
+ * scan-resistant 2Q are available). Hits and misses are counted so policies can be compared.
+ *
+ * The arena is partitioned into shards by a hash of the page key. Each shard has its own
+ * frames, page table, policy and latch (its monitor), so threads touching different pages
+ * rarely contend. A miss only holds the latch to claim a frame: the frame is published in
+ * the loading state and the victim write-back and page read run outside the latch. Other
+ * threads asking for that page wait for it to finish loading; everyone else proceeds.
+ *
+ * prefetch() queues pages for a background I/O thread that loads them ahead of a sequential
+ * reader (see ReadAhead); a reader arriving while such a page is loading waits for that read
+ * instead of issuing its own.
+ *
+ * A WriteBackListener (set by the storage layer when logging is on) runs before any dirty page
+ * is written, so the log records describing the page reach disk before the page does.
+ *
+ * Pages get their checksum (see HeapPage) stamped as they are written and verified as they are
+ * read; a mismatch fails the pin with CorruptPageException and is counted in checksumFailures().
  */
 public class BufferManager {
+    private static final int NONE = -1;
+    private static final int MAX_DEFAULT_SHARDS = 16;
+    private static final int MIN_FRAMES_PER_SHARD = 64;
+    private static final int MAX_PENDING_PREFETCHES = 64; // requests beyond this are dropped
+
     private final int pageSize; // size of individual pages; we set it to 4096 bytes by default
     private final int capacity; // max cached pages
+    private final DiskManager disk; // shared open file handles for page I/O
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final int shardCapacity; // frames per shard; global frame index = shard * shardCapacity + local
+
+    private final Map<String, AtomicInteger> pageCounts = new ConcurrentHashMap<>(); // logical page count per file (includes unflushed appends)
+    private Thread flusher; // optional background flusher
+    private volatile boolean flusherStopped;
+    private final Object flusherSignal = new Object(); // wakes the flusher early on shutdown
+    private final BlockingQueue<Prefetch> prefetchQueue = new LinkedBlockingQueue<>(MAX_PENDING_PREFETCHES);
+    private Thread prefetcher; // started on first prefetch()
+    private volatile boolean prefetcherStopped;
+    private final AtomicInteger prefetchedPages = new AtomicInteger(); // diagnostics
+    private final AtomicLong checksumFailures = new AtomicLong();
 
-    private final Map<PageKey, Page> cache;
+    private volatile WriteBackListener writeBackListener; // optional write-ahead hook
+
+    private record Prefetch(String filePath, int firstPage, int count) {}
+
+    /** Hook run before a dirty page's bytes are written to its file. */
+    public interface WriteBackListener {
+        void beforeWriteBack(String filePath, int pageId, byte[] data) throws IOException;
+    }
+
+    // One independently latched partition of the pool; every field is guarded by the shard's monitor
+    private static final class Shard {
+        final int base;            // global index of this shard's first frame
+        final Page[] frames;       // arena; entries created lazily, then reused
+        final PageTable table;     // (fileId, pageId) -> local frame index
+        final PageTable writing;   // keys of evicted dirty pages whose write-back is in flight
+        final ReplacementPolicy policy;
+        final IntPredicate evictable; // never evict frames in use
+        final int[] freeFrames;    // frames released by invalidation, reused before new ones
+        int freeCount;
+        int framesInUse;           // frames [0, framesInUse) have been created
+        int flushPins;             // pins held by flushes in progress; they come back without a caller unpinning
+        long hits;                 // pin() requests served from the pool
+        long misses;               // pin() requests that read from disk
+
+        Shard(int base, int capacity, String policyName) {
+            this.base = base;
+            this.frames = new Page[capacity];
+            this.table = new PageTable(capacity);
+            this.writing = new PageTable(capacity);
+            this.policy = ReplacementPolicy.create(policyName, capacity);
+            this.evictable = idx -> frames[idx].pinCount == 0;
+            this.freeFrames = new int[capacity];
+        }
+    }
 
     public BufferManager(int pageSize, int capacity) {
+        this(new DiskManager(pageSize), pageSize, capacity);
+    }
+
+    public BufferManager(DiskManager disk, int pageSize, int capacity) {
+        this(disk, pageSize, capacity, "lru");
+    }
+
+    /** Pool using the named replacement policy ("lru", "clock" or "2q"). */
+    public BufferManager(DiskManager disk, int pageSize, int capacity, String policyName) {
+        this(disk, pageSize, capacity, policyName, defaultShards(capacity));
+    }
+
+    /** Pool split into shardCount latched partitions (a power of two). */
+    public BufferManager(DiskManager disk, int pageSize, int capacity, String policyName, int shardCount) {
+        if (capacity < 1) throw new IllegalArgumentException("Buffer pool capacity must be >= 1");
+        if (shardCount < 1 || Integer.bitCount(shardCount) != 1 || shardCount > capacity) {
+            throw new IllegalArgumentException("Shard count must be a power of two between 1 and capacity, got " + shardCount);
+        }
+        this.disk = disk;
         this.pageSize = pageSize;
         this.capacity = capacity;
-        // LinkedHashMap with access-ordering to implement LRU cache
-        this.cache = new LinkedHashMap<>(capacity, 0.75f, true) {
-            @Override   // Enforce LRU: when size exceeds capacity, remove oldest unused page from cache
-            protected boolean removeEldestEntry(Map.Entry<PageKey, Page> eldest) {
-                return size() > BufferManager.this.capacity;
-            }
-        };
+        this.shardCapacity = (capacity + shardCount - 1) / shardCount;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) shards[i] = new Shard(i * shardCapacity, shardCapacity, policyName);
+        this.shardMask = shardCount - 1;
+    }
+
+    /** Shards of at least 64 frames each, at most 16. */
+    public static int defaultShards(int capacity) {
+        int n = 1;
+        while (n < MAX_DEFAULT_SHARDS && capacity / (n * 2) >= MIN_FRAMES_PER_SHARD) n <<= 1;
+        return n;
     }
 
     public int getPageSize() { return pageSize; }
+    public int getCapacity() { return capacity; }
+    public int getShardCount() { return shards.length; }
+    public DiskManager getDiskManager() { return disk; }
+    public String getPolicyName() { return shards[0].policy.name(); }
+
+    /** Pages read from disk whose checksum did not match. */
+    public long checksumFailures() { return checksumFailures.get(); }
+
+    public void setWriteBackListener(WriteBackListener listener) { this.writeBackListener = listener; }
+
+    public long hits() {
+        long total = 0;
+        for (Shard s : shards) synchronized (s) { total += s.hits; }
+        return total;
+    }
+
+    public long misses() {
+        long total = 0;
+        for (Shard s : shards) synchronized (s) { total += s.misses; }
+        return total;
+    }
+
+    /** Fraction of pin() requests served without disk I/O since the last resetStats(). */
+    public double hitRatio() {
+        long h = 0, m = 0;
+        for (Shard s : shards) {
+            synchronized (s) {
+                h += s.hits;
+                m += s.misses;
+            }
+        }
+        return h + m == 0 ? 0.0 : (double) h / (h + m);
+    }
+
+    public void resetStats() {
+        for (Shard s : shards) {
+            synchronized (s) {
+                s.hits = 0;
+                s.misses = 0;
+            }
+        }
+    }
 
     /**
-     * Obtain a page for a given file + pageId, loading it if absent.
+     * Pin the page for a given file + pageId, loading it if absent.
+     * The caller must unpin it (close()) when finished reading or mutating its bytes.
      */
-    public synchronized Page getPage(String filePath, int pageId) throws IOException {
-        PageKey key = new PageKey(filePath, pageId);
-        Page p = cache.get(key);
-        if (p != null) return p;
-        // Load from disk
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
-            long offset = (long) pageId * pageSize;
-            if (offset >= raf.length()) {
-                // Return an empty page (all zeros) if beyond EOF
-                return cacheAndReturn(key, new byte[pageSize]);
+    public Page pin(String filePath, int pageId) throws IOException {
+        return pinPage(filePath, pageId, false);
+    }
+
+    /**
+     * Append a new zeroed page at the logical end of a file and return it pinned and dirty.
+     * The file itself is only extended when the page is written back.
+     */
+    public Page pinNew(String filePath) throws IOException {
+        int pageId = pageCounter(filePath).getAndIncrement();
+        Page p = pinPage(filePath, pageId, true);
+        p.markDirty();
+        return p;
+    }
+
+    /** Release one pin on a page obtained from pin()/pinNew(). */
+    public void unpin(Page p) {
+        Shard shard = shards[p.frameIndex() / shardCapacity];
+        synchronized (shard) {
+            if (p.pinCount <= 0) {
+                throw new IllegalStateException("Page " + p.pageId() + " of " + p.filePath() + " is not pinned");
             }
-            raf.seek(offset);
-            byte[] buf = new byte[pageSize];
-            int read = raf.read(buf);
-            if (read < pageSize && read > 0) {
-                // Partial page at EOF; keep bytes read and leave remainder zeroed.
+            unpinFrame(shard, p.frameIndex() - shard.base);
+        }
+    }
+
+    /** Current pin count of a cached page (0 if not cached). Diagnostics/tests. */
+    public int pinCount(String filePath, int pageId) {
+        long key = PageTable.key(disk.fileId(filePath), pageId);
+        Shard shard = shardOf(key);
+        synchronized (shard) {
+            int idx = shard.table.get(key);
+            return idx == NONE ? 0 : shard.frames[idx].pinCount;
+        }
+    }
+
+    /** Number of pages in a file, counting appended pages not yet written back. */
+    public int pageCount(String filePath) throws IOException {
+        return pageCounter(filePath).get();
+    }
+
+    /** Invalidate a page (e.g., after write). A dirty page is written back first. */
+    public void invalidate(String filePath, int pageId) throws IOException {
+        long key = PageTable.key(disk.fileId(filePath), pageId);
+        Shard shard = shardOf(key);
+        synchronized (shard) {
+            int idx = shard.table.get(key);
+            if (idx == NONE) return;
+            Page p = shard.frames[idx];
+            if (p.pinCount > 0) throw new IllegalStateException("Cannot invalidate pinned page " + pageId + " of " + filePath);
+            writeBack(p);
+            shard.table.remove(key);
+            shard.policy.onRemove(idx);
+            releaseFrame(shard, idx);
+        }
+    }
+
+    /** Invalidate a range of pages inclusive. Dirty pages are written back first. */
+    public void invalidateRange(String filePath, int startPageId, int endPageId) throws IOException {
+        for (int p = startPageId; p <= endPageId; p++) {
+            invalidate(filePath, p);
+        }
+    }
+
+    /**
+     * Drop every cached page of a file without writing it back (the file is being deleted
+     * or recreated) and forget its logical page count.
+     */
+    public void invalidateFile(String filePath) {
+        dropPages(filePath, 0);
+        pageCounts.remove(filePath);
+    }
+
+    /**
+     * The file is being truncated to newPageCount pages: drop cached pages at or past the cut
+     * without writing them back and shrink the logical page count.
+     */
+    public void truncateFile(String filePath, int newPageCount) throws IOException {
+        dropPages(filePath, newPageCount);
+        AtomicInteger counter = pageCounter(filePath);
+        counter.set(Math.min(counter.get(), newPageCount));
+    }
+
+    /** Raise the file's logical page count to at least pageCount (e.g. recovery redoing changes to pages past EOF). */
+    public void extendTo(String filePath, int pageCount) throws IOException {
+        pageCounter(filePath).accumulateAndGet(pageCount, Math::max);
+    }
+
+    /**
+     * Append count fully built pages (back to back in pages) to a file with one write,
+     * bypassing the pool. firstPageId must be the file's current page count; fails if
+     * another writer appended a page in the meantime.
+     */
+    public void appendPages(String filePath, int firstPageId, byte[] pages, int count) throws IOException {
+        if (!pageCounter(filePath).compareAndSet(firstPageId, firstPageId + count)) {
+            throw new IllegalStateException("Concurrent append to " + filePath + " during a bulk write at page " + firstPageId);
+        }
+        disk.writePages(filePath, firstPageId, pages, count);
+    }
+
+    // Discard (no write-back) cached pages of a file with pageId >= fromPageId; fails if one is pinned
+    private void dropPages(String filePath, int fromPageId) {
+        int fileId = disk.fileId(filePath);
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (int i = 0; i < shard.framesInUse; i++) {
+                    Page p = shard.frames[i];
+                    if (p.isAssigned() && p.fileId() == fileId && p.pageId() >= fromPageId && p.pinCount > 0) {
+                        throw new IllegalStateException("Cannot drop " + filePath + ": page " + p.pageId() + " is pinned");
+                    }
+                }
             }
-            if (read == -1) {
-                // No data; empty page
+        }
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                awaitWriteBacks(shard); // an in-flight eviction must not land after the drop
+                for (int i = 0; i < shard.framesInUse; i++) {
+                    Page p = shard.frames[i];
+                    if (p.isAssigned() && p.fileId() == fileId && p.pageId() >= fromPageId && p.pinCount == 0) {
+                        shard.table.remove(PageTable.key(fileId, p.pageId()));
+                        shard.policy.onRemove(i);
+                        p.clearDirty();
+                        releaseFrame(shard, i);
+                    }
+                }
             }
-            return cacheAndReturn(key, buf);
         }
     }
 
-    /** Invalidate a page (e.g., after write). */
-    public synchronized void invalidate(String filePath, int pageId) {
-        cache.remove(new PageKey(filePath, pageId));
+    /** Write back all dirty pages of a single file. */
+    public void flushFile(String filePath) throws IOException {
+        int fileId = disk.fileId(filePath);
+        for (Shard shard : shards) flushShard(shard, fileId);
     }
 
-    /** Invalidate a range of pages inclusive. */
-    public synchronized void invalidateRange(String filePath, int startPageId, int endPageId) {
-        for (int p = startPageId; p <= endPageId; p++) {
-            cache.remove(new PageKey(filePath, p));
+    /** Checkpoint: write back every dirty page. Returns the number of pages written. */
+    public int flushAll() throws IOException {
+        int written = 0;
+        for (Shard shard : shards) written += flushShard(shard, NONE);
+        return written;
+    }
+
+    /**
+     * Start a daemon thread that writes back dirty pages every intervalMillis, so a burst
+     * of updates does not wait for eviction or an explicit checkpoint to reach disk.
+     * The thread only holds the pool weakly, so an abandoned pool can still be collected.
+     */
+    public synchronized void startFlusher(long intervalMillis) {
+        if (flusher != null) return;
+        flusherStopped = false;
+        WeakReference<BufferManager> ref = new WeakReference<>(this);
+        Object signal = flusherSignal;
+        Thread t = new Thread(() -> {
+            while (true) {
+                synchronized (signal) {
+                    try {
+                        signal.wait(intervalMillis); // not interrupted: an interrupt mid-write would close the channel
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                BufferManager pool = ref.get();
+                if (pool == null || pool.flusherStopped) return;
+                try {
+                    pool.flushAll();
+                } catch (IOException e) {
+                    System.err.println("[BufferManager] Background flush failed: " + e.getMessage());
+                }
+                pool = null; // do not keep the pool reachable while waiting
+            }
+        }, "buffer-flusher");
+        t.setDaemon(true);
+        t.start();
+        flusher = t;
+    }
+
+    /**
+     * Asynchronously load pages [firstPage, firstPage + count) of a file into the pool.
+     * Pages already cached are skipped; if the prefetch queue is full the request is dropped,
+     * since read-ahead is only a hint.
+     */
+    public void prefetch(String filePath, int firstPage, int count) {
+        if (count <= 0 || prefetcherStopped) return;
+        startPrefetcher();
+        prefetchQueue.offer(new Prefetch(filePath, firstPage, count));
+    }
+
+    /** Pages loaded by the prefetch thread so far. Diagnostics/tests. */
+    public int prefetchedPages() { return prefetchedPages.get(); }
+
+    /** True if the page is cached (or being loaded). */
+    public boolean isCached(String filePath, int pageId) {
+        long key = PageTable.key(disk.fileId(filePath), pageId);
+        Shard shard = shardOf(key);
+        synchronized (shard) {
+            return shard.table.get(key) != NONE;
         }
     }
 
-    private Page cacheAndReturn(PageKey key, byte[] buf) {
-        Page p = new Page(key.filePath, key.pageId, buf);
-        cache.put(key, p);
+    private synchronized void startPrefetcher() {
+        if (prefetcher != null) return;
+        WeakReference<BufferManager> ref = new WeakReference<>(this);
+        BlockingQueue<Prefetch> queue = prefetchQueue;
+        Thread t = new Thread(() -> {
+            while (true) {
+                Prefetch req;
+                try {
+                    req = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                BufferManager pool = ref.get();
+                if (pool == null || pool.prefetcherStopped) return;
+                if (req != null) pool.runPrefetch(req);
+                pool = null; // do not keep the pool reachable while waiting
+            }
+        }, "buffer-prefetch");
+        t.setDaemon(true);
+        t.start();
+        prefetcher = t;
+    }
+
+    private void runPrefetch(Prefetch req) {
+        for (int pid = req.firstPage(); pid < req.firstPage() + req.count(); pid++) {
+            if (prefetcherStopped) return;
+            if (isCached(req.filePath(), pid)) continue;
+            try {
+                pin(req.filePath(), pid).close();
+                prefetchedPages.incrementAndGet();
+            } catch (IOException | IllegalStateException e) {
+                return; // I/O error or no free frame: leave the rest to the reader
+            }
+        }
+    }
+
+    /** Stop the background threads (if any) and write back all dirty pages. */
+    public void shutdown() throws IOException {
+        Thread t;
+        Thread p;
+        synchronized (this) {
+            t = flusher;
+            flusher = null;
+            flusherStopped = true;
+            p = prefetcher;
+            prefetcher = null;
+            prefetcherStopped = true;
+        }
+        prefetchQueue.clear();
+        if (p != null) {
+            try {
+                p.join(); // not interrupted: see the flusher; it notices the flag within its poll timeout
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (t != null) {
+            synchronized (flusherSignal) {
+                flusherSignal.notifyAll();
+            }
+            try {
+                t.join(); // a flush in progress completes first
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushAll();
+    }
+
+    // Shared hit/miss path. A fresh page (pinNew) is zero-filled instead of read from disk.
+    private Page pinPage(String filePath, int pageId, boolean fresh) throws IOException {
+        int fileId = disk.fileId(filePath);
+        long key = PageTable.key(fileId, pageId);
+        Shard shard = shardOf(key);
+        Page p;
+        int idx;
+        String victimPath = null;
+        int victimPageId = NONE;
+        long victimKey = 0;
+        synchronized (shard) {
+            while (true) {
+                idx = shard.table.get(key);
+                if (idx != NONE) {
+                    p = shard.frames[idx];
+                    p.pinCount++; // our pin keeps the frame from being reclaimed while we wait
+                    shard.hits++;
+                    shard.policy.onHit(idx);
+                    try {
+                        while (p.loading) awaitChange(shard);
+                    } catch (InterruptedIOException e) {
+                        unpinFrame(shard, idx);
+                        throw e;
+                    }
+                    if (shard.table.get(key) == idx) return p;
+                    unpinFrame(shard, idx); // the load failed; retry (and load it ourselves)
+                    continue;
+                }
+                if (shard.writing.get(key) != NONE) {
+                    awaitChange(shard); // the evicted copy is still being written; reading now would see stale bytes
+                    continue;
+                }
+                idx = claimFrame(shard);
+                if (idx != NONE) break;
+                if (shard.flushPins == 0) {
+                    throw new IllegalStateException("Buffer pool exhausted: all " + shardCapacity + " frames of the page's shard are pinned");
+                }
+                awaitChange(shard); // frames pinned by a flush are released when its writes finish
+            }
+            shard.misses++;
+            p = shard.frames[idx];
+            if (p.isAssigned()) {
+                // Evicted victim; a dirty one is written back outside the latch
+                long oldKey = PageTable.key(p.fileId(), p.pageId());
+                shard.table.remove(oldKey);
+                if (p.isDirty()) {
+                    victimPath = p.filePath();
+                    victimPageId = p.pageId();
+                    victimKey = oldKey;
+                    shard.writing.put(oldKey, idx);
+                }
+                p.clearDirty();
+            }
+            p.assign(filePath, fileId, pageId);
+            p.loading = true;
+            p.pinCount = 1;
+            shard.table.put(key, idx);
+            shard.policy.onLoad(idx, key);
+        }
+
+        // I/O without the latch; threads after this page wait on the loading flag
+        if (victimPath != null) {
+            try {
+                writePage(victimPath, victimPageId, p.data());
+            } catch (IOException e) {
+                synchronized (shard) {
+                    // Put the victim back, still dirty, so its changes are not lost
+                    shard.writing.remove(victimKey);
+                    shard.table.remove(key);
+                    shard.policy.onRemove(idx);
+                    p.assign(victimPath, PageTable.fileIdOf(victimKey), victimPageId);
+                    p.markDirty();
+                    shard.table.put(victimKey, idx);
+                    shard.policy.onLoad(idx, victimKey);
+                    p.loading = false;
+                    p.pinCount--;
+                    shard.notifyAll();
+                }
+                throw e;
+            }
+        }
+        boolean loaded = false;
+        try {
+            if (fresh) {
+                Arrays.fill(p.data(), (byte) 0);
+            } else {
+                // Load from disk (positional read; zero page if beyond EOF)
+                disk.readPage(filePath, pageId, p.data());
+                if (!HeapPage.verifyChecksum(p.data())) {
+                    checksumFailures.incrementAndGet();
+                    throw new CorruptPageException(filePath, pageId);
+                }
+            }
+            loaded = true;
+        } finally {
+            synchronized (shard) {
+                if (victimPath != null) shard.writing.remove(victimKey);
+                p.loading = false;
+                if (!loaded) {
+                    shard.table.remove(key);
+                    shard.policy.onRemove(idx);
+                    p.unassign();
+                    unpinFrame(shard, idx); // freed once waiters drop their pins
+                }
+                shard.notifyAll();
+            }
+        }
         return p;
     }
 
-    private static final class PageKey {
-        final String filePath;
-        final int pageId;
-        PageKey(String filePath, int pageId) {
-            this.filePath = filePath;
-            this.pageId = pageId;
+    // Write back dirty pages of one shard (of one file if fileId >= 0). The frames are pinned
+    // and written outside the latch, so readers of the shard are not blocked by the I/O.
+    private int flushShard(Shard shard, int fileId) throws IOException {
+        int[] batch;
+        int count = 0;
+        synchronized (shard) {
+            batch = new int[shard.framesInUse];
+            for (int i = 0; i < shard.framesInUse; i++) {
+                Page p = shard.frames[i];
+                if (p.isAssigned() && !p.loading && p.isDirty() && (fileId == NONE || p.fileId() == fileId)) {
+                    p.pinCount++;
+                    batch[count++] = i;
+                }
+            }
+            shard.flushPins += count;
+            awaitWriteBacks(shard); // a checkpoint also covers evictions already in flight
         }
-        @Override // so keys compare by logical identity (filePath + pageId)
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof PageKey pk)) return false;
-            return pageId == pk.pageId && filePath.equals(pk.filePath);
+        int written = 0;
+        IOException failure = null;
+        for (int k = 0; k < count; k++) {
+            Page p = shard.frames[batch[k]];
+            try {
+                if (writeBack(p)) written++;
+            } catch (IOException e) {
+                p.markDirty(); // retried by the next flush
+                if (failure == null) failure = e;
+            }
+        }
+        synchronized (shard) {
+            for (int k = 0; k < count; k++) unpinFrame(shard, batch[k]);
+            shard.flushPins -= count;
+            shard.notifyAll();
+        }
+        if (failure != null) throw failure;
+        return written;
+    }
+
+    // Write a dirty page to disk; dirty flag is cleared before the write so a concurrent
+    // mutation (which marks dirty after changing bytes) is picked up by a later flush.
+    private boolean writeBack(Page p) throws IOException {
+        synchronized (p) { // not while a writer holding the page is half way through a change
+            if (!p.isDirty()) return false;
+            p.clearDirty();
+            writePage(p.filePath(), p.pageId(), p.data());
+        }
+        return true;
+    }
+
+    private void writePage(String filePath, int pageId, byte[] data) throws IOException {
+        WriteBackListener listener = writeBackListener;
+        if (listener != null) listener.beforeWriteBack(filePath, pageId, data);
+        HeapPage.updateChecksum(data);
+        disk.writePage(filePath, pageId, data);
+    }
+
+    private Shard shardOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return shards[(int) (h >>> 40) & shardMask]; // bits the shard's PageTable does not probe on
+    }
+
+    private AtomicInteger pageCounter(String filePath) throws IOException {
+        AtomicInteger counter = pageCounts.get(filePath);
+        if (counter != null) return counter;
+        long len = disk.size(filePath);
+        AtomicInteger fresh = new AtomicInteger((int) ((len + pageSize - 1) / pageSize));
+        counter = pageCounts.putIfAbsent(filePath, fresh);
+        return counter != null ? counter : fresh;
+    }
+
+    // Obtain a frame for a new page: a released frame, a never-used arena slot, or an unpinned
+    // victim chosen by the replacement policy. A victim is returned still assigned to its old page.
+    private int claimFrame(Shard shard) {
+        if (shard.freeCount > 0) return shard.freeFrames[--shard.freeCount];
+        if (shard.framesInUse < shardCapacity) {
+            int idx = shard.framesInUse++;
+            shard.frames[idx] = new Page(this, shard.base + idx, new byte[pageSize]);
+            return idx;
+        }
+        return shard.policy.evict(shard.evictable); // NONE if every frame is pinned
+    }
+
+    private void unpinFrame(Shard shard, int idx) {
+        Page p = shard.frames[idx];
+        p.pinCount--;
+        if (p.pinCount == 0 && !p.isAssigned()) releaseFrame(shard, idx); // failed load, last waiter gone
+    }
+
+    private void releaseFrame(Shard shard, int idx) {
+        shard.frames[idx].unassign();
+        shard.freeFrames[shard.freeCount++] = idx;
+    }
+
+    private static void awaitWriteBacks(Shard shard) {
+        boolean interrupted = false;
+        while (shard.writing.size() > 0) {
+            try {
+                shard.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private static void awaitChange(Shard shard) throws InterruptedIOException {
+        try {
+            shard.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a buffer frame");
         }
-        @Override // to align with equals(); filePath + pageId for hash map lookups
-        public int hashCode() { return filePath.hashCode() * 31 + pageId; }
     }
 }
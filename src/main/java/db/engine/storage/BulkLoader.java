@@ -0,0 +1,120 @@
+package db.engine.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import db.engine.catalog.ColumnSchema;
+
+/**
+ * Appends rows to a heap file without going through the buffer pool.
+ * Records are packed into fresh pages in memory; a batch of finished pages is written past
+ * the end of the file with one positional write. The keys of indexed columns are collected
+ * alongside so the indexes can be filled in one pass once the rows are on disk.
+ */
+final class BulkLoader {
+    static final int BATCH_PAGES = 64; // 64 x 16KB = 1MB per write
+
+    private final BufferManager pool;
+    private final String filePath;
+    private final int pageSize;
+    private final List<ColumnSchema> columns;
+    private final int recordFormat;
+    private final int[] keyColumns;
+    private final byte[] batch;
+    private final byte[] page;
+    private HeapPage current;
+    private final int firstPage; // file's page count before the load
+    private int batchStart;   // page id of the first page in batch
+    private int batchPages;   // finished pages in batch
+    private int rows;
+    private int[][] keys;     // per key column, one key per row
+    private long[] rids;      // per row: pageId << 32 | slotId
+    private FreeSpaceMap fsm; // updated for written pages when the file has one
+
+    BulkLoader(BufferManager pool, String filePath, int pageSize, List<ColumnSchema> columns, int recordFormat, int[] keyColumns) throws IOException {
+        this.pool = pool;
+        this.filePath = filePath;
+        this.pageSize = pageSize;
+        this.columns = columns;
+        this.recordFormat = recordFormat;
+        this.keyColumns = keyColumns;
+        this.batch = new byte[BATCH_PAGES * pageSize];
+        this.page = new byte[pageSize];
+        this.firstPage = pool.pageCount(filePath);
+        this.batchStart = firstPage;
+        this.keys = new int[keyColumns.length][1024];
+        this.rids = new long[keyColumns.length == 0 ? 0 : 1024];
+    }
+
+    void trackFreeSpace(FreeSpaceMap fsm) { this.fsm = fsm; }
+
+    int rows() { return rows; }
+    int[] keys(int k) { return keys[k]; }
+    long[] rids() { return rids; }
+
+    /** Pack one validated record; returns where it will live once its page is written. */
+    RID add(Record record) throws IOException {
+        byte[] payload = record.toBytes(columns, recordFormat);
+        if (payload.length > 0xFFFF) {
+            throw new IllegalArgumentException("Record too large for current heap page format (len=" + payload.length + ")");
+        }
+        if (current != null && !current.canFit(payload.length)) finishPage();
+        if (current == null) {
+            current = HeapPage.wrap(filePath, batchStart + batchPages, page, pageSize);
+            if (!current.canFit(payload.length)) {
+                throw new IllegalArgumentException("Record too large for an empty page (len=" + payload.length + ")");
+            }
+        }
+        int slotId = current.insert(payload);
+        RID rid = new RID(current.pageId(), slotId);
+        if (keyColumns.length > 0) collectKeys(record, rid);
+        rows++;
+        return rid;
+    }
+
+    /** Write out the last partly filled page and any pending batch. */
+    void finish() throws IOException {
+        if (current != null) finishPage();
+        writeBatch();
+    }
+
+    /**
+     * Undo a load that failed part way: forget the pages written so far, cut the file back to
+     * its size before the load and drop the new pages from the free-space map.
+     */
+    void abort() throws IOException {
+        current = null;
+        batchPages = 0;
+        rows = 0;
+        pool.truncateFile(filePath, firstPage);
+        pool.getDiskManager().truncate(filePath, (long) firstPage * pageSize);
+        if (fsm != null) fsm.truncate(firstPage);
+    }
+
+    private void collectKeys(Record record, RID rid) {
+        if (rows == rids.length) {
+            rids = Arrays.copyOf(rids, rows * 2);
+            for (int k = 0; k < keys.length; k++) keys[k] = Arrays.copyOf(keys[k], rows * 2);
+        }
+        List<Object> vals = record.getValues();
+        for (int k = 0; k < keyColumns.length; k++) keys[k][rows] = (Integer) vals.get(keyColumns[k]);
+        rids[rows] = ((long) rid.pageId() << 32) | rid.slotId();
+    }
+
+    private void finishPage() throws IOException {
+        if (fsm != null) fsm.update(current.pageId(), current.freeSpace());
+        HeapPage.updateChecksum(page);
+        System.arraycopy(page, 0, batch, batchPages * pageSize, pageSize);
+        Arrays.fill(page, (byte) 0);
+        current = null;
+        if (++batchPages == BATCH_PAGES) writeBatch();
+    }
+
+    private void writeBatch() throws IOException {
+        if (batchPages == 0) return;
+        pool.appendPages(filePath, batchStart, batch, batchPages);
+        batchStart += batchPages;
+        batchPages = 0;
+    }
+}
@@ -0,0 +1,53 @@
+package db.engine.storage;
+
+import java.util.function.IntPredicate;
+
+/**
+ * CLOCK (second chance) replacement: a hit only sets a reference bit, and the hand sweeps
+ * the frames clearing bits until it finds an unreferenced, unpinned frame. Cheaper than LRU
+ * on hits since nothing is relinked.
+ */
+final class ClockPolicy implements ReplacementPolicy {
+    private final boolean[] resident;
+    private final boolean[] referenced;
+    private int hand;
+
+    ClockPolicy(int capacity) {
+        this.resident = new boolean[capacity];
+        this.referenced = new boolean[capacity];
+    }
+
+    @Override
+    public void onLoad(int frame, long pageKey) {
+        resident[frame] = true;
+        referenced[frame] = true;
+    }
+
+    @Override public void onHit(int frame) { referenced[frame] = true; }
+
+    @Override
+    public void onRemove(int frame) {
+        resident[frame] = false;
+        referenced[frame] = false;
+    }
+
+    @Override
+    public int evict(IntPredicate evictable) {
+        int n = resident.length;
+        // Two full sweeps: the first may only clear reference bits
+        for (int step = 0; step < 2 * n; step++) {
+            int f = hand;
+            hand = (hand + 1) % n;
+            if (!resident[f] || !evictable.test(f)) continue;
+            if (referenced[f]) {
+                referenced[f] = false; // second chance
+                continue;
+            }
+            resident[f] = false;
+            return f;
+        }
+        return -1;
+    }
+
+    @Override public String name() { return "clock"; }
+}
@@ -0,0 +1,20 @@
+package db.engine.storage;
+
+import java.io.IOException;
+
+/** A page read from disk does not match its stored checksum (torn write or bit rot). */
+public class CorruptPageException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String filePath;
+    private final int pageId;
+
+    public CorruptPageException(String filePath, int pageId) {
+        super("Checksum mismatch on page " + pageId + " of " + filePath);
+        this.filePath = filePath;
+        this.pageId = pageId;
+    }
+
+    public String filePath() { return filePath; }
+    public int pageId() { return pageId; }
+}
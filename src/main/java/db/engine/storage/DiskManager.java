@@ -0,0 +1,165 @@
+package db.engine.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of open heap file channels keyed by file path.
+ * A channel is opened lazily on first access and stays open until the file is closed
+ * explicitly (table drop / recreate) or the manager is shut down, so page I/O is a single
+ * positional read or write on an already open handle instead of an open/seek/close per page.
+ */
+public class DiskManager {
+    private final int pageSize;
+    private final Map<String, FileChannel> channels = new ConcurrentHashMap<>();
+    private final Map<String, Integer> fileIds = new ConcurrentHashMap<>(); // stable small ids for page keys
+    private final AtomicLong pageReads = new AtomicLong();  // diagnostics
+    private final AtomicLong pageWrites = new AtomicLong();
+
+    public DiskManager(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getPageSize() { return pageSize; }
+    public long pageReads() { return pageReads.get(); }
+    public long pageWrites() { return pageWrites.get(); }
+
+    /** Small non-negative id for a file path, stable for the lifetime of this manager. */
+    public int fileId(String filePath) {
+        Integer id = fileIds.get(filePath);
+        if (id != null) return id;
+        synchronized (fileIds) {
+            id = fileIds.get(filePath);
+            if (id == null) {
+                id = fileIds.size();
+                fileIds.put(filePath, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Read page pageId into buf (pageSize bytes). Bytes past EOF are zero-filled, so a page
+     * beyond the end of the file reads back as an empty (all zeros) page.
+     * Returns the number of bytes actually read from disk.
+     */
+    public int readPage(String filePath, int pageId, byte[] buf) throws IOException {
+        FileChannel ch = channel(filePath);
+        long offset = (long) pageId * pageSize;
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, pageSize);
+        pageReads.incrementAndGet();
+        int total = 0;
+        while (bb.hasRemaining()) {
+            int n = ch.read(bb, offset + total);
+            if (n < 0) break; // EOF
+            total += n;
+        }
+        if (total < pageSize) {
+            // Partial page at EOF (or beyond EOF); leave remainder zeroed.
+            Arrays.fill(buf, total, pageSize, (byte) 0);
+        }
+        return total;
+    }
+
+    /** Write a full page at its slot in the file, extending the file if needed. */
+    public void writePage(String filePath, int pageId, byte[] buf) throws IOException {
+        FileChannel ch = channel(filePath);
+        long offset = (long) pageId * pageSize;
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, pageSize);
+        pageWrites.incrementAndGet();
+        while (bb.hasRemaining()) {
+            offset += ch.write(bb, offset);
+        }
+    }
+
+    /**
+     * Write count consecutive full pages, laid out back to back in buf, starting at page
+     * firstPageId: one large sequential write instead of a write per page.
+     */
+    public void writePages(String filePath, int firstPageId, byte[] buf, int count) throws IOException {
+        FileChannel ch = channel(filePath);
+        long offset = (long) firstPageId * pageSize;
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, count * pageSize);
+        pageWrites.addAndGet(count);
+        while (bb.hasRemaining()) {
+            offset += ch.write(bb, offset);
+        }
+    }
+
+    /** Current on-disk size of the file in bytes. */
+    public long size(String filePath) throws IOException {
+        return channel(filePath).size();
+    }
+
+    /**
+     * Map length bytes of the file starting at offset, read-only. The mapping shares the OS
+     * page cache with positional writes, so pages written back later are visible through it.
+     */
+    public MappedByteBuffer map(String filePath, long offset, long length) throws IOException {
+        return channel(filePath).map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    /** Cut the file down to length bytes (no-op if it is already shorter). */
+    public void truncate(String filePath, long length) throws IOException {
+        channel(filePath).truncate(length);
+    }
+
+    /** Force file contents to stable storage. */
+    public void sync(String filePath) throws IOException {
+        FileChannel ch = channels.get(filePath);
+        if (ch != null) ch.force(false);
+    }
+
+    /** Force every open file to stable storage. */
+    public void syncAll() throws IOException {
+        for (FileChannel ch : channels.values()) ch.force(false);
+    }
+
+    /** Close the channel for a single file (e.g. before the file is dropped or recreated). */
+    public void closeFile(String filePath) {
+        FileChannel ch = channels.remove(filePath);
+        if (ch != null) closeQuietly(filePath, ch);
+    }
+
+    /** Close every open channel; called on shutdown. */
+    public void closeAll() {
+        for (String path : channels.keySet()) {
+            closeFile(path);
+        }
+    }
+
+    private FileChannel channel(String filePath) throws IOException {
+        FileChannel ch = channels.get(filePath);
+        if (ch != null) return ch;
+        try {
+            return channels.computeIfAbsent(filePath, p -> {
+                try {
+                    File f = new File(p);
+                    if (f.getParentFile() != null) f.getParentFile().mkdirs();
+                    return FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            });
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void closeQuietly(String filePath, FileChannel ch) {
+        try {
+            ch.close();
+        } catch (IOException e) {
+            System.err.println("[DiskManager] Failed closing " + filePath + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package db.engine.storage;
+
+/**
+ * Intrusive doubly linked list over frame indexes (head = oldest, tail = newest).
+ * Used by the replacement policies to keep recency/FIFO order without allocating nodes.
+ */
+final class FrameList {
+    static final int NONE = -1;
+
+    private final int[] prev;
+    private final int[] next;
+    private final boolean[] member;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    FrameList(int capacity) {
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        this.member = new boolean[capacity];
+    }
+
+    int head() { return head; }
+    int next(int frame) { return next[frame]; }
+    int size() { return size; }
+    boolean contains(int frame) { return member[frame]; }
+
+    void addTail(int frame) {
+        prev[frame] = tail;
+        next[frame] = NONE;
+        if (tail != NONE) next[tail] = frame; else head = frame;
+        tail = frame;
+        member[frame] = true;
+        size++;
+    }
+
+    void remove(int frame) {
+        if (!member[frame]) return;
+        int p = prev[frame], n = next[frame];
+        if (p != NONE) next[p] = n; else head = n;
+        if (n != NONE) prev[n] = p; else tail = p;
+        member[frame] = false;
+        size--;
+    }
+
+    void moveToTail(int frame) {
+        if (frame == tail) return;
+        remove(frame);
+        addTail(frame);
+    }
+}
@@ -0,0 +1,95 @@
+package db.engine.storage;
+
+import java.util.Arrays;
+
+/**
+ * Approximate free space per heap page of one table, so an insert can find a page with room
+ * without trying the pages one by one.
+ * Pages are bucketed into CATEGORIES ranges of free bytes; each bucket is an intrusive list
+ * over page ids and a bitmask records which buckets are non-empty, so find() is a couple of
+ * bit operations plus a short walk of one bucket. The map lives in memory and is rebuilt
+ * from the page headers the first time a table is written after open.
+ */
+final class FreeSpaceMap {
+    static final int CATEGORIES = 64; // one bit per category in nonEmpty
+    private static final int NONE = -1;
+    private static final int BOUNDARY_PROBES = 4; // pages checked in the partially fitting category
+
+    private final int step; // free bytes per category
+    private int[] free = new int[0];     // exact free bytes as last reported, per page
+    private int[] category = new int[0]; // NONE if the page is untracked
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private final int[] heads = new int[CATEGORIES];
+    private long nonEmpty;
+    private int trackedPages;
+
+    FreeSpaceMap(int pageSize) {
+        this.step = Math.max(1, pageSize / CATEGORIES);
+        Arrays.fill(heads, NONE);
+    }
+
+    synchronized int trackedPages() { return trackedPages; }
+
+    /** Record that pageId can take a record of up to freeBytes bytes. */
+    synchronized void update(int pageId, int freeBytes) {
+        ensureCapacity(pageId + 1);
+        int c = Math.min(CATEGORIES - 1, Math.max(0, freeBytes) / step);
+        free[pageId] = freeBytes;
+        if (category[pageId] == c) return;
+        if (category[pageId] != NONE) unlink(pageId); else trackedPages++;
+        category[pageId] = c;
+        prev[pageId] = NONE;
+        next[pageId] = heads[c];
+        if (heads[c] != NONE) prev[heads[c]] = pageId;
+        heads[c] = pageId;
+        nonEmpty |= 1L << c;
+    }
+
+    /** Forget pages >= fromPageId (file truncated). */
+    synchronized void truncate(int fromPageId) {
+        for (int p = fromPageId; p < category.length; p++) {
+            if (category[p] != NONE) {
+                unlink(p);
+                category[p] = NONE;
+                trackedPages--;
+            }
+        }
+    }
+
+    /**
+     * A page that can take a record of needed bytes (smallest category that fits first,
+     * so partly filled pages are filled before emptier ones), or -1 if none is known.
+     */
+    synchronized int find(int needed) {
+        int c0 = Math.min(CATEGORIES - 1, needed / step);
+        // Pages in c0 may or may not fit; check a few by their exact free bytes
+        int probes = 0;
+        for (int p = heads[c0]; p != NONE && probes < BOUNDARY_PROBES; p = next[p], probes++) {
+            if (free[p] >= needed) return p;
+        }
+        if (c0 + 1 >= CATEGORIES) return NONE;
+        long above = nonEmpty & (-1L << (c0 + 1)); // every page there has free >= (c0 + 1) * step > needed
+        if (above == 0) return NONE;
+        return heads[Long.numberOfTrailingZeros(above)];
+    }
+
+    private void unlink(int pageId) {
+        int c = category[pageId];
+        int p = prev[pageId], n = next[pageId];
+        if (p != NONE) next[p] = n; else heads[c] = n;
+        if (n != NONE) prev[n] = p;
+        if (heads[c] == NONE) nonEmpty &= ~(1L << c);
+    }
+
+    private void ensureCapacity(int pages) {
+        if (pages <= category.length) return;
+        int cap = Math.max(pages, category.length * 2);
+        int old = category.length;
+        free = Arrays.copyOf(free, cap);
+        category = Arrays.copyOf(category, cap);
+        next = Arrays.copyOf(next, cap);
+        prev = Arrays.copyOf(prev, cap);
+        Arrays.fill(category, old, cap, NONE);
+    }
+}
@@ -2,7 +2,10 @@ package db.engine.storage;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32C;
 
 import db.engine.catalog.ColumnSchema;
 
@@ -12,8 +15,11 @@ import db.engine.catalog.ColumnSchema;
  * Layout (pageSize bytes):
  * [0..3]   int  freeSpacePointer  (start of next record bytes)
  * [4..5]   short slotCount        (number of active slots)
- * [6..7]   short reserved
- * [8..... freeSpacePointer-1]    record data area (variable-length records packed front-to-back)
+ * [6..7]   short formatVersion    (0 = original 8-byte header, 1 = adds the page LSN, 2 = adds the checksum)
+ * [8..15]  long pageLsn           (version 1+: LSN of the last logged change applied to the page)
+ * [16..19] int checksum           (version 2: CRC32C of the page with this field taken as zero)
+ * [20..23] reserved               (version 2)
+ * [header..freeSpacePointer-1]    record data area (variable-length records packed front-to-back)
  * [... free space ...]
  * [slot directory entries growing backward from end of page]
  *
@@ -22,19 +28,37 @@ import db.engine.catalog.ColumnSchema;
  *   short recordLength  (length of record bytes)
  *
  * Free space = (startOfSlotDir) - freeSpacePointer.
- * We DO NOT compact or reuse tombstoned slots yet.
+ * Tombstoned slot entries are reused by later inserts (a reused slot id only ever belonged to a
+ * deleted record) unless the caller holds them back, and deleting the last record in the data area gives its bytes back. Dead
+ * bytes in the middle of the data area are reclaimed by compact(), which slides live records
+ * together without changing their slot ids, so RIDs held by indexes stay valid.
+ *
+ * New pages use the current version. Pages of an older version are still read as is, and are
+ * converted the first time an LSN is stamped on them (their records move up to make room for
+ * the larger header; slot ids do not change).
+ *
+ * The checksum is set by the buffer pool when it writes the page and checked when it reads it
+ * back (see updateChecksum/verifyChecksum), so a torn or bit-rotted page is reported instead
+ * of being decoded, or mistaken for a blank page because its header reads as zeros.
+ *
+ * The page is accessed through a ByteBuffer with absolute get/put, so it can sit on a
+ * buffer pool frame (byte[]) or, read-only, directly on a memory-mapped region of the file.
  */
 public final class HeapPage {
-    private static final int HEADER_SIZE = 8;
+    private static final int HEADER_SIZE_V0 = 8;
+    private static final int HEADER_SIZE_V1 = 16;
+    private static final int HEADER_SIZE = 24;
+    private static final short FORMAT_VERSION = 2;
+    private static final int CHECKSUM_POS = 16;
     private static final int SLOT_ENTRY_SIZE = 4;
     private static final short TOMBSTONE = -1;
 
     private final String filePath;
     private final int pageId;
-    private final byte[] data;         // backing store (page-sized)
+    private final ByteBuffer data;     // backing store (page-sized, index 0 = page start)
     private final int pageSize;
 
-    private HeapPage(String filePath, int pageId, byte[] data, int pageSize) {
+    private HeapPage(String filePath, int pageId, ByteBuffer data, int pageSize) {
         this.filePath = filePath;
         this.pageId = pageId;
         this.data = data;
@@ -42,36 +66,160 @@ public final class HeapPage {
     }
 
     public static HeapPage wrap(String filePath, int pageId, byte[] data, int pageSize) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
         // If freshly allocated (all zeros) initialize header explicitly
-        if (readFreePtr(data) == 0 && readSlotCount(data) == 0) {
-            writeFreePtr(data, HEADER_SIZE); // first record placed after header
-            writeSlotCount(data, (short) 0);
+        if (readFreePtr(buf) == 0 && readSlotCount(buf) == 0) {
+            writeFreePtr(buf, HEADER_SIZE); // first record placed after header
+            writeSlotCount(buf, (short) 0);
+            buf.putShort(6, FORMAT_VERSION);
         }
-        return new HeapPage(filePath, pageId, data, pageSize);
+        return new HeapPage(filePath, pageId, buf, pageSize);
     }
 
-    public boolean canFit(int recordLen) {
-        if (recordLen > 0xFFFF) return false; // must fit in unsigned short
+    /**
+     * Read-only view over a page held in a ByteBuffer (e.g. a slice of a mapped file).
+     * Records are decoded straight from the buffer; mutating methods fail.
+     */
+    public static HeapPage wrapReadOnly(String filePath, int pageId, ByteBuffer page, int pageSize) {
+        return new HeapPage(filePath, pageId, page, pageSize);
+    }
+
+    /**
+     * Page LSN straight from a page image: 0 for a blank page, -1 for a version 0 page (which
+     * cannot carry one).
+     */
+    public static long pageLsn(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (buf.getShort(6) >= 1) return buf.getLong(8);
+        return readFreePtr(buf) == 0 ? 0 : -1;
+    }
+
+    /** Store the CRC32C of a page image in its header; pages older than version 2 have no room for it. */
+    public static void updateChecksum(byte[] page) {
+        if (formatVersionOf(page) < 2) return;
+        ByteBuffer.wrap(page).putInt(CHECKSUM_POS, checksum(page, formatVersionOf(page)));
+    }
+
+    /**
+     * True if a page image matches its stored checksum. Pages without one (blank pages and
+     * pages older than version 2) pass. The version field decides whether there is a checksum
+     * and is not protected by it, so two ways of losing it are caught here: a header torn to
+     * zeros over a page that is not blank, and a version 2 page whose version was cleared but
+     * whose checksum still matches it.
+     */
+    public static boolean verifyChecksum(byte[] page) {
+        int version = formatVersionOf(page);
+        if (version >= 2) return ByteBuffer.wrap(page).getInt(CHECKSUM_POS) == checksum(page, version);
+        if (isBlank(page, 0, HEADER_SIZE_V0)) return isBlank(page, HEADER_SIZE_V0, page.length);
+        return ByteBuffer.wrap(page).getInt(CHECKSUM_POS) != checksum(page, FORMAT_VERSION);
+    }
+
+    private static boolean isBlank(byte[] page, int from, int to) {
+        for (int i = from; i < to; i++) if (page[i] != 0) return false;
+        return true;
+    }
+
+    // CRC32C (hardware accelerated) of the whole page with the given format version, skipping
+    // the checksum field itself
+    private static int checksum(byte[] page, int version) {
+        CRC32C crc = new CRC32C();
+        crc.update(page, 0, 6);
+        crc.update(version >>> 8);
+        crc.update(version);
+        crc.update(page, 8, CHECKSUM_POS - 8);
+        crc.update(page, CHECKSUM_POS + 4, page.length - CHECKSUM_POS - 4);
+        return (int) crc.getValue();
+    }
+
+    private static int formatVersionOf(byte[] page) {
+        return ((page[6] & 0xFF) << 8) | (page[7] & 0xFF);
+    }
+
+    public int formatVersion() { return data.getShort(6); }
+
+    /** LSN of the last logged change applied to this page (0 if none or a version 0 page). */
+    public long pageLsn() {
+        return formatVersion() >= 1 ? data.getLong(8) : 0;
+    }
+
+    /**
+     * Stamp the LSN of a change just applied. An older page is converted first; returns false
+     * if a version 0 page has no room for the larger header, in which case it stays unstamped.
+     */
+    public boolean setPageLsn(long lsn) {
+        if (formatVersion() < FORMAT_VERSION) upgrade();
+        if (formatVersion() == 0) return false;
+        data.putLong(8, lsn);
+        return true;
+    }
+
+    // Convert to the current version: slide the data area up to make room for the larger header
+    private boolean upgrade() {
+        int oldHeader = headerSize();
+        int shift = HEADER_SIZE - oldHeader;
+        if (contiguousFree() < shift) return false;
+        byte[] arr = rawData();
         int freePtr = readFreePtr(data);
+        System.arraycopy(arr, oldHeader, arr, HEADER_SIZE, freePtr - oldHeader);
         int slotCount = readSlotCount(data);
-        int startOfNextSlotDir = pageSize - (slotCount * SLOT_ENTRY_SIZE);
-        int freeBytes = startOfNextSlotDir - freePtr;
-        int needed = recordLen + SLOT_ENTRY_SIZE;
-        return needed <= freeBytes;
+        for (int i = 0; i < slotCount; i++) {
+            int pos = slotEntryPos(i);
+            short off = getShort(data, pos);
+            if (off != TOMBSTONE) putShort(data, pos, (short) (off + shift));
+        }
+        writeFreePtr(data, freePtr + shift);
+        if (formatVersion() == 0) data.putLong(8, 0L);
+        Arrays.fill(arr, HEADER_SIZE_V1, HEADER_SIZE, (byte) 0);
+        data.putShort(6, FORMAT_VERSION);
+        return true;
+    }
+
+    /** Largest record an empty page of pageSize bytes can hold. */
+    public static int maxRecordLength(int pageSize) {
+        return Math.min(0xFFFF, pageSize - HEADER_SIZE - SLOT_ENTRY_SIZE);
+    }
+
+    public boolean canFit(int recordLen) {
+        return canFit(recordLen, slotId -> false);
+    }
+
+    /** canFit for an insert that must not reuse the tombstoned slots held tests true for. */
+    public boolean canFit(int recordLen, IntPredicate held) {
+        if (recordLen > 0xFFFF) return false; // must fit in unsigned short
+        int freeBytes = contiguousFree();
+        if (recordLen + SLOT_ENTRY_SIZE <= freeBytes) return true;
+        return recordLen <= freeBytes && firstTombstone(held) >= 0; // fits if a slot entry can be reused
     }
 
-    /** Insert record bytes; returns slotId. */
+    /**
+     * Largest record that certainly fits without reusing a slot entry; this is what the
+     * free-space map tracks for the page.
+     */
+    public int freeSpace() {
+        return Math.max(0, contiguousFree() - SLOT_ENTRY_SIZE);
+    }
+
+    /** Insert record bytes; returns slotId (a tombstoned slot is reused when there is one). */
     public int insert(byte[] recordBytes) {
+        return insert(recordBytes, slotId -> false);
+    }
+
+    /** Insert record bytes, reusing only a tombstoned slot that held tests false for. */
+    public int insert(byte[] recordBytes, IntPredicate held) {
         int len = recordBytes.length;
-        if (!canFit(len)) throw new IllegalStateException("Not enough space to insert record len=" + len);
+        if (!canFit(len, held)) throw new IllegalStateException("Not enough space to insert record len=" + len);
         int freePtr = readFreePtr(data);
         int slotCount = readSlotCount(data);
 
         // Copy record to page
-        System.arraycopy(recordBytes, 0, data, freePtr, len);
+        data.put(freePtr, recordBytes);
 
-        // Write slot entry
-        int newSlotId = slotCount; // next slot index
+        // Write slot entry: reuse a tombstone, else grow the directory
+        int newSlotId = firstTombstone(held);
+        if (newSlotId < 0) {
+            newSlotId = slotCount; // next slot index
+            writeSlotCount(data, (short) (slotCount + 1));
+        }
         int slotWritePos = slotEntryPos(newSlotId);
         // Write record offset and length into slot
         putShort(data, slotWritePos, (short) freePtr);
@@ -79,11 +227,37 @@ public final class HeapPage {
 
         // Update header
         writeFreePtr(data, freePtr + len);
-        writeSlotCount(data, (short) (slotCount + 1));
 
         return newSlotId;
     }
 
+    /**
+     * Put recordBytes at a given slot id, replacing whatever the slot holds and growing the slot
+     * directory (with tombstones) if needed. Used by recovery to redo an insert or undo a
+     * delete at the slot the log names; compacts the page if that is what it takes to fit.
+     */
+    public void insertAt(int slotId, byte[] recordBytes) {
+        int len = recordBytes.length;
+        delete(slotId); // the slot's old bytes are dead now
+        int slotCount = readSlotCount(data);
+        int newSlots = Math.max(0, slotId + 1 - slotCount);
+        int needed = len + newSlots * SLOT_ENTRY_SIZE;
+        if (contiguousFree() < needed) compact();
+        if (contiguousFree() < needed) {
+            throw new IllegalStateException("Not enough space to place record len=" + len + " at slot " + slotId);
+        }
+        for (int i = slotCount; i <= slotId; i++) {
+            putShort(data, slotEntryPos(i), TOMBSTONE);
+            putShort(data, slotEntryPos(i) + 2, (short) 0);
+        }
+        if (newSlots > 0) writeSlotCount(data, (short) (slotId + 1));
+        int freePtr = readFreePtr(data);
+        data.put(freePtr, recordBytes);
+        putShort(data, slotEntryPos(slotId), (short) freePtr);
+        putShort(data, slotEntryPos(slotId) + 2, (short) len);
+        writeFreePtr(data, freePtr + len);
+    }
+
     /** Read record bytes from a slot (ignores tombstoned slots). */
     public byte[] readSlot(int slotId) {
         int slotCount = readSlotCount(data);
@@ -101,24 +275,69 @@ public final class HeapPage {
         }
         byte[] out = new byte[len];
         // Read record bytes from page into out
-        System.arraycopy(data, offset, out, 0, len);
+        data.get(offset, out);
         return out;
     }
 
-    /** Deserialize a record given slotId and column schema */
+    /** Deserialize a record given slotId and column schema (decoded in place, no slot copy) */
     public db.engine.storage.Record readRecord(int slotId, List<ColumnSchema> columns) {
-        return db.engine.storage.Record.fromBytes(readSlot(slotId), columns);
+        return readRecord(slotId, columns, db.engine.catalog.TableSchema.CURRENT_RECORD_FORMAT);
+    }
+
+    /** As readRecord(slotId, columns) for a table stored in the given record format. */
+    public db.engine.storage.Record readRecord(int slotId, List<ColumnSchema> columns, int format) {
+        return db.engine.storage.Record.fromBuffer(data, slotOffset(slotId), columns, format);
+    }
+
+    /** Position view on the record in slotId (no decoding; see RecordView). */
+    public RecordView readView(int slotId, RecordView view) {
+        return view.reset(data, slotOffset(slotId));
+    }
+
+    // Offset of a live slot's record bytes; same checks as readSlot
+    private int slotOffset(int slotId) {
+        int slotCount = readSlotCount(data);
+        if (slotId < 0 || slotId >= slotCount) {
+            throw new IllegalArgumentException("slotId out of range: " + slotId);
+        }
+        int slotPos = slotEntryPos(slotId);
+        short offset = getShort(data, slotPos);
+        if (offset == TOMBSTONE) {
+            throw new IllegalStateException("Slot " + slotId + " is tombstoned");
+        }
+        if (getShort(data, slotPos + 2) <= 0) {
+            throw new IllegalStateException("Slot " + slotId + " is empty");
+        }
+        return offset;
     }
 
-    /** Tombstone a slot. Space not reclaimed until compaction (future impementation). */
+    /**
+     * Tombstone a slot. The slot entry becomes reusable; the record bytes are reclaimed at once
+     * only if they are the last ones in the data area, otherwise by compact().
+     */
     public void delete(int slotId) {
         int slotCount = readSlotCount(data);
         if (slotId < 0 || slotId >= slotCount) return;
         int slotPos = slotEntryPos(slotId);
+        short offset = getShort(data, slotPos);
+        short len = getShort(data, slotPos + 2);
+        if (offset != TOMBSTONE && len > 0 && offset + len == readFreePtr(data)) {
+            writeFreePtr(data, offset); // tail record: hand its bytes back to free space
+        }
         putShort(data, slotPos, TOMBSTONE);
         putShort(data, slotPos + 2, (short) 0);
     }
 
+    /** Number of slot entries, live or tombstoned; slot ids run from 0 to slotCount() - 1. */
+    public int slotCount() { return readSlotCount(data); }
+
+    /** True if slotId holds a record (in range and not tombstoned). */
+    public boolean isLive(int slotId) {
+        if (slotId < 0 || slotId >= readSlotCount(data)) return false;
+        int slotPos = slotEntryPos(slotId);
+        return getShort(data, slotPos) != TOMBSTONE && getShort(data, slotPos + 2) > 0;
+    }
+
     /** Returns list of live (non-tombstoned) slot ids in ascending order. */
     public List<Integer> liveSlotIds() {
         int slotCount = readSlotCount(data);
@@ -132,6 +351,79 @@ public final class HeapPage {
         return out;
     }
 
+    /** Bytes of the data area still occupied by deleted records. */
+    public int deadBytes() {
+        int used = readFreePtr(data) - headerSize();
+        int slotCount = readSlotCount(data);
+        for (int i = 0; i < slotCount; i++) {
+            int pos = slotEntryPos(i);
+            if (getShort(data, pos) != TOMBSTONE) used -= getShort(data, pos + 2);
+        }
+        return used;
+    }
+
+    /** Fraction of the used data area that is dead (0 for an empty page). */
+    public double deadRatio() {
+        int used = readFreePtr(data) - headerSize();
+        return used <= 0 ? 0.0 : (double) deadBytes() / used;
+    }
+
+    /**
+     * Slide live records to the front of the data area (in their current order) and zero the
+     * freed tail. Slot ids and tombstones are unchanged; only record offsets move.
+     * Returns the number of bytes reclaimed.
+     */
+    public int compact() {
+        if (!data.hasArray()) throw new UnsupportedOperationException("Page " + pageId + " is read-only");
+        byte[] arr = data.array();
+        int slotCount = readSlotCount(data);
+        // Live slots ordered by record offset: (offset << 32 | slotId)
+        long[] order = new long[slotCount];
+        int live = 0;
+        for (int i = 0; i < slotCount; i++) {
+            short off = getShort(data, slotEntryPos(i));
+            if (off != TOMBSTONE) order[live++] = ((long) off << 32) | i;
+        }
+        Arrays.sort(order, 0, live);
+        int dst = headerSize();
+        for (int k = 0; k < live; k++) {
+            int off = (int) (order[k] >>> 32);
+            int slotPos = slotEntryPos((int) order[k]);
+            int len = getShort(data, slotPos + 2);
+            if (off != dst) {
+                System.arraycopy(arr, off, arr, dst, len); // moves down only, overlap-safe
+                putShort(data, slotPos, (short) dst);
+            }
+            dst += len;
+        }
+        int oldFreePtr = readFreePtr(data);
+        Arrays.fill(arr, dst, oldFreePtr, (byte) 0);
+        writeFreePtr(data, dst);
+        return oldFreePtr - dst;
+    }
+
+    private int headerSize() {
+        return switch (formatVersion()) {
+            case 0 -> HEADER_SIZE_V0;
+            case 1 -> HEADER_SIZE_V1;
+            default -> HEADER_SIZE;
+        };
+    }
+
+    private int contiguousFree() {
+        int startOfNextSlotDir = pageSize - (readSlotCount(data) * SLOT_ENTRY_SIZE);
+        return startOfNextSlotDir - readFreePtr(data);
+    }
+
+    // Lowest tombstoned slot id not held, or -1
+    private int firstTombstone(IntPredicate held) {
+        int slotCount = readSlotCount(data);
+        for (int i = 0; i < slotCount; i++) {
+            if (getShort(data, slotEntryPos(i)) == TOMBSTONE && !held.test(i)) return i;
+        }
+        return -1;
+    }
+
     /**
      * Compute the byte offset of the slot directory entry for a given slotId.
      * Slot directory grows backwards from the end of the page; slot 0 is stored
@@ -141,23 +433,28 @@ public final class HeapPage {
         return pageSize - ((slotId + 1) * SLOT_ENTRY_SIZE);
     }
 
-    public byte[] rawData() { return data; }
+    /** Backing array of a buffer-pool page (mapped pages have none). */
+    public byte[] rawData() {
+        if (!data.hasArray()) throw new UnsupportedOperationException("Page " + pageId + " is not array-backed");
+        return data.array();
+    }
     public int pageId() { return pageId; }
     public String filePath() { return filePath; }
 
-    private static int readFreePtr(byte[] d) { return ByteBuffer.wrap(d, 0, 4).getInt(); }
-    private static void writeFreePtr(byte[] d, int v) { ByteBuffer.wrap(d, 0, 4).putInt(v); }
-    private static short readSlotCount(byte[] d) { return ByteBuffer.wrap(d, 4, 2).getShort(); }
-    private static void writeSlotCount(byte[] d, short v) { ByteBuffer.wrap(d, 4, 2).putShort(v); }
+    private static int readFreePtr(ByteBuffer d) { return d.getInt(0); }
+    private static void writeFreePtr(ByteBuffer d, int v) { d.putInt(0, v); }
+    private static short readSlotCount(ByteBuffer d) { return d.getShort(4); }
+    private static void writeSlotCount(ByteBuffer d, short v) { d.putShort(4, v); }
 
-    private static short getShort(byte[] d, int pos) { return ByteBuffer.wrap(d, pos, 2).getShort(); }
-    private static void putShort(byte[] d, int pos, short v) { ByteBuffer.wrap(d, pos, 2).putShort(v); }
+    private static short getShort(ByteBuffer d, int pos) { return d.getShort(pos); }
+    private static void putShort(ByteBuffer d, int pos, short v) { d.putShort(pos, v); }
 
     @Override
     public String toString() {
         return "HeapPage{id=" + pageId +
                ", freePtr=" + readFreePtr(data) +
                ", slotCount=" + readSlotCount(data) +
+               ", lsn=" + pageLsn() +
                ", file='" + filePath + "'}";
     }
 }
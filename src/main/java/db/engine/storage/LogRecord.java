@@ -0,0 +1,25 @@
+package db.engine.storage;
+
+/**
+ * One write-ahead log entry as read back from the log.
+ * lsn is the log position just past the record, so a change is durable once the log has
+ * been forced up to its lsn. INSERT carries the inserted record bytes; DELETE carries the
+ * deleted record bytes (the before-image). COMMIT has no page, slot or payload.
+ */
+public record LogRecord(long lsn, Type type, long txnId, String filePath, int pageId, int slotId, byte[] payload) {
+
+    public enum Type {
+        INSERT(1), DELETE(2), COMMIT(3);
+
+        final byte code;
+
+        Type(int code) { this.code = (byte) code; }
+
+        static Type of(byte code) {
+            for (Type t : values()) {
+                if (t.code == code) return t;
+            }
+            return null;
+        }
+    }
+}
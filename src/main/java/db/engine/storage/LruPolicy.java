@@ -0,0 +1,29 @@
+package db.engine.storage;
+
+import java.util.function.IntPredicate;
+
+/** Classic least-recently-used replacement; evicts the oldest unpinned frame. */
+final class LruPolicy implements ReplacementPolicy {
+    private final FrameList lru;
+
+    LruPolicy(int capacity) {
+        this.lru = new FrameList(capacity);
+    }
+
+    @Override public void onLoad(int frame, long pageKey) { lru.addTail(frame); }
+    @Override public void onHit(int frame) { lru.moveToTail(frame); }
+    @Override public void onRemove(int frame) { lru.remove(frame); }
+
+    @Override
+    public int evict(IntPredicate evictable) {
+        for (int f = lru.head(); f != FrameList.NONE; f = lru.next(f)) {
+            if (evictable.test(f)) {
+                lru.remove(f);
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    @Override public String name() { return "lru"; }
+}
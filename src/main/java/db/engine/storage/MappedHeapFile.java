@@ -0,0 +1,55 @@
+package db.engine.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Read-only memory-mapped view of a heap file.
+ * The file is mapped in large chunks (a multiple of the page size) and a page is a slice of
+ * its chunk, so reading a page is a memory access served by the OS page cache with no copy
+ * into a buffer pool frame. A chunk mapped while the file was shorter is remapped once the
+ * file has grown past it. Pages beyond the end of the file read as an empty page.
+ */
+final class MappedHeapFile {
+    static final long DEFAULT_CHUNK_BYTES = 64L << 20; // 64MB per mapping
+
+    private final DiskManager disk;
+    private final String filePath;
+    private final int pageSize;
+    private final long chunkBytes;
+    private final ByteBuffer emptyPage;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[1];
+    private int remaps; // diagnostics
+
+    MappedHeapFile(DiskManager disk, String filePath, int pageSize, long chunkBytes) {
+        if (chunkBytes % pageSize != 0) throw new IllegalArgumentException("Chunk size must be a multiple of the page size");
+        this.disk = disk;
+        this.filePath = filePath;
+        this.pageSize = pageSize;
+        this.chunkBytes = chunkBytes;
+        this.emptyPage = ByteBuffer.allocate(pageSize).asReadOnlyBuffer();
+    }
+
+    String filePath() { return filePath; }
+    synchronized int remaps() { return remaps; }
+
+    /** Read-only buffer positioned on page pageId (index 0 = first byte of the page). */
+    synchronized ByteBuffer page(int pageId) throws IOException {
+        long offset = (long) pageId * pageSize;
+        int c = (int) (offset / chunkBytes);
+        int within = (int) (offset % chunkBytes);
+        if (c >= chunks.length) chunks = Arrays.copyOf(chunks, Math.max(c + 1, chunks.length * 2));
+        MappedByteBuffer chunk = chunks[c];
+        if (chunk == null || chunk.capacity() < within + pageSize) {
+            long start = c * chunkBytes;
+            long len = Math.min(chunkBytes, disk.size(filePath) - start);
+            if (len < within + pageSize) return emptyPage; // not written back yet / beyond EOF
+            chunk = disk.map(filePath, start, len);
+            chunks[c] = chunk;
+            remaps++;
+        }
+        return chunk.slice(within, pageSize);
+    }
+}
@@ -1,20 +1,70 @@
 package db.engine.storage;
 
 /**
- * Immutable view of a fixed-size page loaded from a heap file.
+ * Fixed-size page frame cached by BufferManager.
+ * Callers mutate data() in place and then call markDirty() so the frame is written back.
+ * A page obtained from BufferManager.pin() is pinned; close() releases the pin, so
+ * try-with-resources scopes the frame's use.
+ * A caller changing the bytes of a pinned page holds the page's monitor while it does, and a
+ * flush writes the page under the same monitor, so a page never reaches disk half changed
+ * (an evicted page is unpinned, so nobody can be changing it).
  */
-public final class Page {
-    private final String filePath;
-    private final int pageId;
-    private final byte[] data; // page-size buffer
+public final class Page implements AutoCloseable {
+    private final BufferManager owner; // null for detached pages
+    private final int frameIndex;      // slot in the owner's frame arena (-1 if detached)
+    private final byte[] data; // page-size buffer, reused across the pages this frame holds
+    // Identity of the page currently held by the frame; guarded by the owning shard's latch
+    private String filePath;
+    private int fileId = -1;
+    private int pageId = -1;
+    private volatile boolean dirty; // modified since last write-back
+    int pinCount; // guarded by the owning shard's latch
+    boolean loading; // bytes are being read in; other pinners wait (guarded by the shard latch)
 
     public Page(String filePath, int pageId, byte[] data) {
+        this((BufferManager) null, -1, data);
         this.filePath = filePath;
         this.pageId = pageId;
+    }
+
+    Page(BufferManager owner, int frameIndex, byte[] data) {
+        this.owner = owner;
+        this.frameIndex = frameIndex;
         this.data = data;
     }
 
+    // Frame now holds the given page (buffer already loaded by the caller)
+    void assign(String filePath, int fileId, int pageId) {
+        this.filePath = filePath;
+        this.fileId = fileId;
+        this.pageId = pageId;
+    }
+
+    // Frame is free; its buffer will be overwritten by the next page it holds
+    void unassign() {
+        this.filePath = null;
+        this.fileId = -1;
+        this.pageId = -1;
+        this.dirty = false;
+    }
+
+    boolean isAssigned() { return filePath != null; }
+    int fileId() { return fileId; }
+    int frameIndex() { return frameIndex; }
+
     public String filePath() { return filePath; }
     public int pageId() { return pageId; }
     public byte[] data() { return data; }
+    public boolean isDirty() { return dirty; }
+
+    /** Record that the frame bytes changed and must be written back. */
+    public void markDirty() { dirty = true; }
+
+    void clearDirty() { dirty = false; }
+
+    /** Unpin the frame (no-op for detached pages). */
+    @Override
+    public void close() {
+        if (owner != null) owner.unpin(this);
+    }
 }
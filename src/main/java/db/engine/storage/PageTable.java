@@ -0,0 +1,95 @@
+package db.engine.storage;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from packed page keys (fileId, pageId) to frame indexes.
+ * Keys and values live in primitive arrays with linear probing and backward-shift deletion,
+ * so lookups, inserts and removals allocate nothing. Not thread-safe; the owner latches it.
+ */
+final class PageTable {
+    private static final long EMPTY = -1L; // fileId and pageId are non-negative, so never a real key
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    /** Size the table for at most maxEntries mappings at a load factor of 0.5 or less. */
+    PageTable(int maxEntries) {
+        int cap = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) << 1;
+        this.keys = new long[cap];
+        this.values = new int[cap];
+        this.mask = cap - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    static long key(int fileId, int pageId) {
+        return ((long) fileId << 32) | (pageId & 0xFFFFFFFFL);
+    }
+
+    static int fileIdOf(long key) { return (int) (key >>> 32); }
+    static int pageIdOf(long key) { return (int) key; }
+
+    int size() { return size; }
+
+    /** Frame index mapped to key, or -1 if absent. */
+    int get(long key) {
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == key) return values[i];
+            if (k == EMPTY) return -1;
+            i = (i + 1) & mask;
+        }
+    }
+
+    void put(long key, int value) {
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == key) { values[i] = value; return; }
+            if (k == EMPTY) {
+                if (size + 1 > (keys.length >> 1)) throw new IllegalStateException("PageTable full");
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Remove key; returns the frame index it mapped to or -1. */
+    int remove(long key) {
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == EMPTY) return -1;
+            if (k == key) break;
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        // Backward-shift: pull later entries of the probe run into the hole so no tombstones are needed
+        int hole = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != EMPTY) {
+            int home = slot(keys[j]);
+            // Move entry j into the hole if its home slot is not cyclically within (hole, j]
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads sequential page ids
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
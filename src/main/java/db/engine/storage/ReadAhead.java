@@ -0,0 +1,44 @@
+package db.engine.storage;
+
+/**
+ * Sequential access detector for one reader of one heap file.
+ * The reader reports every page it is about to read; once it has read TRIGGER_RUN
+ * consecutive pages, the next window pages are handed to BufferManager.prefetch() and the
+ * window is topped up whenever the reader has consumed half of it, so the scan's CPU work
+ * overlaps with the background reads. A jump to a non-consecutive page resets detection.
+ */
+public final class ReadAhead {
+    static final int TRIGGER_RUN = 2;
+
+    private final BufferManager pool;
+    private final String filePath;
+    private final int window;    // pages to keep in flight ahead of the reader (0 = off)
+    private final int pageCount; // never prefetch past the end of the file
+    private int lastPage = -2;
+    private int runLength;
+    private int prefetchedTo;    // exclusive end of pages already requested
+
+    public ReadAhead(BufferManager pool, String filePath, int window, int pageCount) {
+        this.pool = pool;
+        this.filePath = filePath;
+        this.window = window;
+        this.pageCount = pageCount;
+    }
+
+    /** Call before reading pageId. */
+    public void onAccess(int pageId) {
+        if (pageId == lastPage + 1) {
+            runLength++;
+        } else {
+            runLength = 1;
+            prefetchedTo = pageId + 1;
+        }
+        lastPage = pageId;
+        if (window <= 0 || runLength < TRIGGER_RUN) return;
+        if (prefetchedTo - pageId > window / 2) return; // enough already in flight
+        int from = Math.max(prefetchedTo, pageId + 1);
+        int to = Math.min(pageCount, pageId + 1 + window);
+        if (to > from) pool.prefetch(filePath, from, to - from);
+        prefetchedTo = Math.max(prefetchedTo, to);
+    }
+}
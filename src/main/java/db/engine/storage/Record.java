@@ -2,17 +2,18 @@ package db.engine.storage;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
 
 import db.engine.catalog.ColumnSchema;
+import db.engine.catalog.TableSchema;
 
 public class Record {
     private List<Object> values;
 
-    private static final int INT_BYTES = 4;
-    private static final int BOOLEAN_BYTES = 1; // stored as single byte (1 or 0)
-    private static final int VARCHAR_PREFIX_BYTES = 4; // length prefix for VARCHAR
+    static final int INT_BYTES = 4;
+    static final int BOOLEAN_BYTES = 1; // stored as single byte (1 or 0)
+    static final int VARCHAR_PREFIX_BYTES = 4; // length prefix for VARCHAR (legacy format)
+    static final int VAR_OFFSET_BYTES = 2; // offset table entry per VARCHAR (current format)
 
     public Record(List<Object> values) {
         this.values = values;
@@ -22,9 +23,46 @@ public class Record {
         return values;
     }
 
-    // Serialize record to byte[]
+    // Serialize record to byte[] in the current record format
     public byte[] toBytes(List<ColumnSchema> columns) {
-        int bufferSize = computeSerializedSize(columns);
+        return toBytes(columns, TableSchema.CURRENT_RECORD_FORMAT);
+    }
+
+    // Serialize record to byte[] in the given format (TableSchema.*_RECORD_FORMAT)
+    public byte[] toBytes(List<ColumnSchema> columns, int format) {
+        if (format == TableSchema.LEGACY_RECORD_FORMAT) return toLegacyBytes(columns);
+        if (format != TableSchema.CURRENT_RECORD_FORMAT) throw new IllegalArgumentException("Unknown record format: " + format);
+        RecordLayout layout = new RecordLayout(columns);
+        byte[][] strs = new byte[columns.size()][];
+        int size = layout.varDataStart;
+        for (int i = 0; i < columns.size(); i++) {
+            if (layout.varSlot[i] >= 0 && values.get(i) != null) {
+                strs[i] = ((String) values.get(i)).getBytes(StandardCharsets.UTF_8);
+                size += strs[i].length;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        int varEnd = layout.varDataStart;
+        for (int i = 0; i < columns.size(); i++) {
+            Object val = values.get(i);
+            if (val == null) buffer.put(i >> 3, (byte) (buffer.get(i >> 3) | (1 << (i & 7))));
+            switch (columns.get(i).type()) {
+                case INT -> { if (val != null) buffer.putInt(layout.fixedOffset[i], (int) val); }
+                case BOOLEAN -> { if (val != null) buffer.put(layout.fixedOffset[i], (byte) ((Boolean) val ? 1 : 0)); }
+                case VARCHAR -> {
+                    if (strs[i] != null) {
+                        buffer.put(varEnd, strs[i]);
+                        varEnd += strs[i].length;
+                    }
+                    buffer.putShort(layout.offsetTableStart + layout.varSlot[i] * VAR_OFFSET_BYTES, (short) varEnd);
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    private byte[] toLegacyBytes(List<ColumnSchema> columns) {
+        int bufferSize = computeLegacySize(columns);
         ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
 
         for (int i = 0; i < columns.size(); i++) {
@@ -45,7 +83,7 @@ public class Record {
         return buffer.array();
     }
 
-    private int computeSerializedSize(List<ColumnSchema> columns) {
+    private int computeLegacySize(List<ColumnSchema> columns) {
         int size = 0;
         for (int i = 0; i < columns.size(); i++) {
             ColumnSchema col = columns.get(i);
@@ -62,25 +100,18 @@ public class Record {
         return size;
     }
 
-    // Deserialize record from byte[]
+    // Deserialize record (current format) from byte[]
     public static Record fromBytes(byte[] data, List<ColumnSchema> columns) {
-        ByteBuffer buffer = ByteBuffer.wrap(data);
-        List<Object> values = new ArrayList<>();
+        return fromBytes(data, columns, TableSchema.CURRENT_RECORD_FORMAT);
+    }
 
-        for (ColumnSchema col : columns) {
-            switch (col.type()) {
-                case INT -> values.add(buffer.getInt());
-                case BOOLEAN -> values.add(buffer.get() == 1);
-                case VARCHAR -> {
-                    int len = buffer.getInt();
-                    byte[] strBytes = new byte[len];
-                    buffer.get(strBytes);
-                    values.add(new String(strBytes, StandardCharsets.UTF_8));
-                }
-            }
-        }
+    public static Record fromBytes(byte[] data, List<ColumnSchema> columns, int format) {
+        return fromBuffer(ByteBuffer.wrap(data), 0, columns, format);
+    }
 
-        return new Record(values);
+    // Deserialize record starting at offset of a page buffer (absolute reads; buffer position untouched)
+    public static Record fromBuffer(ByteBuffer buffer, int offset, List<ColumnSchema> columns, int format) {
+        return new RecordView(columns, format).reset(buffer, offset).toRecord();
     }
 
     @Override
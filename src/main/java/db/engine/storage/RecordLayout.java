@@ -0,0 +1,41 @@
+package db.engine.storage;
+
+import java.util.List;
+
+import db.engine.catalog.ColumnSchema;
+
+/**
+ * Where each column of a record lives in the fixed-offset record format:
+ * <pre>
+ * [null bitmap: 1 bit per column][INT/BOOLEAN columns in schema order]
+ * [u16 end offset per VARCHAR column][VARCHAR bytes in schema order]
+ * </pre>
+ * Fixed-width columns sit at constant offsets and VARCHAR column k spans from the end offset of
+ * VARCHAR k-1 (or the start of the VARCHAR data) to its own end offset, so any column is found
+ * without looking at the columns before it. Offsets are relative to the start of the record.
+ */
+final class RecordLayout {
+    final int bitmapBytes;
+    final int[] fixedOffset; // per column: offset of an INT/BOOLEAN value; -1 for VARCHAR
+    final int[] varSlot;     // per column: position of a VARCHAR in the offset table; -1 otherwise
+    final int offsetTableStart;
+    final int varDataStart;
+
+    RecordLayout(List<ColumnSchema> columns) {
+        int n = columns.size();
+        bitmapBytes = (n + 7) / 8;
+        fixedOffset = new int[n];
+        varSlot = new int[n];
+        int pos = bitmapBytes;
+        int vars = 0;
+        for (int i = 0; i < n; i++) {
+            switch (columns.get(i).type()) {
+                case INT -> { fixedOffset[i] = pos; varSlot[i] = -1; pos += Record.INT_BYTES; }
+                case BOOLEAN -> { fixedOffset[i] = pos; varSlot[i] = -1; pos += Record.BOOLEAN_BYTES; }
+                case VARCHAR -> { fixedOffset[i] = -1; varSlot[i] = vars++; }
+            }
+        }
+        offsetTableStart = pos;
+        varDataStart = pos + vars * Record.VAR_OFFSET_BYTES;
+    }
+}
@@ -0,0 +1,141 @@
+package db.engine.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import db.engine.catalog.ColumnSchema;
+import db.engine.catalog.TableSchema;
+
+/**
+ * Zero-copy view of a serialized record inside a page buffer.
+ * A column is decoded only when it is read. In the current record format every column sits
+ * at an offset known from the schema (see RecordLayout), so any column is one read away; in
+ * the legacy format offsets are found by walking the preceding columns once and remembered.
+ * A view is repositioned with reset() for the next row instead of allocating a new one.
+ * It reads the page bytes in place, so it is only valid while the page stays pinned (or
+ * mapped) and unchanged; toRecord() copies the values out.
+ */
+public final class RecordView {
+    private final List<ColumnSchema> columns;
+    private final RecordLayout layout; // null for the legacy format
+    private final int[] offsets; // legacy: start of each column; valid for columns < known
+    private ByteBuffer buffer;
+    private int base; // start of the record in buffer
+    private int known;
+
+    public RecordView(List<ColumnSchema> columns) {
+        this(columns, TableSchema.CURRENT_RECORD_FORMAT);
+    }
+
+    public RecordView(List<ColumnSchema> columns, int format) {
+        this.columns = columns;
+        if (format == TableSchema.CURRENT_RECORD_FORMAT) {
+            this.layout = new RecordLayout(columns);
+            this.offsets = null;
+        } else if (format == TableSchema.LEGACY_RECORD_FORMAT) {
+            this.layout = null;
+            this.offsets = new int[columns.size()];
+        } else {
+            throw new IllegalArgumentException("Unknown record format: " + format);
+        }
+    }
+
+    /** Point the view at the record starting at offset of buffer. */
+    public RecordView reset(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.base = offset;
+        if (offsets != null && offsets.length > 0) offsets[0] = offset;
+        this.known = 1;
+        return this;
+    }
+
+    public List<ColumnSchema> columns() { return columns; }
+    public int columnCount() { return columns.size(); }
+
+    /** True if the column holds no value (never the case in the legacy format). */
+    public boolean isNull(int col) {
+        return layout != null && (buffer.get(base + (col >> 3)) & (1 << (col & 7))) != 0;
+    }
+
+    public int getInt(int col) {
+        return buffer.getInt(layout != null ? base + layout.fixedOffset[col] : legacyOffset(col));
+    }
+
+    public boolean getBoolean(int col) {
+        return buffer.get(layout != null ? base + layout.fixedOffset[col] : legacyOffset(col)) == 1;
+    }
+
+    public String getString(int col) {
+        byte[] strBytes = new byte[stringLength(col)];
+        buffer.get(stringStart(col), strBytes);
+        return new String(strBytes, StandardCharsets.UTF_8);
+    }
+
+    /** True if VARCHAR column col holds exactly the UTF-8 bytes utf8; compared in place, no String is built. */
+    public boolean stringEquals(int col, byte[] utf8) {
+        if (isNull(col) || stringLength(col) != utf8.length) return false;
+        int pos = stringStart(col);
+        for (int i = 0; i < utf8.length; i++) {
+            if (buffer.get(pos + i) != utf8[i]) return false;
+        }
+        return true;
+    }
+
+    /** Column value boxed as Record holds it (Integer, Boolean, String, or null). */
+    public Object get(int col) {
+        if (isNull(col)) return null;
+        return switch (columns.get(col).type()) {
+            case INT -> getInt(col);
+            case BOOLEAN -> getBoolean(col);
+            case VARCHAR -> getString(col);
+        };
+    }
+
+    /** Decode every column into a standalone Record. */
+    public Record toRecord() {
+        List<Object> values = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++) values.add(get(i));
+        return new Record(values);
+    }
+
+    /** Decode only the given columns, in that order, into a standalone Record. */
+    public Record toRecord(int[] cols) {
+        List<Object> values = new ArrayList<>(cols.length);
+        for (int col : cols) values.add(get(col));
+        return new Record(values);
+    }
+
+    // Absolute position of the first byte of a VARCHAR value
+    private int stringStart(int col) {
+        if (layout == null) return legacyOffset(col) + Record.VARCHAR_PREFIX_BYTES;
+        int slot = layout.varSlot[col];
+        return base + (slot == 0 ? layout.varDataStart : varEnd(slot - 1));
+    }
+
+    private int stringLength(int col) {
+        if (layout == null) return buffer.getInt(legacyOffset(col));
+        int slot = layout.varSlot[col];
+        return varEnd(slot) - (slot == 0 ? layout.varDataStart : varEnd(slot - 1));
+    }
+
+    // End of the VARCHAR in offset table entry slot, relative to the record start
+    private int varEnd(int slot) {
+        return buffer.getShort(base + layout.offsetTableStart + slot * Record.VAR_OFFSET_BYTES) & 0xFFFF;
+    }
+
+    // Legacy format: byte offset of column col, extending the known offsets as far as needed
+    private int legacyOffset(int col) {
+        while (known <= col) {
+            int prev = known - 1;
+            int pos = offsets[prev];
+            offsets[known++] = pos + switch (columns.get(prev).type()) {
+                case INT -> Record.INT_BYTES;
+                case BOOLEAN -> Record.BOOLEAN_BYTES;
+                case VARCHAR -> Record.VARCHAR_PREFIX_BYTES + buffer.getInt(pos);
+            };
+        }
+        return offsets[col];
+    }
+}
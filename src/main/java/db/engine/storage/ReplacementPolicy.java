@@ -0,0 +1,40 @@
+package db.engine.storage;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Victim selection strategy for BufferManager frames.
+ * The pool reports loads, hits and removals by frame index and asks for a victim when it
+ * needs a frame; the predicate passed to evict() filters out frames that cannot be evicted
+ * (pinned). All calls are made under the pool's latch.
+ */
+public interface ReplacementPolicy {
+
+    /** Frame now holds a freshly loaded (or appended) page identified by pageKey. */
+    void onLoad(int frame, long pageKey);
+
+    /** Resident frame was accessed again. */
+    void onHit(int frame);
+
+    /** Frame was released without eviction (e.g. its page was invalidated). */
+    void onRemove(int frame);
+
+    /**
+     * Choose a victim among resident frames accepted by evictable and forget it.
+     * Returns the frame index or -1 if no resident frame is evictable.
+     */
+    int evict(IntPredicate evictable);
+
+    String name();
+
+    /** Build a policy by name: "lru" (default), "clock" or "2q". */
+    static ReplacementPolicy create(String name, int capacity) {
+        String n = name == null ? "lru" : name.trim().toLowerCase();
+        return switch (n) {
+            case "lru" -> new LruPolicy(capacity);
+            case "clock" -> new ClockPolicy(capacity);
+            case "2q" -> new TwoQueuePolicy(capacity);
+            default -> throw new IllegalArgumentException("Unknown replacement policy: " + name + " (expected lru, clock or 2q)");
+        };
+    }
+}
@@ -0,0 +1,55 @@
+package db.engine.storage;
+
+// Immutable storage engine settings; start from defaults() and override with the with* methods.
+public record StorageConfig(int bufferPoolPages,
+                            String replacementPolicy,
+                            int bufferPoolShards,
+                            long flushIntervalMs,
+                            AccessMode accessMode,
+                            int readAheadPages,
+                            String walPath,
+                            long groupCommitDelayMicros) {
+
+    public static StorageConfig defaults() {
+        return new StorageConfig(1024, "lru", 0, StorageManager.FLUSH_INTERVAL_MS, AccessMode.BUFFERED, 64, null, 0);
+    }
+
+    public StorageConfig withBufferPoolPages(int pages) {
+        return new StorageConfig(pages, replacementPolicy, bufferPoolShards, flushIntervalMs, accessMode, readAheadPages, walPath, groupCommitDelayMicros);
+    }
+
+    /** Buffer pool replacement policy: "lru", "clock" or "2q". */
+    public StorageConfig withReplacementPolicy(String policy) {
+        return new StorageConfig(bufferPoolPages, policy, bufferPoolShards, flushIntervalMs, accessMode, readAheadPages, walPath, groupCommitDelayMicros);
+    }
+
+    /** Number of independently latched pool partitions (a power of two); 0 picks one from the pool size. */
+    public StorageConfig withBufferPoolShards(int shards) {
+        return new StorageConfig(bufferPoolPages, replacementPolicy, shards, flushIntervalMs, accessMode, readAheadPages, walPath, groupCommitDelayMicros);
+    }
+
+    /** Background flush period; 0 disables the flusher. */
+    public StorageConfig withFlushIntervalMs(long millis) {
+        return new StorageConfig(bufferPoolPages, replacementPolicy, bufferPoolShards, millis, accessMode, readAheadPages, walPath, groupCommitDelayMicros);
+    }
+
+    /** Engine-wide read path for heap pages; individual tables can override it. */
+    public StorageConfig withAccessMode(AccessMode mode) {
+        return new StorageConfig(bufferPoolPages, replacementPolicy, bufferPoolShards, flushIntervalMs, mode, readAheadPages, walPath, groupCommitDelayMicros);
+    }
+
+    /** Sequential scan read-ahead window in pages (64 x 16KB = 1MB); 0 disables read-ahead. */
+    public StorageConfig withReadAheadPages(int pages) {
+        return new StorageConfig(bufferPoolPages, replacementPolicy, bufferPoolShards, flushIntervalMs, accessMode, pages, walPath, groupCommitDelayMicros);
+    }
+
+    /** Write-ahead log file; null (the default) disables logging. */
+    public StorageConfig withWal(String path) {
+        return new StorageConfig(bufferPoolPages, replacementPolicy, bufferPoolShards, flushIntervalMs, accessMode, readAheadPages, path, groupCommitDelayMicros);
+    }
+
+    /** How long a group commit leader waits for more commits before forcing the log; 0 forces at once. */
+    public StorageConfig withGroupCommitDelayMicros(long micros) {
+        return new StorageConfig(bufferPoolPages, replacementPolicy, bufferPoolShards, flushIntervalMs, accessMode, readAheadPages, walPath, micros);
+    }
+}
@@ -3,24 +3,88 @@ package db.engine.storage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
 
 import db.engine.catalog.CatalogManager;
 import db.engine.catalog.ColumnSchema;
 import db.engine.index.IndexManager;
 import db.engine.catalog.TableSchema;
 
+/**
+ * Heap tables over the buffer pool, with optional write-ahead logging (StorageConfig.withWal).
+ * With the log on, every row change is logged before its page is written and recovery runs
+ * when the manager is opened (see recover). The log records row changes, not page images, so
+ * it cannot rebuild a heap page torn by a crash in the middle of writing it: opening then fails
+ * with an error naming the page.
+ */
 public class StorageManager {
     private CatalogManager catalog;
     private IndexManager indexManager; // optional; may be set after construction
+    private final DiskManager diskManager; // open FileChannel per heap file
     private final BufferManager bufferManager;
+    private final AccessMode defaultAccessMode;
+    private final int readAheadPages;
+    private final Map<String, AccessMode> tableAccessModes = new ConcurrentHashMap<>(); // per-table overrides
+    private final Map<String, MappedHeapFile> mappedFiles = new ConcurrentHashMap<>(); // by heap file path
+    private final Set<String> unflushedMapped = ConcurrentHashMap.newKeySet(); // mapped files with writes still in the pool
+    private final Map<String, FreeSpaceMap> freeSpaceMaps = new ConcurrentHashMap<>(); // by heap file path; built on first write
+    private final WriteAheadLog wal; // null when logging is off
+    private final AtomicLong nextTxnId = new AtomicLong(1);
+    private final Map<Long, Long> activeTxns = new ConcurrentHashMap<>(); // unfinished txn -> log position at its start
+    private final Map<SlotRef, Integer> heldSlots = new ConcurrentHashMap<>(); // slot -> unfinished txns that changed it (see holdSlot)
+    private final Map<Long, List<SlotRef>> txnSlots = new ConcurrentHashMap<>(); // unfinished txn -> slots it holds
+    private final AtomicBoolean checkpointing = new AtomicBoolean();
+    private RecoveryStats lastRecovery = new RecoveryStats(0, 0, 0, 0, 0);
 
     // Fixed page size for initial buffer manager introduction
     public static final int PAGE_SIZE = 16 * 1024; // 16KB pages for benchmark runs
+    // Background write-back period for dirty heap pages
+    public static final long FLUSH_INTERVAL_MS = 1000;
+    // Free-space map candidates tried before an insert appends a new page
+    private static final int MAX_FSM_ATTEMPTS = 3;
+    // A delete compacts its page once this fraction of the page's data area is dead
+    public static final double COMPACTION_DEAD_RATIO = 0.3;
+    // With logging on, a commit triggers a checkpoint once the log holds this many bytes
+    public static final long WAL_CHECKPOINT_BYTES = 64L * 1024 * 1024;
 
     public StorageManager(CatalogManager catalog) {
+        this(catalog, StorageConfig.defaults());
+    }
+
+    public StorageManager(CatalogManager catalog, StorageConfig config) {
         this.catalog = catalog;
-        this.bufferManager = new BufferManager(PAGE_SIZE, 1024); // capacity 1024 pages
+        this.diskManager = new DiskManager(PAGE_SIZE);
+        int shards = config.bufferPoolShards() > 0 ? config.bufferPoolShards() : BufferManager.defaultShards(config.bufferPoolPages());
+        this.bufferManager = new BufferManager(diskManager, PAGE_SIZE, config.bufferPoolPages(), config.replacementPolicy(), shards);
+        if (config.walPath() != null) {
+            // The log makes commits durable, so page writes wait for eviction or a checkpoint
+            try {
+                this.wal = new WriteAheadLog(config.walPath(), config.groupCommitDelayMicros());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed opening write-ahead log " + config.walPath(), e);
+            }
+            // Write-ahead rule: the log is forced up to a page's LSN before the page is written
+            this.bufferManager.setWriteBackListener((path, pageId, data) -> {
+                long pageLsn = HeapPage.pageLsn(data);
+                if (pageLsn < 0) wal.flush(); // version 0 page without an LSN: force everything
+                else if (pageLsn > 0) wal.force(pageLsn);
+            });
+            this.lastRecovery = recover();
+        } else {
+            this.wal = null;
+            if (config.flushIntervalMs() > 0) this.bufferManager.startFlusher(config.flushIntervalMs());
+        }
+        this.defaultAccessMode = config.accessMode();
+        // Keep the read-ahead window well inside the pool so it cannot evict the pages being read
+        this.readAheadPages = Math.max(0, Math.min(config.readAheadPages(), config.bufferPoolPages() / 4));
     }
 
     // Allow late binding to avoid circular construction concerns
@@ -30,6 +94,50 @@ public class StorageManager {
 
     public CatalogManager getCatalog() { return catalog; }
     public BufferManager getBufferManager() { return bufferManager; }
+    public DiskManager getDiskManager() { return diskManager; }
+    /** The write-ahead log, or null when logging is off. */
+    public WriteAheadLog getWal() { return wal; }
+
+    public int getReadAheadPages() { return readAheadPages; }
+
+    /** Sequential read-ahead for one scan over a table's heap file of pageCount pages. */
+    public ReadAhead readAhead(String tableName, int pageCount) {
+        TableSchema ts = catalog.getTableSchema(tableName);
+        if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        return new ReadAhead(bufferManager, ts.filePath(), readAheadPages, pageCount);
+    }
+
+    /** Override the engine-wide read path for one table (e.g. MMAP for a read-mostly fact table). */
+    public void setAccessMode(String tableName, AccessMode mode) {
+        tableAccessModes.put(tableName, mode);
+    }
+
+    public AccessMode accessMode(String tableName) {
+        return tableAccessModes.getOrDefault(tableName, defaultAccessMode);
+    }
+
+    /** True if reads of this table bypass the buffer pool and use the memory-mapped file. */
+    public boolean isMapped(String tableName) {
+        return accessMode(tableName) == AccessMode.MMAP;
+    }
+
+    /**
+     * Read-only view of a heap page straight from the table's memory-mapped file. Dirty pool
+     * pages of the table are written back first so the mapping sees them.
+     */
+    public HeapPage mappedPage(String tableName, int pageId) {
+        TableSchema ts = catalog.getTableSchema(tableName);
+        if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        String path = ts.filePath();
+        try {
+            if (unflushedMapped.remove(path)) bufferManager.flushFile(path);
+            MappedHeapFile mf = mappedFiles.computeIfAbsent(path,
+                    p -> new MappedHeapFile(diskManager, p, PAGE_SIZE, MappedHeapFile.DEFAULT_CHUNK_BYTES));
+            return HeapPage.wrapReadOnly(path, pageId, mf.page(pageId), PAGE_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed mapping page " + pageId + " of " + tableName, e);
+        }
+    }
 
     public void createTable(TableSchema schema) {
         catalog.registerTable(schema);
@@ -44,20 +152,208 @@ public class StorageManager {
         }
     }
 
+    /**
+     * Release the open file handle and cached pages of a table, e.g. before its heap file
+     * is deleted or recreated. The handle is reopened lazily on next access.
+     */
+    public void closeTable(String tableName) {
+        TableSchema ts = catalog.getTableSchema(tableName);
+        if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        bufferManager.invalidateFile(ts.filePath());
+        mappedFiles.remove(ts.filePath()); // unmapped once unreachable
+        freeSpaceMaps.remove(ts.filePath());
+        unflushedMapped.remove(ts.filePath());
+        diskManager.closeFile(ts.filePath());
+    }
+
+    /**
+     * Checkpoint: write back every dirty heap page and force the heap files to disk.
+     * With logging on the checkpoint is fuzzy: row changes carry on while it runs. Every change
+     * logged before it started is on disk once the pages are flushed, so the log is cut there
+     * (or earlier, at the start of a transaction still running) and recovery replays only what
+     * came after.
+     */
+    public final void checkpoint() {
+        try {
+            long redoStart = wal != null ? wal.appendedLsn() : 0;
+            bufferManager.flushAll();
+            diskManager.syncAll();
+            if (wal != null) {
+                long cut = redoStart;
+                for (long start : activeTxns.values()) cut = Math.min(cut, start);
+                wal.truncate(cut);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Checkpoint failed", e);
+        }
+    }
+
+    /** Outcome of the recovery pass run when the storage manager was opened. */
+    public record RecoveryStats(int logRecords, int redone, int skipped, int undone, int rolledBackTxns) {}
+
+    public RecoveryStats lastRecovery() { return lastRecovery; }
+
+    /**
+     * ARIES-style restart from the write-ahead log, which starts at the last checkpoint's cut.
+     * Analysis finds the transactions without a COMMIT record. Redo replays every insert and
+     * delete newer than its page's LSN, winners and losers alike, so the pages reach their state
+     * at the crash. Undo then rolls the losers back, newest change first, using the logged
+     * record bytes. Undo works in place: no insert reuses a slot an unfinished transaction
+     * changed (see holdSlot), so each slot a loser touched still holds the loser's row or a
+     * tombstone, never a committed row that putting the old state back would destroy.
+     * A checkpoint at the end makes the result durable and empties the log, so no
+     * compensation records are needed. A crash during recovery just runs it again: redo skips
+     * what the page LSNs show is done, and as the slots are the loser's own, deleting its row
+     * or restoring the logged bytes again leaves them as the first run did.
+     * Redo starts from each page as it is on disk. A page that fails its checksum (torn by the
+     * crash, or bit rot) has lost changes the log no longer holds, so recovery stops with an
+     * error naming the page rather than replay onto a guess; the file must be restored.
+     */
+    private RecoveryStats recover() {
+        try {
+            List<LogRecord> log = new ArrayList<>();
+            WriteAheadLog.read(wal.path(), log::add);
+            if (log.isEmpty()) return new RecoveryStats(0, 0, 0, 0, 0);
+            Set<Long> committed = new HashSet<>();
+            Set<Long> losers = new HashSet<>();
+            long maxTxn = 0;
+            for (LogRecord rec : log) {
+                maxTxn = Math.max(maxTxn, rec.txnId());
+                if (rec.type() == LogRecord.Type.COMMIT) committed.add(rec.txnId());
+                else losers.add(rec.txnId());
+            }
+            losers.removeAll(committed);
+            nextTxnId.set(maxTxn + 1);
+
+            int redone = 0, skipped = 0, undone = 0;
+            for (LogRecord rec : log) {
+                if (rec.type() == LogRecord.Type.COMMIT) continue;
+                bufferManager.extendTo(rec.filePath(), rec.pageId() + 1);
+                try (Page page = bufferManager.pin(rec.filePath(), rec.pageId())) {
+                    HeapPage hp = HeapPage.wrap(rec.filePath(), rec.pageId(), page.data(), PAGE_SIZE);
+                    if (hp.pageLsn() >= rec.lsn()) { skipped++; continue; }
+                    if (rec.type() == LogRecord.Type.INSERT) hp.insertAt(rec.slotId(), rec.payload());
+                    else hp.delete(rec.slotId());
+                    hp.setPageLsn(rec.lsn());
+                    page.markDirty();
+                    redone++;
+                }
+            }
+            for (int i = log.size() - 1; i >= 0; i--) {
+                LogRecord rec = log.get(i);
+                if (rec.type() == LogRecord.Type.COMMIT || !losers.contains(rec.txnId())) continue;
+                try (Page page = bufferManager.pin(rec.filePath(), rec.pageId())) {
+                    HeapPage hp = HeapPage.wrap(rec.filePath(), rec.pageId(), page.data(), PAGE_SIZE);
+                    if (rec.type() == LogRecord.Type.INSERT) hp.delete(rec.slotId());
+                    else hp.insertAt(rec.slotId(), rec.payload());
+                    page.markDirty();
+                    undone++;
+                }
+            }
+            checkpoint();
+            System.out.println("[StorageManager] Recovered from " + wal.path() + ": " + redone + " changes redone, "
+                    + undone + " undone (" + losers.size() + " uncommitted transactions)");
+            return new RecoveryStats(log.size(), redone, skipped, undone, losers.size());
+        } catch (CorruptPageException e) {
+            throw new RuntimeException("Recovery from " + wal.path() + " failed: page " + e.pageId() + " of "
+                    + e.filePath() + " is corrupt and the log cannot rebuild it", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Recovery from " + wal.path() + " failed", e);
+        }
+    }
+
+    /** Shut down storage: stops the flusher, writes back dirty pages and closes every heap file handle. */
+    public void close() {
+        try {
+            checkpoint();
+            if (indexManager != null) indexManager.close(); // once the rows the indexes point at are on disk
+            bufferManager.shutdown();
+            if (wal != null) wal.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed flushing buffer pool on close", e);
+        } finally {
+            mappedFiles.clear();
+            diskManager.closeAll();
+        }
+    }
+
     public RID insert(String tableName, Record record) { return doHeapInsert(tableName, record); }
 
+    /**
+     * Append rows in bulk: records are packed into fresh heap pages in memory and written past
+     * the end of the file in large sequential writes, bypassing the buffer pool, and indexes
+     * are filled once at the end instead of per row. Returns the number of rows loaded.
+     * The load is not logged: the new pages are forced to disk before this returns. If a row
+     * is rejected or a write fails part way, the file is cut back to its size before the load,
+     * so the table and its indexes are left as they were. No other writer may append to the
+     * table while it runs.
+     */
+    public int bulkLoad(String tableName, Iterator<Record> rows) {
+        TableSchema ts = catalog.getTableSchema(tableName);
+        if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        List<ColumnSchema> columns = ts.columns();
+        String path = ts.filePath();
+        int[] keyColumns = indexManager != null ? indexManager.indexedColumns(tableName) : new int[0];
+        BulkLoader loader;
+        try {
+            loader = new BulkLoader(bufferManager, path, PAGE_SIZE, columns, ts.recordFormat(), keyColumns);
+        } catch (IOException e) {
+            throw new RuntimeException("Bulk load into " + tableName + " failed", e);
+        }
+        loader.trackFreeSpace(freeSpaceMaps.get(path));
+        try {
+            while (rows.hasNext()) {
+                Record record = rows.next();
+                validateRecord(columns, record);
+                loader.add(record);
+            }
+            loader.finish();
+            diskManager.sync(path);
+        } catch (IOException | RuntimeException e) {
+            // Indexes are only filled below, so cutting the heap back undoes the whole load
+            try {
+                loader.abort();
+            } catch (IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            if (e instanceof RuntimeException re) throw re;
+            throw new RuntimeException("Bulk load into " + tableName + " failed", e);
+        }
+        for (int k = 0; k < keyColumns.length; k++) {
+            indexManager.onTableBulkLoad(tableName, keyColumns[k], loader.keys(k), loader.rids(), loader.rows());
+        }
+        return loader.rows();
+    }
+
     public Record read(String tableName, RID rid) {
         TableSchema ts = catalog.getTableSchema(tableName);
         if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
         List<ColumnSchema> cols = ts.columns();
-        byte[] pageBytes;
-        try {
-            pageBytes = bufferManager.getPage(ts.filePath(), rid.pageId()).data();
+        if (isMapped(tableName)) {
+            return mappedPage(tableName, rid.pageId()).readRecord(rid.slotId(), cols, ts.recordFormat());
+        }
+        try (Page page = bufferManager.pin(ts.filePath(), rid.pageId())) {
+            HeapPage hp = HeapPage.wrap(ts.filePath(), rid.pageId(), page.data(), PAGE_SIZE);
+            return hp.readRecord(rid.slotId(), cols, ts.recordFormat());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Read only the given columns of a row, in that order (the other columns are never decoded). */
+    public Record read(String tableName, RID rid, int[] columns) {
+        TableSchema ts = catalog.getTableSchema(tableName);
+        if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        RecordView view = new RecordView(ts.columns(), ts.recordFormat());
+        if (isMapped(tableName)) {
+            return mappedPage(tableName, rid.pageId()).readView(rid.slotId(), view).toRecord(columns);
+        }
+        try (Page page = bufferManager.pin(ts.filePath(), rid.pageId())) {
+            HeapPage hp = HeapPage.wrap(ts.filePath(), rid.pageId(), page.data(), PAGE_SIZE);
+            return hp.readView(rid.slotId(), view).toRecord(columns);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        HeapPage hp = HeapPage.wrap(ts.filePath(), rid.pageId(), pageBytes, PAGE_SIZE);
-        return hp.readRecord(rid.slotId(), cols);
     }
 
     /**
@@ -68,51 +364,140 @@ public class StorageManager {
         TableSchema ts = catalog.getTableSchema(tableName);
         if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
         List<ColumnSchema> cols = ts.columns();
-        byte[] pageBytes;
+        Record old;
+        long txnId = beginChange();
         try {
-            pageBytes = bufferManager.getPage(ts.filePath(), rid.pageId()).data();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            try (Page page = bufferManager.pin(ts.filePath(), rid.pageId())) {
+                synchronized (page) { // see Page: write-back never sees the change half done
+                    HeapPage hp = HeapPage.wrap(ts.filePath(), rid.pageId(), page.data(), PAGE_SIZE);
+                    // Try to read old record (will throw if tombstoned)
+                    try {
+                        old = hp.readRecord(rid.slotId(), cols, ts.recordFormat());
+                    } catch (Exception ex) { return false; }
+                    page.markDirty(); // before logging, so a checkpoint started after the log record flushes the page
+                    long lsn = wal != null ? wal.logDelete(txnId, ts.filePath(), rid.pageId(), rid.slotId(), hp.readSlot(rid.slotId())) : 0;
+                    if (wal != null) holdSlot(txnId, ts.filePath(), rid.pageId(), rid.slotId());
+                    hp.delete(rid.slotId());
+                    if (hp.deadRatio() >= COMPACTION_DEAD_RATIO) hp.compact(); // slot ids stay put
+                    if (wal != null) hp.setPageLsn(lsn);
+                    FreeSpaceMap fsm = freeSpaceMaps.get(ts.filePath());
+                    if (fsm != null) fsm.update(rid.pageId(), hp.freeSpace());
+                }
+                if (isMapped(tableName)) unflushedMapped.add(ts.filePath());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (indexManager != null) {
+                indexManager.onTableDelete(tableName, rid, old);
+            }
+            commit(txnId);
+        } finally {
+            endChange(txnId);
         }
-        HeapPage hp = HeapPage.wrap(ts.filePath(), rid.pageId(), pageBytes, PAGE_SIZE);
-        // Try to read old record (will throw if tombstoned)
-        Record old;
+        return true;
+    }
+
+    /** Outcome of a VACUUM: pages compacted, bytes reclaimed (in-page plus truncated pages), pages truncated. */
+    public record VacuumStats(int pagesCompacted, long bytesReclaimed, int pagesTruncated) {}
+
+    /**
+     * Compact every page of a table that holds dead record bytes and cut fully empty pages
+     * off the end of the heap file. Live records keep their RIDs. A logged table is checkpointed
+     * before the cut, or recovery would replay old records onto the truncated pages and grow
+     * the file back.
+     */
+    public VacuumStats vacuum(String tableName) {
+        TableSchema ts = catalog.getTableSchema(tableName);
+        if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        String path = ts.filePath();
         try {
-            old = hp.readRecord(rid.slotId(), cols);
-        } catch (Exception ex) { return false; }
-        hp.delete(rid.slotId());
-        // Persist page after mutation
-        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(new File(ts.filePath()), "rw")) {
-            raf.seek((long) rid.pageId() * PAGE_SIZE);
-            raf.write(hp.rawData());
+            int pages = bufferManager.pageCount(path);
+            FreeSpaceMap fsm = freeSpaceMap(path);
+            int compacted = 0;
+            long reclaimed = 0;
+            int lastLive = -1;
+            for (int pid = 0; pid < pages; pid++) {
+                try (Page page = bufferManager.pin(path, pid)) {
+                    HeapPage hp = HeapPage.wrap(path, pid, page.data(), PAGE_SIZE);
+                    if (hp.deadBytes() > 0) {
+                        synchronized (page) {
+                            reclaimed += hp.compact();
+                            page.markDirty();
+                        }
+                        compacted++;
+                    }
+                    if (!hp.liveSlotIds().isEmpty()) lastLive = pid;
+                    fsm.update(pid, hp.freeSpace());
+                }
+            }
+            int keep = lastLive + 1;
+            int truncated = pages - keep;
+            if (truncated > 0) {
+                if (wal != null) checkpoint(); // the empty pages reach disk and the log is cut first
+                mappedFiles.remove(path); // never read a mapping past the new end of file
+                bufferManager.truncateFile(path, keep);
+                diskManager.truncate(path, (long) keep * PAGE_SIZE);
+                fsm.truncate(keep);
+                reclaimed += (long) truncated * PAGE_SIZE;
+            }
+            if (compacted > 0 && isMapped(tableName)) unflushedMapped.add(path);
+            return new VacuumStats(compacted, reclaimed, truncated);
         } catch (IOException e) {
-            throw new RuntimeException("Failed writing heap page on delete " + rid.pageId(), e);
-        }
-        bufferManager.invalidate(ts.filePath(), rid.pageId());
-        if (indexManager != null) {
-            indexManager.onTableDelete(tableName, rid, old);
+            throw new RuntimeException("VACUUM failed for " + tableName, e);
         }
-        return true;
     }
 
     // Functional-style scan using callback to avoid building large lists when not needed
     public interface RowConsumer { void accept(RID rid, Record record); }
 
     public void scan(String tableName, RowConsumer consumer) {
+        scanViews(tableName, (pageId, slotId, view) -> consumer.accept(new RID(pageId, slotId), view.toRecord()));
+    }
+
+    // Scan without decoding rows: the view is only valid during the callback (see RecordView)
+    public interface ViewConsumer { void accept(int pageId, int slotId, RecordView view); }
+
+    public void scanViews(String tableName, ViewConsumer consumer) {
+        scanViews(tableName, 0, pageCount(tableName), consumer);
+    }
+
+    /**
+     * Scan heap pages [fromPage, toPage) only. Threads may scan separate ranges of the same
+     * table at once, each with its own consumer.
+     */
+    public void scanViews(String tableName, int fromPage, int toPage, ViewConsumer consumer) {
         TableSchema ts = catalog.getTableSchema(tableName);
         if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
-        File f = new File(ts.filePath());
-        long fileLen = f.length();
-        if (fileLen == 0) return;
-        int pageCount = (int) ((fileLen + PAGE_SIZE - 1) / PAGE_SIZE);
-        List<ColumnSchema> cols = ts.columns();
-        for (int pid = 0; pid < pageCount; pid++) {
-            byte[] bytes;
-            try { bytes = bufferManager.getPage(ts.filePath(), pid).data(); } catch (IOException e) { throw new RuntimeException(e); }
-            HeapPage hp = HeapPage.wrap(ts.filePath(), pid, bytes, PAGE_SIZE);
-            for (int slotId : hp.liveSlotIds()) {
-                consumer.accept(new RID(pid, slotId), hp.readRecord(slotId, cols));
+        RecordView view = new RecordView(ts.columns(), ts.recordFormat()); // one layout for the whole scan
+        if (isMapped(tableName)) {
+            for (int pid = fromPage; pid < toPage; pid++) {
+                HeapPage hp = mappedPage(tableName, pid);
+                for (int slotId : hp.liveSlotIds()) {
+                    consumer.accept(pid, slotId, hp.readView(slotId, view));
+                }
             }
+            return;
+        }
+        ReadAhead readAhead = new ReadAhead(bufferManager, ts.filePath(), readAheadPages, toPage);
+        for (int pid = fromPage; pid < toPage; pid++) {
+            readAhead.onAccess(pid);
+            try (Page page = bufferManager.pin(ts.filePath(), pid)) { // pinned while the consumer runs
+                HeapPage hp = HeapPage.wrap(ts.filePath(), pid, page.data(), PAGE_SIZE);
+                for (int slotId : hp.liveSlotIds()) {
+                    consumer.accept(pid, slotId, hp.readView(slotId, view));
+                }
+            } catch (IOException e) { throw new RuntimeException(e); }
+        }
+    }
+
+    /** Number of heap pages in a table, including appended pages not yet written back. */
+    public int pageCount(String tableName) {
+        TableSchema ts = catalog.getTableSchema(tableName);
+        if (ts == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        try {
+            return bufferManager.pageCount(ts.filePath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 
@@ -162,59 +547,201 @@ public class StorageManager {
         return new IllegalArgumentException("Type mismatch for column '" + col.name() + "' expected " + col.type() + ", got " + (v == null ? "null" : v.getClass().getSimpleName()));
     }
 
+    // Free-space map of a heap file, rebuilt from the page headers on first use
+    private FreeSpaceMap freeSpaceMap(String path) throws IOException {
+        FreeSpaceMap fsm = freeSpaceMaps.get(path);
+        if (fsm != null) return fsm;
+        fsm = new FreeSpaceMap(PAGE_SIZE);
+        int pages = bufferManager.pageCount(path);
+        for (int pid = 0; pid < pages; pid++) {
+            try (Page page = bufferManager.pin(path, pid)) {
+                fsm.update(pid, HeapPage.wrap(path, pid, page.data(), PAGE_SIZE).freeSpace());
+            }
+        }
+        FreeSpaceMap raced = freeSpaceMaps.putIfAbsent(path, fsm);
+        return raced != null ? raced : fsm;
+    }
+
     private RID doHeapInsert(String tableName, Record record) {
         TableSchema tSchema = catalog.getTableSchema(tableName);
         if (tSchema == null) throw new IllegalArgumentException("Table not found: " + tableName);
         List<ColumnSchema> columns = tSchema.columns();
         validateRecord(columns, record);
 
-        byte[] payload = record.toBytes(columns);
-        if (payload.length > 0xFFFF) {
+        byte[] payload = record.toBytes(columns, tSchema.recordFormat());
+        if (payload.length > HeapPage.maxRecordLength(PAGE_SIZE)) { // before a page is pinned or appended
             throw new IllegalArgumentException("Record too large for current heap page format (len=" + payload.length + ")");
         }
 
-        File file = new File(tSchema.filePath());
+        String path = tSchema.filePath();
+        int slotId;
+        int targetPageId;
+        long txnId = beginChange();
         try {
-            file.getParentFile().mkdirs();
-            file.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            try {
+                FreeSpaceMap fsm = freeSpaceMap(path);
+                Page page = pinPageWithRoom(path, fsm, payload.length);
+                HeapPage heapPage = HeapPage.wrap(path, page.pageId(), page.data(), PAGE_SIZE);
+                try {
+                    targetPageId = page.pageId();
+                    synchronized (page) { // see Page: write-back never sees the change half done
+                        page.markDirty(); // before logging, so a checkpoint started after the log record flushes the page
+                        slotId = heapPage.insert(payload, heldSlots(path, targetPageId));
+                        if (wal != null) {
+                            heapPage.setPageLsn(wal.logInsert(txnId, path, targetPageId, slotId, payload));
+                            holdSlot(txnId, path, targetPageId, slotId);
+                        }
+                        fsm.update(targetPageId, heapPage.freeSpace());
+                    }
+                    if (isMapped(tableName)) unflushedMapped.add(path);
+                } finally {
+                    page.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load heap page for insert into " + tableName, e);
+            }
+            RID rid = new RID(targetPageId, slotId);
+            if (indexManager != null) {
+                indexManager.onTableInsert(tableName, rid, record);
+            }
+            commit(txnId);
+            return rid;
+        } finally {
+            endChange(txnId);
         }
+    }
 
-        long fileLen = file.length();
-        int lastPageId = (int) (fileLen / PAGE_SIZE);
-        boolean aligned = (fileLen % PAGE_SIZE) == 0; // true if no partial page at end
-        int targetPageId = aligned ? Math.max(lastPageId - 1, 0) : lastPageId; // if empty file -> page 0
+    /**
+     * Insert many rows in one call. Every record is validated before anything is written, so a
+     * bad row fails the whole batch. Rows fill each page they land on before moving to the
+     * next, so a page is pinned and dirtied once per batch rather than once per row. With
+     * logging on the batch is a single transaction, committed with one log force.
+     * Returns the RIDs in the order of records.
+     */
+    public List<RID> insertBatch(String tableName, List<Record> records) {
+        TableSchema tSchema = catalog.getTableSchema(tableName);
+        if (tSchema == null) throw new IllegalArgumentException("Table not found: " + tableName);
+        List<ColumnSchema> columns = tSchema.columns();
+        int maxLen = HeapPage.maxRecordLength(PAGE_SIZE);
+        byte[][] payloads = new byte[records.size()][];
+        for (int i = 0; i < payloads.length; i++) {
+            Record record = records.get(i);
+            validateRecord(columns, record);
+            payloads[i] = record.toBytes(columns, tSchema.recordFormat());
+            if (payloads[i].length > maxLen) {
+                throw new IllegalArgumentException("Record too large for current heap page format (len=" + payloads[i].length + ")");
+            }
+        }
 
-        byte[] pageBytes;
+        String path = tSchema.filePath();
+        List<RID> rids = new ArrayList<>(payloads.length);
+        long txnId = beginChange();
         try {
-            pageBytes = bufferManager.getPage(file.getPath(), targetPageId).data();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load page " + targetPageId, e);
+            try {
+                FreeSpaceMap fsm = freeSpaceMap(path);
+                int i = 0;
+                while (i < payloads.length) {
+                    Page page = pinPageWithRoom(path, fsm, payloads[i].length);
+                    HeapPage heapPage = HeapPage.wrap(path, page.pageId(), page.data(), PAGE_SIZE);
+                    try {
+                        synchronized (page) { // see Page: write-back never sees the change half done
+                            page.markDirty();
+                            IntPredicate held = heldSlots(path, page.pageId());
+                            for (; i < payloads.length && heapPage.canFit(payloads[i].length, held); i++) {
+                                int slotId = heapPage.insert(payloads[i], held);
+                                if (wal != null) {
+                                    heapPage.setPageLsn(wal.logInsert(txnId, path, page.pageId(), slotId, payloads[i]));
+                                    holdSlot(txnId, path, page.pageId(), slotId);
+                                }
+                                rids.add(new RID(page.pageId(), slotId));
+                            }
+                            fsm.update(page.pageId(), heapPage.freeSpace());
+                        }
+                    } finally {
+                        page.close();
+                    }
+                }
+                if (isMapped(tableName)) unflushedMapped.add(path);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load heap page for insert into " + tableName, e);
+            }
+            if (indexManager != null) {
+                for (int i = 0; i < rids.size(); i++) indexManager.onTableInsert(tableName, rids.get(i), records.get(i));
+            }
+            commit(txnId);
+            return rids;
+        } finally {
+            endChange(txnId);
         }
-        HeapPage heapPage = HeapPage.wrap(file.getPath(), targetPageId, pageBytes, PAGE_SIZE);
+    }
 
-        if (!heapPage.canFit(payload.length)) {
-            targetPageId = aligned ? lastPageId : lastPageId + 1; // append new page at end
-            pageBytes = new byte[PAGE_SIZE];
-            heapPage = HeapPage.wrap(file.getPath(), targetPageId, pageBytes, PAGE_SIZE);
+    // Pin a page that can take a record of len bytes: ask the free-space map, append a fresh page when none has room
+    private Page pinPageWithRoom(String path, FreeSpaceMap fsm, int len) throws IOException {
+        for (int attempt = 0; attempt < MAX_FSM_ATTEMPTS; attempt++) {
+            int candidate = fsm.find(len);
+            if (candidate < 0) break;
+            Page page = bufferManager.pin(path, candidate);
+            HeapPage heapPage = HeapPage.wrap(path, candidate, page.data(), PAGE_SIZE);
+            if (heapPage.canFit(len, heldSlots(path, candidate))) return page;
+            fsm.update(candidate, heapPage.freeSpace()); // stale entry; correct it and look again
+            page.close();
         }
+        return bufferManager.pinNew(path);
+    }
+
+    // Start a logged row change (each insert/delete is its own transaction); returns its txn id.
+    // Until endChange() the txn pins the log: a checkpoint keeps its records for recovery's undo.
+    private long beginChange() {
+        if (wal == null) return 0;
+        long txnId = nextTxnId.getAndIncrement();
+        activeTxns.put(txnId, wal.appendedLsn()); // its records all come after this
+        return txnId;
+    }
+
+    // A txn that failed before its commit keeps its slots held: its changes stay on the pages
+    // until a restart, when recovery undoes them in place.
+    private void endChange(long txnId) {
+        if (wal != null) activeTxns.remove(txnId);
+    }
+
+    private record SlotRef(String path, int pageId, int slotId) {}
+
+    // Keep a slot the txn inserted into or deleted from out of reach of other inserts until
+    // the txn commits. Recovery rolls an unfinished txn back by putting the slot's old state
+    // back, which would destroy a row another txn had put there meanwhile. Call under the page lock.
+    private void holdSlot(long txnId, String path, int pageId, int slotId) {
+        SlotRef ref = new SlotRef(path, pageId, slotId);
+        heldSlots.merge(ref, 1, Integer::sum);
+        txnSlots.computeIfAbsent(txnId, t -> new ArrayList<>()).add(ref);
+    }
+
+    private void releaseSlots(long txnId) {
+        List<SlotRef> refs = txnSlots.remove(txnId);
+        if (refs == null) return;
+        for (SlotRef ref : refs) heldSlots.computeIfPresent(ref, (r, n) -> n == 1 ? null : n - 1);
+    }
 
-        int slotId = heapPage.insert(payload);
+    // Tombstoned slots of a page that inserts must not reuse (see holdSlot)
+    private IntPredicate heldSlots(String path, int pageId) {
+        return slotId -> !heldSlots.isEmpty() && heldSlots.containsKey(new SlotRef(path, pageId, slotId));
+    }
 
-        // Persist page
-        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw")) {
-            raf.seek((long) targetPageId * PAGE_SIZE);
-            raf.write(heapPage.rawData());
+    // Make a row change durable (sharing the log force with concurrent commits)
+    private void commit(long txnId) {
+        if (wal == null) return;
+        try {
+            wal.commit(txnId);
         } catch (IOException e) {
-            throw new RuntimeException("Failed writing heap page " + targetPageId, e);
+            throw new RuntimeException("Failed committing to the write-ahead log", e);
         }
-        bufferManager.invalidate(file.getPath(), targetPageId);
-
-    RID rid = new RID(targetPageId, slotId);
-        if (indexManager != null) {
-            indexManager.onTableInsert(tableName, rid, record);
+        activeTxns.remove(txnId); // finished; the automatic checkpoint below need not keep it
+        releaseSlots(txnId);
+        if (wal.size() >= WAL_CHECKPOINT_BYTES && checkpointing.compareAndSet(false, true)) {
+            try {
+                checkpoint();
+            } finally {
+                checkpointing.set(false);
+            }
         }
-        return rid;
     }
 }
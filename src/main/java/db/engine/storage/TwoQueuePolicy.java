@@ -0,0 +1,97 @@
+package db.engine.storage;
+
+import java.util.function.IntPredicate;
+
+/**
+ * 2Q replacement (Johnson &amp; Shasha): pages seen once enter a small FIFO (A1in) and are
+ * evicted from there first, remembering their keys in a ghost queue (A1out). Only a page
+ * that is referenced again after leaving A1in is admitted to the main LRU (Am). A large
+ * sequential scan therefore cycles through A1in and cannot flush the hot set in Am.
+ */
+final class TwoQueuePolicy implements ReplacementPolicy {
+    private final FrameList a1in;   // first-time pages, FIFO
+    private final FrameList am;     // re-referenced pages, LRU
+    private final long[] frameKeys; // page key held by each frame
+    private final int kin;          // target A1in size
+
+    // A1out: FIFO ring of recently evicted A1in keys, indexed by a PageTable (key -> ring slot)
+    private final long[] ghostRing;
+    private final PageTable ghostIndex;
+    private int ghostNext;
+    private int ghostCount;
+
+    TwoQueuePolicy(int capacity) {
+        this.a1in = new FrameList(capacity);
+        this.am = new FrameList(capacity);
+        this.frameKeys = new long[capacity];
+        this.kin = Math.max(1, capacity / 4);
+        int kout = Math.max(1, capacity / 2);
+        this.ghostRing = new long[kout];
+        this.ghostIndex = new PageTable(kout);
+    }
+
+    @Override
+    public void onLoad(int frame, long pageKey) {
+        frameKeys[frame] = pageKey;
+        int ghostSlot = ghostIndex.remove(pageKey);
+        if (ghostSlot >= 0) {
+            am.addTail(frame); // re-referenced after leaving A1in: hot page
+        } else {
+            a1in.addTail(frame);
+        }
+    }
+
+    @Override
+    public void onHit(int frame) {
+        // Hits while in A1in are treated as correlated references and do not promote
+        if (am.contains(frame)) am.moveToTail(frame);
+    }
+
+    @Override
+    public void onRemove(int frame) {
+        a1in.remove(frame);
+        am.remove(frame);
+    }
+
+    @Override
+    public int evict(IntPredicate evictable) {
+        if (a1in.size() > kin || am.size() == 0) {
+            int f = evictFromA1in(evictable);
+            if (f >= 0) return f;
+            return evictFrom(am, evictable);
+        }
+        int f = evictFrom(am, evictable);
+        return f >= 0 ? f : evictFromA1in(evictable);
+    }
+
+    private int evictFromA1in(IntPredicate evictable) {
+        int f = evictFrom(a1in, evictable);
+        if (f >= 0) remember(frameKeys[f]);
+        return f;
+    }
+
+    private int evictFrom(FrameList list, IntPredicate evictable) {
+        for (int f = list.head(); f != FrameList.NONE; f = list.next(f)) {
+            if (evictable.test(f)) {
+                list.remove(f);
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    // Add key to the ghost queue, forgetting the oldest ghost when full
+    private void remember(long key) {
+        if (ghostCount == ghostRing.length) {
+            long old = ghostRing[ghostNext];
+            if (ghostIndex.get(old) == ghostNext) ghostIndex.remove(old);
+        } else {
+            ghostCount++;
+        }
+        ghostRing[ghostNext] = key;
+        ghostIndex.put(key, ghostNext);
+        ghostNext = (ghostNext + 1) % ghostRing.length;
+    }
+
+    @Override public String name() { return "2q"; }
+}
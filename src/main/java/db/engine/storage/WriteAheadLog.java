@@ -0,0 +1,344 @@
+package db.engine.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only redo/undo log of heap page changes.
+ *
+ * Records are physiological: (page, slot) plus the record bytes, so one row change costs a
+ * few dozen log bytes instead of a 16KB page write. A record is appended to an in-memory
+ * buffer; commit() makes it durable. Group commit: the first committer to find no force in
+ * progress becomes the leader, optionally waits groupCommitDelayMicros for more commits to
+ * arrive, then writes everything appended so far and forces it with one fsync. Committers
+ * that arrive meanwhile wait for the leader, or lead the next batch, so concurrent commits
+ * share fsyncs.
+ *
+ * File layout: [long MAGIC][long baseLsn] followed by records
+ *   [int bodyLength][int crc32(body)][body]
+ *   body = [byte type][long txnId][int fileRef][int pageId][short slotId][payload]
+ * An LSN is baseLsn plus the byte offset past the header, so LSNs keep growing across
+ * truncate(). A file path is logged once per log as a FILE record and referenced by a small
+ * id afterwards. Reading stops at the first torn or corrupt record.
+ *
+ * truncate(cutLsn) drops the records before a checkpoint's redo start by copying the
+ * (short) tail to a new file that atomically replaces the log.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    private static final long MAGIC = 0x52444257414C3031L; // "RDBWAL01"
+    private static final int FILE_HEADER = 16;
+    private static final int RECORD_HEADER = 8;                // bodyLength + crc
+    private static final int BODY_HEADER = 1 + 8 + 4 + 4 + 2;  // type, txnId, fileRef, pageId, slotId
+    private static final byte FILE_RECORD = 0;                 // fileRef -> path mapping
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    private final String path;
+    private FileChannel channel; // replaced by truncate(); guarded by the monitor
+    private final long groupCommitDelayNanos;
+    private final Map<String, Integer> fileRefs = new HashMap<>(); // paths already named in this log
+    private final CRC32 crc = new CRC32();
+
+    // All fields below are guarded by this object's monitor
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER); // appended, not yet written
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);   // swapped in while the leader writes
+    private long baseLsn;      // LSN of the first byte after the file header
+    private long appendedLsn;  // end of the last appended record
+    private long durableLsn;   // everything up to here is forced to disk
+    private boolean forcing;   // a leader is writing and forcing a batch
+    private long commits;
+    private long syncs;
+
+    /** Open (or create) the log at path and position after its last intact record. */
+    public WriteAheadLog(String path, long groupCommitDelayMicros) throws IOException {
+        this.path = path;
+        this.groupCommitDelayNanos = Math.max(0, groupCommitDelayMicros) * 1000;
+        File f = new File(path);
+        if (f.getParentFile() != null) f.getParentFile().mkdirs();
+        this.channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < FILE_HEADER) {
+            writeHeader(channel, 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            channel.read(header, 0);
+            if (header.getLong(0) != MAGIC) throw new IOException("Not a write-ahead log: " + path);
+            baseLsn = header.getLong(8);
+        }
+        // Rebuild the file dictionary and drop a torn tail left by a crash
+        long end = scan(channel, rec -> {}, fileRefs);
+        channel.truncate(end);
+        appendedLsn = durableLsn = baseLsn + end - FILE_HEADER;
+    }
+
+    public String path() { return path; }
+
+    public synchronized long appendedLsn() { return appendedLsn; }
+    public synchronized long durableLsn() { return durableLsn; }
+    public synchronized long baseLsn() { return baseLsn; }
+    /** Bytes of log records since the last truncate(). */
+    public synchronized long size() { return appendedLsn - baseLsn; }
+    public synchronized long commits() { return commits; }
+    public synchronized long syncs() { return syncs; }
+
+    /** Log an insert of recordBytes into (pageId, slotId); returns the record's LSN. */
+    public long logInsert(long txnId, String filePath, int pageId, int slotId, byte[] recordBytes) {
+        return append(LogRecord.Type.INSERT.code, txnId, filePath, pageId, slotId, recordBytes);
+    }
+
+    /** Log the delete of (pageId, slotId), whose record bytes were oldBytes; returns the LSN. */
+    public long logDelete(long txnId, String filePath, int pageId, int slotId, byte[] oldBytes) {
+        return append(LogRecord.Type.DELETE.code, txnId, filePath, pageId, slotId, oldBytes);
+    }
+
+    /** Log the commit of txnId and wait until it (and everything before it) is durable. */
+    public void commit(long txnId) throws IOException {
+        long lsn = append(LogRecord.Type.COMMIT.code, txnId, null, -1, -1, null);
+        synchronized (this) { commits++; }
+        force(lsn);
+    }
+
+    /** Make every appended record durable (e.g. before a dirty page is written back). */
+    public void flush() throws IOException {
+        force(appendedLsn());
+    }
+
+    /**
+     * Wait until the log is durable up to lsn, leading a group force if nobody else is.
+     */
+    public void force(long lsn) throws IOException {
+        synchronized (this) {
+            while (durableLsn < lsn && forcing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for log force");
+                }
+            }
+            if (durableLsn >= lsn) return;
+            forcing = true;
+        }
+        // Leader: collect a batch, then write and force it without holding the monitor
+        if (groupCommitDelayNanos > 0) LockSupport.parkNanos(groupCommitDelayNanos);
+        ByteBuffer batch;
+        FileChannel ch;
+        long pos;
+        long target;
+        synchronized (this) {
+            ch = channel;
+            batch = pending;
+            pending = spare;
+            pos = FILE_HEADER + (durableLsn - baseLsn);
+            target = appendedLsn;
+        }
+        batch.flip();
+        boolean done = false;
+        try {
+            while (batch.hasRemaining()) pos += ch.write(batch, pos);
+            ch.force(false);
+            done = true;
+        } finally {
+            synchronized (this) {
+                if (done) {
+                    durableLsn = target;
+                    syncs++;
+                    spare = batch.clear();
+                } else {
+                    // Put the batch back in front of what was appended meanwhile; the next force retries it
+                    ByteBuffer merged = ByteBuffer.allocate(batch.limit() + pending.position() + INITIAL_BUFFER);
+                    merged.put(batch.array(), 0, batch.limit());
+                    merged.put(pending.array(), 0, pending.position());
+                    pending = merged;
+                    spare = ByteBuffer.allocate(INITIAL_BUFFER);
+                }
+                forcing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Drop every record before cutLsn, which must be a record boundary (an LSN this log handed
+     * out, or appendedLsn() read at some point). Called by a checkpoint once the page changes
+     * before cutLsn are on disk and no unfinished transaction has records before it. Later
+     * records keep their LSNs; pending ones are made durable on the way.
+     */
+    public synchronized void truncate(long cutLsn) throws IOException {
+        while (forcing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for log force");
+            }
+        }
+        long cut = Math.min(cutLsn, appendedLsn);
+        // The kept records may name files defined before the cut, so the new log restates them
+        ByteBuffer dict = ByteBuffer.allocate(dictionarySize());
+        fileRefs.forEach((p, ref) -> encode(dict, FILE_RECORD, 0, ref, -1, -1, p.getBytes(StandardCharsets.UTF_8)));
+        long newBase = cut - dict.capacity();
+        if (newBase <= baseLsn) return; // nothing worth dropping yet
+        Path live = Path.of(path);
+        Path tmp = Path.of(path + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out, newBase);
+            long pos = FILE_HEADER;
+            dict.flip();
+            while (dict.hasRemaining()) pos += out.write(dict, pos);
+            long from = FILE_HEADER + (cut - baseLsn);
+            long count = durableLsn - cut;
+            while (count > 0) { // records already in the old file
+                long n = channel.transferTo(from, count, out.position(pos));
+                from += n;
+                pos += n;
+                count -= n;
+            }
+            ByteBuffer tail = ByteBuffer.wrap(pending.array(), 0, pending.position());
+            if (cut > durableLsn) tail.position((int) (cut - durableLsn));
+            while (tail.hasRemaining()) pos += out.write(tail, pos);
+            out.force(false);
+        }
+        Files.move(tmp, live, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel.close();
+        channel = FileChannel.open(live, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        baseLsn = newBase;
+        durableLsn = appendedLsn;
+        pending.clear();
+    }
+
+    /** Read every intact record of the log at path, in LSN order. */
+    public static void read(String path, Consumer<LogRecord> sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ)) {
+            scan(ch, sink, new HashMap<>());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        synchronized (this) { channel.close(); }
+    }
+
+    // Encode one record into the pending buffer (plus a FILE record the first time a path is used)
+    private synchronized long append(byte type, long txnId, String filePath, int pageId, int slotId, byte[] payload) {
+        int ref = -1;
+        if (filePath != null) {
+            Integer known = fileRefs.get(filePath);
+            if (known == null) {
+                known = fileRefs.size();
+                fileRefs.put(filePath, known);
+                appendPending(FILE_RECORD, 0, known, -1, -1, filePath.getBytes(StandardCharsets.UTF_8));
+            }
+            ref = known;
+        }
+        appendPending(type, txnId, ref, pageId, slotId, payload);
+        return appendedLsn;
+    }
+
+    private void appendPending(byte type, long txnId, int ref, int pageId, int slotId, byte[] payload) {
+        ensureRoom(recordSize(payload == null ? 0 : payload.length));
+        appendedLsn += encode(pending, type, txnId, ref, pageId, slotId, payload);
+    }
+
+    // Encode one record at buf's position (which must have room); returns its size
+    private int encode(ByteBuffer buf, byte type, long txnId, int ref, int pageId, int slotId, byte[] payload) {
+        int payloadLen = payload == null ? 0 : payload.length;
+        int bodyLen = BODY_HEADER + payloadLen;
+        int start = buf.position();
+        buf.position(start + RECORD_HEADER);
+        buf.put(type).putLong(txnId).putInt(ref).putInt(pageId).putShort((short) slotId);
+        if (payloadLen > 0) buf.put(payload);
+        crc.reset();
+        crc.update(buf.array(), start + RECORD_HEADER, bodyLen);
+        buf.putInt(start, bodyLen).putInt(start + 4, (int) crc.getValue());
+        return RECORD_HEADER + bodyLen;
+    }
+
+    private static int recordSize(int payloadLen) {
+        return RECORD_HEADER + BODY_HEADER + payloadLen;
+    }
+
+    private int dictionarySize() {
+        int size = 0;
+        for (String p : fileRefs.keySet()) size += recordSize(p.getBytes(StandardCharsets.UTF_8).length);
+        return size;
+    }
+
+    private void ensureRoom(int bytes) {
+        if (pending.remaining() >= bytes) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+        pending.flip();
+        bigger.put(pending);
+        pending = bigger;
+    }
+
+    private void writeHeader(FileChannel ch, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putLong(MAGIC).putLong(base);
+        header.flip();
+        ch.write(header, 0);
+        ch.force(false);
+    }
+
+    // Decode records from the channel, resolving file refs; returns the file offset past the last intact record
+    private static long scan(FileChannel ch, Consumer<LogRecord> sink, Map<String, Integer> refsOut) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        if (ch.read(header, 0) < FILE_HEADER) return FILE_HEADER;
+        long base = header.getLong(8);
+        Map<Integer, String> paths = new HashMap<>();
+        CRC32 check = new CRC32();
+        long size = ch.size();
+        long pos = FILE_HEADER;
+        ByteBuffer lenCrc = ByteBuffer.allocate(RECORD_HEADER);
+        while (pos + RECORD_HEADER <= size) {
+            lenCrc.clear();
+            readFully(ch, lenCrc, pos);
+            int bodyLen = lenCrc.getInt(0);
+            if (bodyLen < BODY_HEADER || pos + RECORD_HEADER + bodyLen > size) break;
+            ByteBuffer body = ByteBuffer.allocate(bodyLen);
+            readFully(ch, body, pos + RECORD_HEADER);
+            check.reset();
+            check.update(body.array(), 0, bodyLen);
+            if ((int) check.getValue() != lenCrc.getInt(4)) break;
+            pos += RECORD_HEADER + bodyLen;
+            body.flip();
+            byte type = body.get();
+            long txnId = body.getLong();
+            int ref = body.getInt();
+            int pageId = body.getInt();
+            int slotId = body.getShort();
+            byte[] payload = new byte[body.remaining()];
+            body.get(payload);
+            if (type == FILE_RECORD) {
+                String p = new String(payload, StandardCharsets.UTF_8);
+                paths.put(ref, p);
+                refsOut.put(p, ref);
+                continue;
+            }
+            LogRecord.Type t = LogRecord.Type.of(type);
+            if (t == null) break;
+            sink.accept(new LogRecord(base + pos - FILE_HEADER, t, txnId, paths.get(ref), pageId, slotId, payload));
+        }
+        return pos;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + buf.position());
+            if (n < 0) throw new IOException("Unexpected end of log");
+        }
+    }
+}
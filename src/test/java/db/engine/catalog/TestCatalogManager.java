@@ -36,6 +36,9 @@ public class TestCatalogManager extends CatalogManager {
     @Override
     public IndexSchema getIndexSchema(String name) { return indexes.get(name); }
 
+    @Override
+    public boolean unregisterIndex(String name) { return indexes.remove(name) != null; }
+
     @Override
     public Map<String, IndexSchema> allIndexSchemas() { return Collections.unmodifiableMap(indexes); }
 }
@@ -54,4 +54,35 @@ public class FilterOperatorTest {
         // Total distinct matching rows = 2.
         assertEquals(2, count);
     }
+
+    @Test
+    void lazyScanRowsAreMaterializedOnlyWhenTheyPass() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("lazy_students", List.of(
+            new ColumnSchema("id", DataType.INT, 0),
+            new ColumnSchema("name", DataType.VARCHAR, 50)
+        ), "target/lazy_students.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        for (int i = 0; i < 3000; i++) storage.insert("lazy_students", new Record(List.of(i, "N" + i))); // several pages
+
+        SeqScanOperator scan = new SeqScanOperator(storage, "lazy_students", true);
+        scan.open();
+        Row first = scan.next();
+        assertEquals(0, first.intValue(0));
+        assertEquals("N0", first.value(1));
+        scan.close();
+
+        Predicate pred = new ComparisonPredicate(0, ComparisonPredicate.Op.GTE, 2990);
+        Operator root = new FilterOperator(new SeqScanOperator(storage, "lazy_students", true), pred);
+        List<Row> kept = new java.util.ArrayList<>();
+        root.open();
+        for (Row r; (r = root.next()) != null; ) kept.add(r);
+        root.close();
+        // Kept rows own their values after the scan has moved on and unpinned their pages
+        assertEquals(10, kept.size());
+        assertEquals(List.of(2990, "N2990"), kept.get(0).values());
+        assertEquals(List.of(2999, "N2999"), kept.get(9).values());
+    }
 }
@@ -38,4 +38,74 @@ public class SeqScanOperatorTest {
         scan.close();
         assertEquals(10, count);
     }
+
+    @Test
+    void projectedScanReturnsOnlyRequestedColumns() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("proj_students", List.of(
+            new ColumnSchema("id", DataType.INT, 0),
+            new ColumnSchema("name", DataType.VARCHAR, 50),
+            new ColumnSchema("active", DataType.BOOLEAN, 0)
+        ), "target/proj_students.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        for (int i=1;i<=5;i++) {
+            storage.insert("proj_students", new Record(List.of(i, "S"+i, i % 2 == 0)));
+        }
+        SeqScanOperator scan = new SeqScanOperator(storage, "proj_students", false, new int[] {2, 0});
+        scan.open();
+        assertEquals(List.of("active", "id"), scan.schema().stream().map(ColumnSchema::name).toList());
+        Row first = scan.next();
+        assertEquals(List.of(false, 1), first.values());
+        assertEquals(first.schema(), scan.schema());
+        scan.close();
+
+        SeqScanOperator lazy = new SeqScanOperator(storage, "proj_students", true, new int[] {1});
+        lazy.open();
+        lazy.next();
+        Row second = lazy.next();
+        assertEquals("S2", second.value(0)); // row column 0 is table column 1
+        assertEquals(List.of("S2"), second.materialize().values());
+        lazy.close();
+    }
+
+    @Test
+    void pushedDownPredicateFiltersOnPageBytes() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("pred_students", List.of(
+            new ColumnSchema("id", DataType.INT, 0),
+            new ColumnSchema("name", DataType.VARCHAR, 50),
+            new ColumnSchema("active", DataType.BOOLEAN, 0)
+        ), "target/pred_students.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        java.util.List<db.engine.storage.RID> rids = new java.util.ArrayList<>();
+        for (int i=1;i<=2000;i++) {
+            rids.add(storage.insert("pred_students", new Record(List.of(i, i % 100 == 0 ? "J\u00fcrgen" : "S"+i, i % 2 == 0))));
+        }
+        storage.delete("pred_students", rids.get(99)); // id 100: a tombstoned slot is skipped
+
+        // name = 'J\u00fcrgen' AND id > 500, returning (id) only
+        Predicate pred = CompoundPredicate.and(
+            EqualityPredicate.forColumnName(List.of(ts.columns().get(0), ts.columns().get(1)), "name", "J\u00fcrgen"),
+            new ComparisonPredicate(0, ComparisonPredicate.Op.GT, 500));
+        SeqScanOperator scan = new SeqScanOperator(storage, "pred_students", new int[] {0, 1}, pred);
+        scan.open();
+        List<Integer> ids = new java.util.ArrayList<>();
+        for (Row r; (r = scan.next()) != null; ) {
+            assertFalse(r.isLazy());
+            ids.add((Integer) r.values().get(0));
+        }
+        scan.close();
+        assertEquals(List.of(600, 700, 800, 900, 1000, 1100, 1200, 1300, 1400, 1500, 1600, 1700, 1800, 1900, 2000), ids);
+
+        // A longer or shorter literal never matches, even with a common prefix
+        scan = new SeqScanOperator(storage, "pred_students", null, EqualityPredicate.forColumnName(ts.columns(), "name", "S1"));
+        scan.open();
+        assertEquals(List.of(1, "S1", false), scan.next().values());
+        assertNull(scan.next());
+        scan.close();
+    }
 }
@@ -50,4 +50,52 @@ public class BPlusTreeTest {
         assertTrue(tree.search(7).isEmpty());
         assertFalse(tree.delete(7, r2)); // already gone
     }
+
+    @Test
+    void duplicateRunsSpanningLeavesAreFoundInInsertionOrder() {
+        BPlusTree tree = new BPlusTree(4); // 3 keys per node: 20 duplicates cover several leaves
+        tree.insert(5, new RID(9, 9));
+        for (int i = 0; i < 20; i++) tree.insert(7, new RID(i, i));
+        tree.insert(9, new RID(8, 8));
+        List<RID> sevens = tree.search(7);
+        assertEquals(20, sevens.size());
+        for (int i = 0; i < 20; i++) assertEquals(new RID(i, i), sevens.get(i));
+        assertEquals(22, tree.rangeSearch(Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+        assertEquals(20, tree.rangeSearch(6, 8).size());
+        assertTrue(tree.delete(7, new RID(19, 19))); // last of the run, in a later leaf
+        assertTrue(tree.delete(7, new RID(0, 0)));
+        assertFalse(tree.delete(7, new RID(5, 6)));
+        assertEquals(18, tree.search(7).size());
+        assertEquals(new RID(1, 1), tree.search(7).get(0));
+    }
+
+    @Test
+    void randomInsertsAndDeletesMatchAReferenceMap() {
+        java.util.Random rnd = new java.util.Random(7);
+        java.util.TreeMap<Integer, List<RID>> expected = new java.util.TreeMap<>();
+        BPlusTree tree = new BPlusTree(5);
+        for (int i = 0; i < 5000; i++) {
+            int key = rnd.nextInt(1000) - 500;
+            RID rid = new RID(i >> 4, i & 15);
+            tree.insert(key, rid);
+            expected.computeIfAbsent(key, k -> new java.util.ArrayList<>()).add(rid);
+        }
+        for (int i = 0; i < 2000; i++) {
+            int key = rnd.nextInt(1000) - 500;
+            List<RID> rids = expected.get(key);
+            if (rids == null) {
+                assertTrue(tree.search(key).isEmpty());
+                continue;
+            }
+            RID victim = rids.remove(rnd.nextInt(rids.size()));
+            assertTrue(tree.delete(key, victim));
+            if (rids.isEmpty()) expected.remove(key);
+        }
+        for (int key = -501; key <= 500; key++) {
+            assertEquals(expected.getOrDefault(key, List.of()), tree.search(key), "key " + key);
+        }
+        List<RID> all = new java.util.ArrayList<>();
+        expected.subMap(-100, true, 100, true).values().forEach(all::addAll);
+        assertEquals(all, tree.rangeSearch(-100, 100));
+    }
 }
@@ -0,0 +1,206 @@
+package db.engine.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.jupiter.api.Test;
+
+import db.engine.storage.BufferManager;
+import db.engine.storage.RID;
+
+public class DiskBPlusTreeTest {
+
+    @Test
+    void matchesAReferenceMapAndSurvivesReopen() throws Exception {
+        String path = "target/test-btree.idx";
+        BufferManager pool = new BufferManager(4096, 8); // far fewer frames than nodes: pages are evicted and reread
+        DiskBPlusTree tree = DiskBPlusTree.create(pool, path, 6);
+        Random rnd = new Random(11);
+        TreeMap<Integer, List<RID>> expected = new TreeMap<>();
+        for (int i = 0; i < 6000; i++) {
+            int key = rnd.nextInt(1500) - 700;
+            RID rid = new RID(i >> 5, i & 31);
+            tree.insert(key, rid);
+            expected.computeIfAbsent(key, k -> new ArrayList<>()).add(rid);
+        }
+        for (int i = 0; i < 2000; i++) {
+            int key = rnd.nextInt(1500) - 700;
+            List<RID> rids = expected.get(key);
+            if (rids == null) continue;
+            assertTrue(tree.delete(key, rids.remove(rnd.nextInt(rids.size()))));
+            if (rids.isEmpty()) expected.remove(key);
+        }
+        assertFalse(tree.delete(10_000, new RID(0, 0)));
+        assertTrue(tree.height() > 3);
+        tree.close();
+        pool.shutdown();
+        pool.getDiskManager().closeAll();
+
+        BufferManager reopenedPool = new BufferManager(4096, 8);
+        DiskBPlusTree reopened = DiskBPlusTree.open(reopenedPool, path);
+        assertNotNull(reopened);
+        assertEquals(6, reopened.getOrder());
+        for (int key = -701; key < 800; key++) {
+            assertEquals(expected.getOrDefault(key, List.of()), reopened.search(key), "key " + key);
+        }
+        List<RID> all = new ArrayList<>();
+        expected.subMap(-50, true, 300, true).values().forEach(all::addAll);
+        assertEquals(all, reopened.rangeSearch(-50, 300));
+        reopenedPool.shutdown();
+        reopenedPool.getDiskManager().closeAll();
+    }
+
+    @Test
+    void onlyACleanlyClosedFileIsTrusted() throws Exception {
+        String path = "target/test-btree-clean.idx";
+        BufferManager pool = new BufferManager(4096, 64);
+        DiskBPlusTree tree = DiskBPlusTree.create(pool, path, DiskBPlusTree.maxOrder(4096));
+        for (int i = 0; i < 1000; i++) tree.insert(i, new RID(i, 0));
+        pool.flushAll(); // pages on disk, but never closed
+        assertNull(DiskBPlusTree.open(new BufferManager(4096, 64), path));
+
+        tree.close();
+        BufferManager second = new BufferManager(4096, 64);
+        DiskBPlusTree reopened = DiskBPlusTree.open(second, path);
+        assertEquals(List.of(new RID(500, 0)), reopened.search(500));
+        reopened.insert(2000, new RID(7, 7)); // first change marks the file in use on disk
+        assertNull(DiskBPlusTree.open(new BufferManager(4096, 64), path));
+        reopened.close();
+        second.getDiskManager().closeAll();
+        pool.getDiskManager().closeAll();
+
+        try (RandomAccessFile raf = new RandomAccessFile(new File(path), "rw")) {
+            raf.seek(4096 + 100); // flip a byte of the root leaf's keys
+            raf.write(raf.read() ^ 0xFF);
+        }
+        BufferManager third = new BufferManager(4096, 64);
+        DiskBPlusTree damaged = DiskBPlusTree.open(third, path); // the metadata page is intact
+        assertThrows(RuntimeException.class, () -> {
+            for (int i = 0; i < 1000; i += 50) damaged.search(i);
+        });
+        assertTrue(third.checksumFailures() > 0);
+        third.getDiskManager().closeAll();
+    }
+
+    @Test
+    void bulkBuildFromSpilledRunsMatchesInserts() throws Exception {
+        String path = "target/test-btree-bulk.idx";
+        BufferManager pool = new BufferManager(4096, 16);
+        DiskBPlusTree tree = DiskBPlusTree.create(pool, path, 8);
+        Random rnd = new Random(5);
+        TreeMap<Integer, List<RID>> expected = new TreeMap<>();
+        try (IndexEntrySorter sorter = new IndexEntrySorter(1000, java.nio.file.Path.of("target"))) {
+            for (int i = 0; i < 7500; i++) {
+                int key = rnd.nextInt(2000) - 1000; // about 4 entries per key, often across runs
+                RID rid = new RID(i >> 4, i & 15);
+                sorter.add(key, BPlusTree.pack(rid));
+                expected.computeIfAbsent(key, k -> new ArrayList<>()).add(rid);
+            }
+            assertEquals(7, sorter.spilledRuns());
+            DiskBPlusTree.Builder builder = tree.bulkBuilder(0.75);
+            sorter.drainTo(builder);
+            builder.finish();
+            assertThrows(IllegalStateException.class, () -> tree.bulkBuilder(1.0));
+        }
+        // 7500 entries, 5 per leaf (0.75 of 7), up to 6 children per internal node
+        assertEquals(6, tree.height());
+        assertEquals(1500 + 250 + 42 + 7 + 2 + 1, tree.nodeCount());
+        for (int key = -1001; key < 1001; key++) {
+            assertEquals(expected.getOrDefault(key, List.of()), tree.search(key), "key " + key);
+        }
+        for (int i = 0; i < 3000; i++) { // room left in the nodes takes later inserts
+            int key = rnd.nextInt(2000) - 1000;
+            RID rid = new RID(1000 + i, 0);
+            tree.insert(key, rid);
+            expected.computeIfAbsent(key, k -> new ArrayList<>()).add(rid);
+        }
+        List<RID> all = new ArrayList<>();
+        expected.values().forEach(all::addAll);
+        assertEquals(all, tree.rangeSearch(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        tree.close();
+        pool.getDiskManager().closeAll();
+
+        DiskBPlusTree single = DiskBPlusTree.create(new BufferManager(4096, 16), "target/test-btree-bulk1.idx", 8);
+        DiskBPlusTree.Builder builder = single.bulkBuilder(1.0);
+        builder.add(3, 1L);
+        assertThrows(IllegalArgumentException.class, () -> builder.add(2, 2L));
+        builder.finish();
+        assertEquals(1, single.height());
+        assertEquals(List.of(new RID(0, 1)), single.search(3));
+    }
+
+
+    @Test
+    void concurrentWritersAndReadersSeeAConsistentTree() throws Exception {
+        String path = "target/test-btree-concurrent.idx";
+        BufferManager pool = new BufferManager(4096, 64); // pages are evicted and reread under the threads
+        DiskBPlusTree tree = DiskBPlusTree.create(pool, path, 5); // small nodes: splits all the time
+        int writers = 4;
+        int perWriter = 5000;
+        AtomicIntegerArray done = new AtomicIntegerArray(writers); // entries each writer has finished
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService threads = Executors.newFixedThreadPool(writers + 2);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                tasks.add(() -> {
+                    // Writers own disjoint keys; the page id of a RID is its key, so readers can check order
+                    for (int i = 0; i < perWriter; i++) {
+                        int key = (i * 7919 % perWriter) * writers + writer;
+                        tree.insert(key, new RID(key, 0));
+                        tree.insert(key, new RID(key, 1));
+                        assertTrue(tree.delete(key, new RID(key, 1)));
+                        done.set(writer, i + 1);
+                    }
+                    return null;
+                });
+            }
+            for (int r = 0; r < 2; r++) {
+                long seed = r;
+                tasks.add(() -> {
+                    Random rnd = new Random(seed);
+                    while (writing.get()) {
+                        int writer = rnd.nextInt(writers);
+                        int finished = done.get(writer);
+                        if (finished > 0) {
+                            int key = (rnd.nextInt(finished) * 7919 % perWriter) * writers + writer;
+                            assertEquals(List.of(new RID(key, 0)), tree.search(key), "key " + key);
+                        }
+                        int low = rnd.nextInt(writers * perWriter);
+                        int previous = low;
+                        for (RID rid : tree.rangeSearch(low, low + 200)) {
+                            assertTrue(rid.pageId() >= previous && rid.pageId() <= low + 200, "range from " + low);
+                            previous = rid.pageId();
+                        }
+                    }
+                    return null;
+                });
+            }
+            List<Future<Void>> results = new ArrayList<>();
+            for (Callable<Void> task : tasks) results.add(threads.submit(task));
+            for (int w = 0; w < writers; w++) results.get(w).get();
+            writing.set(false);
+            for (Future<Void> result : results) result.get(); // rethrows a failed assertion
+        } finally {
+            threads.shutdownNow();
+        }
+        List<RID> all = tree.rangeSearch(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(writers * perWriter, all.size());
+        for (int key = 0; key < all.size(); key++) assertEquals(new RID(key, 0), all.get(key));
+        assertTrue(tree.height() > 5);
+        tree.close();
+        pool.getDiskManager().closeAll();
+    }
+}
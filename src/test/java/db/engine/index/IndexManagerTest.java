@@ -3,13 +3,18 @@ package db.engine.index;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 
 import db.engine.catalog.ColumnSchema;
 import db.engine.catalog.DataType;
 import db.engine.catalog.TableSchema;
 import db.engine.catalog.TestCatalogManager;
+import db.engine.storage.RID;
 import db.engine.storage.Record;
 import db.engine.storage.StorageManager;
 
@@ -29,7 +34,7 @@ public class IndexManagerTest {
         storage.insert("i_students", new Record(List.of(1, "Alice", true)));
         storage.insert("i_students", new Record(List.of(2, "Bob", false)));
         storage.insert("i_students", new Record(List.of(2, "Bobby", true)));
-        IndexManager im = new IndexManager(catalog, storage);
+        IndexManager im = new IndexManager(catalog, storage, "target/indexes");
         im.createIndex("i_students_id_idx", "i_students", "id");
         var recs2 = im.lookup("i_students_id_idx", 2);
         assertEquals(2, recs2.size());
@@ -38,4 +43,110 @@ public class IndexManagerTest {
         var range = im.rangeLookup("i_students_id_idx", 1, 2);
         assertEquals(3, range.size());
     }
+
+    @Test
+    void indexesAreReopenedFromTheirFilesAndRebuiltWhenDamaged() throws Exception {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("p_students", List.of(
+            new ColumnSchema("id", DataType.INT, 0),
+            new ColumnSchema("name", DataType.VARCHAR, 50)
+        ), "target/p_students.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        for (int i = 0; i < 3000; i++) storage.insert("p_students", new Record(List.of(i % 1000, "S" + i)));
+        IndexManager im = new IndexManager(catalog, storage, "target/indexes");
+        im.createIndex("p_students_id_idx", "p_students", "id");
+        storage.close(); // also closes the index file cleanly
+
+        StorageManager reopened = new StorageManager(catalog);
+        long readsBefore = reopened.getDiskManager().pageReads();
+        IndexManager im2 = new IndexManager(catalog, reopened, "target/indexes");
+        assertEquals(1, reopened.getDiskManager().pageReads() - readsBefore); // the metadata page, no table scan
+        im2.createIndex("p_students_id_idx", "p_students", "id"); // already there: nothing to do
+        assertEquals(3, im2.searchRids("p_students_id_idx", 42).size());
+        reopened.insert("p_students", new Record(List.of(42, "Late")));
+        assertEquals("Late", im2.lookup("p_students_id_idx", 42).get(3).getValues().get(1));
+        assertThrows(IllegalArgumentException.class, () -> im2.createIndex("p_students_id_idx", "p_students", "name"));
+        reopened.close();
+
+        String idx = catalog.getIndexSchema("p_students_id_idx").filePath();
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(idx, "rw")) {
+            raf.seek(40); // inside the metadata page: fails its checksum
+            raf.write(raf.read() ^ 0xFF);
+        }
+        StorageManager third = new StorageManager(catalog);
+        IndexManager im3 = new IndexManager(catalog, third, "target/indexes");
+        assertEquals(4, im3.searchRids("p_students_id_idx", 42).size());
+        assertEquals(3001, im3.rangeSearchRids("p_students_id_idx", Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+        im3.dropIndex("p_students_id_idx");
+        assertNull(catalog.getIndexSchema("p_students_id_idx"));
+        assertFalse(new File(idx).exists());
+        third.close();
+    }
+
+    @Test
+    void indexesBuiltTogetherFromOneParallelScanMatchTheHeap() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("m_rows", List.of(
+            new ColumnSchema("a", DataType.INT, 0),
+            new ColumnSchema("b", DataType.INT, 0),
+            new ColumnSchema("c", DataType.INT, 0)
+        ), "target/m_rows.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        int rows = 300_000; // more than one scan range of heap pages
+        storage.bulkLoad("m_rows", IntStream.range(0, rows)
+            .mapToObj(i -> new Record(List.of(i, i % 997, -(i % 13)))).iterator());
+        assertTrue(storage.pageCount("m_rows") > IndexManager.SCAN_CHUNK_PAGES);
+
+        IndexManager im = new IndexManager(catalog, storage, "target/indexes");
+        im.createIndexes("m_rows", List.of(
+            new IndexManager.IndexDefinition("m_rows_a_idx", "a", 0, 0),
+            new IndexManager.IndexDefinition("m_rows_b_idx", "b", 0, 50),
+            new IndexManager.IndexDefinition("m_rows_b2_idx", "b", 0, 100)));
+        assertEquals(50, catalog.getIndexSchema("m_rows_b_idx").fillFactor());
+        assertThrows(IllegalArgumentException.class, () -> im.createIndexes("m_rows", List.of(
+            new IndexManager.IndexDefinition("m_rows_c_idx", "c", 0, 0),
+            new IndexManager.IndexDefinition("m_rows_c_idx", "c", 0, 0))));
+        assertNull(catalog.getIndexSchema("m_rows_c_idx")); // nothing built when a definition is rejected
+
+        Map<Integer, List<RID>> byB = new HashMap<>();
+        List<RID> all = new ArrayList<>();
+        storage.scan("m_rows", (rid, rec) -> {
+            byB.computeIfAbsent((Integer) rec.getValues().get(1), k -> new ArrayList<>()).add(rid);
+            all.add(rid);
+        });
+        assertEquals(all, im.rangeSearchRids("m_rows_a_idx", 0, rows));
+        for (int key : new int[] {0, 1, 500, 996}) {
+            assertEquals(byB.get(key), im.searchRids("m_rows_b_idx", key)); // duplicates in heap order
+            assertEquals(byB.get(key), im.searchRids("m_rows_b2_idx", key));
+        }
+
+        for (int i = 0; i < 50; i++) storage.delete("m_rows", all.get(i * 1000));
+        storage.insert("m_rows", new Record(List.of(rows, 1, 0)));
+        assertEquals(3, im.rebuildIndexes("m_rows"));
+        List<RID> rebuilt = im.searchRids("m_rows_b_idx", 1);
+        assertEquals(byB.get(1).size() + 1, rebuilt.size()); // no deleted row had b == 1
+        assertEquals(50, catalog.getIndexSchema("m_rows_b_idx").fillFactor());
+        assertEquals(rows - 50 + 1, im.rangeSearchRids("m_rows_a_idx", Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+        for (String name : List.of("m_rows_a_idx", "m_rows_b_idx", "m_rows_b2_idx")) im.dropIndex(name);
+
+        // A non-default fanout, on a small table: every node takes a page whatever its fanout
+        TableSchema small = new TableSchema("m_small", ts.columns(), "target/m_small.tbl");
+        new File(small.filePath()).delete();
+        storage.createTable(small);
+        storage.bulkLoad("m_small", IntStream.range(0, 3000)
+            .mapToObj(i -> new Record(List.of(i, i % 7, 0))).iterator());
+        im.createIndexes("m_small", List.of(
+            new IndexManager.IndexDefinition("m_small_a_idx", "a", 16, 0),
+            new IndexManager.IndexDefinition("m_small_b_idx", "b", 16, 0)));
+        assertEquals(16, catalog.getIndexSchema("m_small_a_idx").fanout());
+        assertEquals(16, catalog.getIndexSchema("m_small_b_idx").fanout());
+        assertEquals(3000, im.rangeSearchRids("m_small_a_idx", 0, 3000).size());
+        assertEquals(429, im.searchRids("m_small_b_idx", 0).size()); // 0, 7, ..., 2996
+        for (String name : List.of("m_small_a_idx", "m_small_b_idx")) im.dropIndex(name);
+        storage.close();
+    }
 }
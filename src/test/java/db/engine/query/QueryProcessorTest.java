@@ -21,7 +21,7 @@ public class QueryProcessorTest {
 
     private CatalogManager catalog = new TestCatalogManager();
     private StorageManager storage = new StorageManager(catalog);
-    private IndexManager index = new IndexManager(catalog, storage);
+    private IndexManager index = new IndexManager(catalog, storage, "target/indexes");
 
     private void initSchemas() {
         // Clean previous test table files for isolation
@@ -93,9 +93,139 @@ public class QueryProcessorTest {
         assertTrue(rows.stream().allMatch(r -> r.values().size() == 2));
     }
 
+    @Test
+    void projectionIsPushedIntoTheScan() {
+        initSchemas();
+        seed();
+        QueryProcessor qp = new QueryProcessor(catalog, storage, index);
+        QueryPlanner planner = new QueryPlanner(catalog, storage, new PredicateCompiler(), index);
+        // Filter column not selected: the scan decodes (name, active) and a projection drops active
+        db.engine.exec.Operator plan = planner.plan(new QueryParser().parseSelect("SELECT name FROM students WHERE active = true"));
+        assertTrue(plan instanceof db.engine.exec.ProjectionOperator);
+        List<Row> rows = collect(qp.execute("SELECT name FROM students WHERE active = true"));
+        assertEquals(List.of(List.of("Alice"), List.of("Bobby"), List.of("Eve")), rows.stream().map(Row::values).toList());
+        // Filter column among those selected: the filtering scan output is final
+        plan = planner.plan(new QueryParser().parseSelect("SELECT active, id FROM students WHERE id > 2"));
+        assertTrue(plan instanceof db.engine.exec.SeqScanOperator);
+        assertEquals(List.of(List.of(true, 3), List.of(false, 4)), collect(qp.execute("SELECT active, id FROM students WHERE id > 2")).stream().map(Row::values).toList());
+        // Index lookups read only the selected columns too
+        assertEquals(List.of(List.of("Bob"), List.of("Bobby")), collect(qp.execute("SELECT name FROM students WHERE id = 2")).stream().map(Row::values).toList());
+    }
+
+    @Test
+    void vacuumReclaimsDeletedRowsAndKeepsIndexLookupsWorking() {
+        initSchemas();
+        seed();
+        QueryProcessor qp = new QueryProcessor(catalog, storage, index);
+        qp.execute("DELETE FROM students WHERE active = false");
+        Row diag = collect(qp.execute("VACUUM students;")).get(0);
+        assertEquals("VACUUM", diag.values().get(0));
+        assertEquals(1, diag.values().get(1)); // the single students page was compacted
+        assertTrue((Long) diag.values().get(2) > 0);
+        // RIDs survive compaction: the index still finds the moved rows
+        List<Row> rows = collect(qp.execute("SELECT * FROM students WHERE id = 3"));
+        assertEquals(1, rows.size());
+        assertEquals("Eve", rows.get(0).values().get(1));
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("VACUUM nosuch"));
+    }
+
+    @Test
+    void multiRowInsertAddsEveryTuple() {
+        initSchemas();
+        seed();
+        QueryProcessor qp = new QueryProcessor(catalog, storage, index);
+        Row diag = collect(qp.execute("INSERT INTO students (name, id, active) VALUES ('Ann (2nd)', 5, true), ('Ben, Jr', 6, false),('Cy', 5, true);")).get(0);
+        assertEquals(List.of("INSERT", 3), diag.values());
+        List<Row> rows = collect(qp.execute("SELECT * FROM students WHERE id = 5"));
+        assertEquals(2, rows.size());
+        assertEquals("Ann (2nd)", rows.get(0).values().get(1));
+        assertEquals("Ben, Jr", collect(qp.execute("SELECT name FROM students WHERE id = 6")).get(0).values().get(0));
+        // A single tuple still reports where the row went
+        assertEquals(List.of("INSERT", 0, 8), collect(qp.execute("INSERT INTO students (id, name, active) VALUES (9, 'Di', true)")).get(0).values());
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("INSERT INTO students (id, name, active) VALUES (7, 'E', true) (8, 'F', true)"));
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("INSERT INTO students (id, name, active) VALUES (7, 'E', true), (8, 'F')"));
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("INSERT INTO students (id, name, active) VALUES (7, 'E', true))"));
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("INSERT INTO students (id, name, active) VALUES ) (7, 'E', true)"));
+    }
+
+    @Test
+    void copyLoadsCsvRowsAndIndexesThem() throws Exception {
+        initSchemas();
+        seed();
+        java.nio.file.Path csv = java.nio.file.Path.of("target/qp-students.csv");
+        java.nio.file.Files.writeString(csv, String.join("\n",
+            "id,name,active",
+            "7,\"Lee, Ann\",true",
+            "8,\"Say \"\"hi\"\"\",false",
+            "",
+            "2,Bo,TRUE") + "\n");
+        QueryProcessor qp = new QueryProcessor(catalog, storage, index);
+        Row diag = collect(qp.execute("COPY students FROM 'target/qp-students.csv' HEADER;")).get(0);
+        assertEquals(List.of("COPY", 3), diag.values());
+        assertEquals(8, storage.scanTable("students").size());
+        List<Row> rows = collect(qp.execute("SELECT * FROM students WHERE id = 7"));
+        assertEquals(1, rows.size());
+        assertEquals("Lee, Ann", rows.get(0).values().get(1));
+        assertEquals("Say \"hi\"", collect(qp.execute("SELECT name FROM students WHERE id = 8")).get(0).values().get(0));
+        assertEquals(3, collect(qp.execute("SELECT * FROM students WHERE id = 2")).size()); // index saw the loaded row
+
+        java.nio.file.Files.writeString(csv, "9,Zed\n");
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("COPY students FROM 'target/qp-students.csv'"));
+
+        // A bad row long after the first batch of pages was written: nothing of the load is kept
+        int pages = storage.pageCount("students");
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) big.append(1000 + i).append(",Student").append(i).append(",true\n");
+        big.append("1,Short\n");
+        java.nio.file.Files.writeString(csv, big);
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("COPY students FROM 'target/qp-students.csv'"));
+        assertEquals(pages, storage.pageCount("students"));
+        assertEquals(8, storage.scanTable("students").size());
+        assertEquals(List.of(), index.searchRids("students_id_idx", 1000));
+        assertEquals(0, collect(qp.execute("SELECT * FROM students WHERE id = 50000")).size());
+        collect(qp.execute("INSERT INTO students (id, name, active) VALUES (9, 'Zed', true)"));
+        assertEquals(9, storage.scanTable("students").size());
+        assertEquals(1, index.searchRids("students_id_idx", 9).size());
+    }
+
     private List<Row> collect(Iterable<Row> it) {
         List<Row> list = new ArrayList<>();
         for (Row r : it) list.add(r);
         return list;
     }
+
+    @Test
+    void createIndexWithFanoutShapesTheTree() {
+        initSchemas();
+        seed();
+        for (int i = 10; i < 300; i++) storage.insert("students", new Record(List.of(i, "S" + i, true)));
+        QueryProcessor qp = new QueryProcessor(catalog, storage, index);
+        Row narrow = collect(qp.execute("CREATE INDEX students_narrow_idx ON students (id) WITH (fanout = 4);")).get(0);
+        assertEquals("CREATE INDEX", narrow.values().get(0));
+        assertEquals(4, narrow.values().get(1));
+        assertTrue((Integer) narrow.values().get(2) >= 5); // 295 keys, at most 3 per leaf
+        Row wide = collect(qp.execute("create index students_wide_idx on students(id)")).get(0);
+        assertEquals(index.defaultFanout(), wide.values().get(1));
+        assertEquals(1, wide.values().get(2)); // one leaf holds them all
+        assertEquals(1, wide.values().get(3));
+        assertTrue((Integer) narrow.values().get(3) > 100);
+        assertEquals(4, catalog.getIndexSchema("students_narrow_idx").fanout());
+        assertEquals(List.of(new db.engine.storage.RID(0, 5)), index.searchRids("students_narrow_idx", 10));
+
+        assertEquals(narrow.values(), collect(qp.execute("CREATE INDEX students_narrow_idx ON students (id) WITH (FANOUT=4)")).get(0).values());
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("CREATE INDEX students_narrow_idx ON students (id) WITH (fanout = 8)"));
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("CREATE INDEX bad_idx ON students (id) WITH (fanout = 2)"));
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("CREATE INDEX bad_idx ON students id"));
+
+        Row sparse = collect(qp.execute("CREATE INDEX students_sparse_idx ON students (id) WITH (fillfactor = 34, fanout = 4)")).get(0);
+        assertTrue((Integer) sparse.values().get(3) > (Integer) narrow.values().get(3)); // one key per leaf instead of three
+        assertEquals(34, catalog.getIndexSchema("students_sparse_idx").fillFactor());
+        assertEquals(index.searchRids("students_narrow_idx", 42), index.searchRids("students_sparse_idx", 42));
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("CREATE INDEX bad_idx ON students (id) WITH (fillfactor = 5)"));
+        assertThrows(IllegalArgumentException.class, () -> qp.execute("CREATE INDEX bad_idx ON students (id) WITH (pages = 5)"));
+
+        assertEquals(List.of("REINDEX", 4), collect(qp.execute("REINDEX TABLE students;")).get(0).values());
+        assertEquals(4, index.stats("students_sparse_idx").fanout());
+        assertEquals(2, collect(qp.execute("SELECT * FROM students WHERE id = 2")).size());
+    }
 }
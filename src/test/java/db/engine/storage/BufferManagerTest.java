@@ -19,10 +19,14 @@ public class BufferManagerTest {
             raf.write(payload);
         }
         BufferManager bm = new BufferManager(StorageManager.PAGE_SIZE, 8);
-        Page p1 = bm.getPage(temp.getPath(), 0);
-        assertEquals(42, p1.data()[0]);
-        Page p2 = bm.getPage(temp.getPath(), 0); // cached
-        assertSame(p1, p2);
+        try (Page p1 = bm.pin(temp.getPath(), 0)) {
+            assertEquals(42, p1.data()[0]);
+            try (Page p2 = bm.pin(temp.getPath(), 0)) { // cached
+                assertSame(p1, p2);
+                assertEquals(2, bm.pinCount(temp.getPath(), 0));
+            }
+        }
+        assertEquals(0, bm.pinCount(temp.getPath(), 0));
     }
 
     @Test
@@ -30,7 +34,199 @@ public class BufferManagerTest {
         File temp = File.createTempFile("buf-test-empty", ".tbl");
         temp.deleteOnExit();
         BufferManager bm = new BufferManager(StorageManager.PAGE_SIZE, 4);
-        Page p = bm.getPage(temp.getPath(), 3); // pageId 3 beyond EOF
-        for (byte b : p.data()) assertEquals(0, b);
+        try (Page p = bm.pin(temp.getPath(), 3)) { // pageId 3 beyond EOF
+            for (byte b : p.data()) assertEquals(0, b);
+        }
+    }
+
+    @Test
+    void dirtyPagesAreWrittenBackOnceOnFlushAndOnEviction() throws Exception {
+        File temp = File.createTempFile("buf-test-wb", ".tbl");
+        temp.deleteOnExit();
+        DiskManager disk = new DiskManager(StorageManager.PAGE_SIZE);
+        BufferManager bm = new BufferManager(disk, StorageManager.PAGE_SIZE, 2);
+        Page p0 = bm.pinNew(temp.getPath());
+        p0.close();
+        assertEquals(0, p0.pageId());
+        for (int i = 0; i < 100; i++) { // many mutations of the cached frame
+            p0.data()[i] = (byte) i;
+            p0.markDirty();
+        }
+        assertEquals(0, disk.pageWrites());
+        assertEquals(1, bm.flushAll());
+        assertEquals(1, disk.pageWrites());
+        assertEquals(0, bm.flushAll()); // clean now
+
+        // Evicting a dirty page writes it back before dropping it
+        Page p1 = bm.pinNew(temp.getPath());
+        p1.data()[0] = 11;
+        p1.markDirty();
+        p1.close();
+        bm.pinNew(temp.getPath()).close();
+        bm.pinNew(temp.getPath()).close(); // capacity 2: evicts p1
+        assertEquals(2, disk.pageWrites());
+        assertEquals(4, bm.pageCount(temp.getPath()));
+        byte[] back = new byte[StorageManager.PAGE_SIZE];
+        disk.readPage(temp.getPath(), 1, back);
+        assertEquals(11, back[0]);
+    }
+
+    @Test
+    void pinnedFramesAreNeverEvicted() throws Exception {
+        File temp = File.createTempFile("buf-test-pin", ".tbl");
+        temp.deleteOnExit();
+        BufferManager bm = new BufferManager(StorageManager.PAGE_SIZE, 2);
+        Page held = bm.pin(temp.getPath(), 0); // least recently used, but pinned
+        held.data()[0] = 5;
+        bm.pin(temp.getPath(), 1).close();
+        bm.pin(temp.getPath(), 2).close(); // must evict page 1, not page 0
+        assertEquals(1, bm.pinCount(temp.getPath(), 0));
+        try (Page again = bm.pin(temp.getPath(), 0)) {
+            assertSame(held, again);
+            assertEquals(5, again.data()[0]);
+        }
+
+        // With every frame pinned there is no victim
+        Page other = bm.pin(temp.getPath(), 3);
+        assertThrows(IllegalStateException.class, () -> bm.pin(temp.getPath(), 4));
+        other.close();
+        held.close();
+        assertThrows(IllegalStateException.class, held::close); // double unpin
+    }
+
+    @Test
+    void framesAreRecycledAcrossMisses() throws Exception {
+        File temp = File.createTempFile("buf-test-arena", ".tbl");
+        temp.deleteOnExit();
+        BufferManager bm = new BufferManager(StorageManager.PAGE_SIZE, 4);
+        java.util.Set<byte[]> buffers = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+        for (int pid = 0; pid < 50; pid++) {
+            try (Page p = bm.pin(temp.getPath(), pid)) {
+                assertEquals(pid, p.pageId());
+                buffers.add(p.data());
+            }
+        }
+        assertEquals(4, buffers.size()); // only the arena's frames were ever used
+    }
+
+    @Test
+    void concurrentReadersSeeTheirPagesAcrossShards() throws Exception {
+        File temp = File.createTempFile("buf-test-shards", ".tbl");
+        temp.deleteOnExit();
+        String path = temp.getPath();
+        int ps = StorageManager.PAGE_SIZE;
+        int pages = 64;
+        DiskManager disk = new DiskManager(ps);
+        byte[] buf = new byte[ps];
+        for (int pid = 0; pid < pages; pid++) {
+            java.nio.ByteBuffer.wrap(buf).putInt(0, pid);
+            disk.writePage(path, pid, buf);
+        }
+        BufferManager bm = new BufferManager(disk, ps, 16, "lru", 4);
+        assertEquals(4, bm.getShardCount());
+
+        int threads = 4;
+        java.util.concurrent.atomic.AtomicReference<Throwable> failure = new java.util.concurrent.atomic.AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            workers[t] = new Thread(() -> {
+                java.util.Random rnd = new java.util.Random(seed);
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        int pid = rnd.nextInt(pages);
+                        try (Page p = bm.pin(path, pid)) {
+                            int stored = java.nio.ByteBuffer.wrap(p.data()).getInt(0);
+                            if (stored != pid) throw new AssertionError("page " + pid + " holds " + stored);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertEquals(threads * 2000L, bm.hits() + bm.misses());
+        for (int pid = 0; pid < pages; pid++) assertEquals(0, bm.pinCount(path, pid));
+    }
+
+    @Test
+    void dirtyVictimsWrittenOutsideTheLatchAreNotLost() throws Exception {
+        File temp = File.createTempFile("buf-test-victims", ".tbl");
+        temp.deleteOnExit();
+        String path = temp.getPath();
+        int ps = StorageManager.PAGE_SIZE;
+        BufferManager bm = new BufferManager(new DiskManager(ps), ps, 8, "clock", 2);
+        int pages = 40;
+        for (int pid = 0; pid < pages; pid++) bm.pinNew(path).close();
+
+        // Each thread owns a disjoint set of pages and bumps a counter in them; evictions
+        // of other threads' dirty pages run concurrently with the re-reads.
+        int threads = 4, rounds = 50;
+        java.util.concurrent.atomic.AtomicReference<Throwable> failure = new java.util.concurrent.atomic.AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int owner = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        for (int pid = owner; pid < pages; pid += threads) {
+                            try (Page p = bm.pin(path, pid)) {
+                                java.nio.ByteBuffer bb = java.nio.ByteBuffer.wrap(p.data());
+                                bb.putInt(0, bb.getInt(0) + 1);
+                                p.markDirty();
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        bm.flushAll();
+        byte[] back = new byte[ps];
+        for (int pid = 0; pid < pages; pid++) {
+            bm.getDiskManager().readPage(path, pid, back);
+            assertEquals(rounds, java.nio.ByteBuffer.wrap(back).getInt(0), "page " + pid);
+        }
+    }
+
+    @Test
+    void shardCountMustBeAPowerOfTwo() {
+        DiskManager disk = new DiskManager(StorageManager.PAGE_SIZE);
+        assertThrows(IllegalArgumentException.class, () -> new BufferManager(disk, StorageManager.PAGE_SIZE, 16, "lru", 3));
+        assertEquals(1, BufferManager.defaultShards(8));
+        assertEquals(16, BufferManager.defaultShards(1024));
+    }
+
+    @Test
+    void corruptPageIsReportedOnRead() throws Exception {
+        File temp = File.createTempFile("buf-test-crc", ".tbl");
+        temp.deleteOnExit();
+        String path = temp.getPath();
+        int ps = StorageManager.PAGE_SIZE;
+        BufferManager writer = new BufferManager(new DiskManager(ps), ps, 4);
+        for (int pid = 0; pid < 2; pid++) {
+            try (Page p = writer.pinNew(path)) {
+                HeapPage.wrap(path, pid, p.data(), ps).insert(new byte[] {1, 2, 3, 4});
+            }
+        }
+        writer.flushAll();
+        writer.getDiskManager().closeAll();
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+            raf.seek(ps + 100); // page 1, inside the free space
+            raf.write(0x7F);
+        }
+        BufferManager reader = new BufferManager(new DiskManager(ps), ps, 4);
+        reader.pin(path, 0).close();
+        CorruptPageException e = assertThrows(CorruptPageException.class, () -> reader.pin(path, 1));
+        assertEquals(1, e.pageId());
+        assertEquals(1, reader.checksumFailures());
+        assertEquals(0, reader.pinCount(path, 1)); // the frame was given back
     }
 }
@@ -0,0 +1,32 @@
+package db.engine.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import org.junit.jupiter.api.Test;
+
+public class DiskManagerTest {
+
+    @Test
+    void writeThenReadThroughOpenChannel() throws Exception {
+        File temp = File.createTempFile("disk-test", ".tbl");
+        temp.deleteOnExit();
+        int ps = StorageManager.PAGE_SIZE;
+        DiskManager disk = new DiskManager(ps);
+        byte[] page = new byte[ps];
+        page[0] = 7;
+        page[ps - 1] = 9;
+        disk.writePage(temp.getPath(), 2, page); // extends file to 3 pages
+        assertEquals(3L * ps, disk.size(temp.getPath()));
+
+        byte[] back = new byte[ps];
+        assertEquals(ps, disk.readPage(temp.getPath(), 2, back));
+        assertArrayEquals(page, back);
+
+        // Page beyond EOF reads back zeroed, even into a dirty buffer
+        back[0] = 1;
+        assertEquals(0, disk.readPage(temp.getPath(), 5, back));
+        for (byte b : back) assertEquals(0, b);
+        disk.closeAll();
+    }
+}
@@ -0,0 +1,39 @@
+package db.engine.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class FreeSpaceMapTest {
+    private static final int PS = StorageManager.PAGE_SIZE;
+
+    @Test
+    void findsSmallestFittingCategory() {
+        FreeSpaceMap fsm = new FreeSpaceMap(PS);
+        assertEquals(-1, fsm.find(10));
+        fsm.update(0, 100);
+        fsm.update(1, 8000);
+        fsm.update(2, 2000);
+        assertEquals(3, fsm.trackedPages());
+        assertEquals(0, fsm.find(50));    // exact check within the boundary category
+        assertEquals(2, fsm.find(150));   // best fit above it, not the emptiest page
+        assertEquals(1, fsm.find(5000));
+        assertEquals(-1, fsm.find(9000));
+    }
+
+    @Test
+    void updatesMovePagesBetweenCategories() {
+        FreeSpaceMap fsm = new FreeSpaceMap(PS);
+        fsm.update(0, 4000);
+        assertEquals(0, fsm.find(3000));
+        fsm.update(0, 10); // filled up
+        assertEquals(-1, fsm.find(3000));
+        fsm.update(0, 12000); // space freed
+        assertEquals(0, fsm.find(3000));
+        assertEquals(1, fsm.trackedPages());
+        fsm.update(5, 12000);
+        fsm.truncate(1);
+        assertEquals(1, fsm.trackedPages());
+        assertEquals(0, fsm.find(11000));
+    }
+}
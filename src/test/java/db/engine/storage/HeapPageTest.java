@@ -48,4 +48,126 @@ public class HeapPageTest {
         // Reading tombstoned slot should throw
         assertThrows(IllegalStateException.class, () -> page.readRecord(s1, schema()));
     }
+
+    @Test
+    void readOnlyViewDecodesRecordsFromAnyBuffer() {
+        byte[] data = new byte[PAGE_SIZE];
+        HeapPage page = HeapPage.wrap("heap-test", 0, data, PAGE_SIZE);
+        Record r1 = new Record(List.of(7, "Carol", true));
+        page.insert(r1.toBytes(schema()));
+        // Same bytes in a direct buffer at a non-zero offset, sliced like a mapped chunk
+        java.nio.ByteBuffer chunk = java.nio.ByteBuffer.allocateDirect(PAGE_SIZE * 2);
+        chunk.put(PAGE_SIZE, data);
+        HeapPage view = HeapPage.wrapReadOnly("heap-test", 1, chunk.slice(PAGE_SIZE, PAGE_SIZE).asReadOnlyBuffer(), PAGE_SIZE);
+        assertEquals(List.of(0), view.liveSlotIds());
+        assertEquals(r1.getValues(), view.readRecord(0, schema()).getValues());
+        assertThrows(java.nio.ReadOnlyBufferException.class, () -> view.insert(new byte[4]));
+        assertThrows(UnsupportedOperationException.class, view::rawData);
+    }
+
+    @Test
+    void insertReusesTombstonedSlotAndTailBytes() {
+        byte[] data = new byte[PAGE_SIZE];
+        HeapPage page = HeapPage.wrap("heap-test", 0, data, PAGE_SIZE);
+        int s0 = page.insert(new Record(List.of(1, "Alice", true)).toBytes(schema()));
+        int s1 = page.insert(new Record(List.of(2, "Bob", false)).toBytes(schema()));
+        int s2 = page.insert(new Record(List.of(3, "Cy", true)).toBytes(schema()));
+        int freeBefore = page.freeSpace();
+        page.delete(s2); // last record in the data area: its bytes come back immediately
+        assertTrue(page.freeSpace() > freeBefore);
+        page.delete(s0); // middle of the data area: only the slot entry is reusable
+        int reused = page.insert(new Record(List.of(4, "Dee", false)).toBytes(schema()));
+        assertEquals(s0, reused);
+        assertEquals(List.of(0, 1), page.liveSlotIds());
+        assertEquals(List.of(4, "Dee", false), page.readRecord(reused, schema()).getValues());
+        assertEquals(List.of(2, "Bob", false), page.readRecord(s1, schema()).getValues());
+        assertEquals(s2, page.insert(new Record(List.of(5, "Eve", true)).toBytes(schema())));
+    }
+
+    @Test
+    void compactSlidesLiveRecordsAndKeepsSlotIds() {
+        byte[] data = new byte[PAGE_SIZE];
+        HeapPage page = HeapPage.wrap("heap-test", 0, data, PAGE_SIZE);
+        for (int i = 0; i < 10; i++) page.insert(new Record(List.of(i, "Name" + i, i % 2 == 0)).toBytes(schema()));
+        for (int i = 0; i < 10; i += 2) page.delete(i);
+        int dead = page.deadBytes();
+        assertTrue(dead > 0);
+        assertTrue(page.deadRatio() > 0.3);
+        int freeBefore = page.freeSpace();
+        assertEquals(dead, page.compact());
+        assertEquals(0, page.deadBytes());
+        assertEquals(freeBefore + dead, page.freeSpace());
+        assertEquals(List.of(1, 3, 5, 7, 9), page.liveSlotIds());
+        for (int i = 1; i < 10; i += 2) {
+            assertEquals(List.of(i, "Name" + i, false), page.readRecord(i, schema()).getValues());
+        }
+        assertThrows(IllegalStateException.class, () -> page.readRecord(0, schema()));
+        assertEquals(0, page.compact()); // already compact
+    }
+
+    @Test
+    void legacyPageIsUpgradedWhenStampedWithAnLsn() {
+        byte[] data = new byte[PAGE_SIZE];
+        java.nio.ByteBuffer.wrap(data).putInt(0, 8); // version 0 header: data area starts at byte 8
+        HeapPage page = HeapPage.wrap("heap-test", 0, data, PAGE_SIZE);
+        assertEquals(0, page.formatVersion());
+        page.insert(new Record(List.of(1, "Alice", true)).toBytes(schema()));
+        page.insert(new Record(List.of(2, "Bob", false)).toBytes(schema()));
+        page.delete(0);
+        assertEquals(-1, HeapPage.pageLsn(data));
+
+        assertTrue(page.setPageLsn(42));
+        assertEquals(2, page.formatVersion());
+        assertEquals(42, page.pageLsn());
+        assertEquals(42, HeapPage.pageLsn(data));
+        assertEquals(List.of(1), page.liveSlotIds());
+        assertEquals(List.of(2, "Bob", false), page.readRecord(1, schema()).getValues());
+        assertEquals(2, HeapPage.wrap("heap-test", 1, new byte[PAGE_SIZE], PAGE_SIZE).formatVersion()); // new pages
+    }
+
+    @Test
+    void insertAtPlacesRecordAtTheLoggedSlot() {
+        byte[] data = new byte[PAGE_SIZE];
+        HeapPage page = HeapPage.wrap("heap-test", 0, data, PAGE_SIZE);
+        page.insertAt(3, new Record(List.of(3, "Carol", true)).toBytes(schema()));
+        assertEquals(List.of(3), page.liveSlotIds()); // slots 0..2 exist as tombstones
+        page.insertAt(3, new Record(List.of(4, "Dan", false)).toBytes(schema())); // replaces
+        assertEquals(List.of(4, "Dan", false), page.readRecord(3, schema()).getValues());
+        assertEquals(0, page.insert(new Record(List.of(5, "Eve", true)).toBytes(schema())));
+    }
+
+    @Test
+    void checksumDetectsAFlippedBit() {
+        byte[] data = new byte[PAGE_SIZE];
+        HeapPage page = HeapPage.wrap("heap-test", 0, data, PAGE_SIZE);
+        page.insert(new Record(List.of(1, "Alice", true)).toBytes(schema()));
+        HeapPage.updateChecksum(data);
+        assertTrue(HeapPage.verifyChecksum(data));
+        data[PAGE_SIZE / 2] ^= 0x10; // in the free space: still part of the page image
+        assertFalse(HeapPage.verifyChecksum(data));
+        data[PAGE_SIZE / 2] ^= 0x10;
+        assertTrue(HeapPage.verifyChecksum(data));
+        assertTrue(HeapPage.verifyChecksum(new byte[PAGE_SIZE])); // blank page has no checksum
+    }
+
+
+    @Test
+    void checksumCannotBeSwitchedOffThroughTheVersionField() {
+        byte[] data = new byte[PAGE_SIZE];
+        HeapPage page = HeapPage.wrap("heap-test", 0, data, PAGE_SIZE);
+        page.insert(new Record(List.of(1, "Alice", true)).toBytes(schema()));
+        HeapPage.updateChecksum(data);
+        byte[] versionCleared = data.clone();
+        versionCleared[6] = 0;
+        versionCleared[7] = 0; // now claims to be an unchecksummed version 0 page
+        assertFalse(HeapPage.verifyChecksum(versionCleared));
+        byte[] headerZeroed = data.clone();
+        java.util.Arrays.fill(headerZeroed, 0, 24, (byte) 0); // torn write: the header reads as a blank page
+        assertFalse(HeapPage.verifyChecksum(headerZeroed));
+
+        byte[] legacy = new byte[PAGE_SIZE];
+        java.nio.ByteBuffer.wrap(legacy).putInt(0, 8); // version 0 header
+        HeapPage.wrap("heap-test", 1, legacy, PAGE_SIZE).insert(new Record(List.of(2, "Bob", false)).toBytes(schema()));
+        assertTrue(HeapPage.verifyChecksum(legacy)); // older pages still read without a checksum
+    }
 }
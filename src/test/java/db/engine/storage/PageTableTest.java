@@ -0,0 +1,43 @@
+package db.engine.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class PageTableTest {
+
+    @Test
+    void matchesHashMapUnderRandomPutRemove() {
+        PageTable table = new PageTable(64);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random rnd = new Random(7);
+        for (int step = 0; step < 20_000; step++) {
+            long key = PageTable.key(rnd.nextInt(3), rnd.nextInt(100));
+            if (rnd.nextBoolean() && expected.size() < 64) {
+                int v = rnd.nextInt(1000);
+                table.put(key, v);
+                expected.put(key, v);
+            } else {
+                Integer old = expected.remove(key);
+                assertEquals(old == null ? -1 : (int) old, table.remove(key));
+            }
+            assertEquals(expected.size(), table.size());
+        }
+        for (int f = 0; f < 3; f++) {
+            for (int p = 0; p < 100; p++) {
+                long key = PageTable.key(f, p);
+                assertEquals((int) expected.getOrDefault(key, -1), table.get(key));
+            }
+        }
+    }
+
+    @Test
+    void keyPacksFileAndPage() {
+        long key = PageTable.key(5, Integer.MAX_VALUE);
+        assertEquals(5, PageTable.fileIdOf(key));
+        assertEquals(Integer.MAX_VALUE, PageTable.pageIdOf(key));
+    }
+}
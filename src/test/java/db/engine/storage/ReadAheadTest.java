@@ -0,0 +1,76 @@
+package db.engine.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import org.junit.jupiter.api.Test;
+
+public class ReadAheadTest {
+    private static final int PS = StorageManager.PAGE_SIZE;
+
+    private String fileWithPages(int pages) throws Exception {
+        File temp = File.createTempFile("readahead", ".tbl");
+        temp.deleteOnExit();
+        DiskManager disk = new DiskManager(PS);
+        byte[] buf = new byte[PS];
+        for (int pid = 0; pid < pages; pid++) {
+            java.nio.ByteBuffer.wrap(buf).putInt(0, pid);
+            disk.writePage(temp.getPath(), pid, buf);
+        }
+        disk.closeAll();
+        return temp.getPath();
+    }
+
+    private static void awaitPrefetched(BufferManager bm, int pages) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bm.prefetchedPages() < pages && System.currentTimeMillis() < deadline) Thread.sleep(5);
+    }
+
+    @Test
+    void sequentialAccessPrefetchesTheWindowAhead() throws Exception {
+        String path = fileWithPages(40);
+        BufferManager bm = new BufferManager(new DiskManager(PS), PS, 64);
+        ReadAhead ra = new ReadAhead(bm, path, 8, 40);
+        ra.onAccess(0);
+        bm.pin(path, 0).close();
+        assertEquals(0, bm.prefetchedPages()); // one page is not a pattern yet
+        ra.onAccess(1);
+        bm.pin(path, 1).close();
+        awaitPrefetched(bm, 8);
+        assertEquals(8, bm.prefetchedPages());
+        for (int pid = 2; pid <= 9; pid++) assertTrue(bm.isCached(path, pid), "page " + pid);
+        assertFalse(bm.isCached(path, 10));
+
+        // The scan itself now hits, and the prefetched bytes are the right pages
+        bm.resetStats();
+        for (int pid = 2; pid <= 6; pid++) {
+            ra.onAccess(pid);
+            try (Page p = bm.pin(path, pid)) {
+                assertEquals(pid, java.nio.ByteBuffer.wrap(p.data()).getInt(0));
+            }
+        }
+        assertEquals(5, bm.hits());
+        awaitPrefetched(bm, 13); // topped up to page 14 once half the window was consumed
+        assertTrue(bm.isCached(path, 14));
+        assertFalse(bm.isCached(path, 15));
+        bm.shutdown();
+    }
+
+    @Test
+    void randomAccessAndEndOfFileAreRespected() throws Exception {
+        String path = fileWithPages(6);
+        BufferManager bm = new BufferManager(new DiskManager(PS), PS, 64);
+        ReadAhead ra = new ReadAhead(bm, path, 8, 6);
+        ra.onAccess(3);
+        ra.onAccess(0);
+        ra.onAccess(5);
+        Thread.sleep(20);
+        assertEquals(0, bm.prefetchedPages());
+        ra.onAccess(0);
+        ra.onAccess(1);
+        awaitPrefetched(bm, 4);
+        Thread.sleep(20);
+        assertEquals(4, bm.prefetchedPages()); // pages 2..5 only: never past the end
+        bm.shutdown();
+    }
+}
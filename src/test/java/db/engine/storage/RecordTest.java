@@ -22,4 +22,72 @@ public class RecordTest {
         assertNotSame(r1, r2);
         assertEquals(r1.getValues(), r2.getValues());
     }
+
+    @Test
+    void viewDecodesSingleColumnsInPlace() {
+        List<db.engine.catalog.ColumnSchema> cols = List.of(
+            new db.engine.catalog.ColumnSchema("name", db.engine.catalog.DataType.VARCHAR, 50),
+            new db.engine.catalog.ColumnSchema("id", db.engine.catalog.DataType.INT, 0),
+            new db.engine.catalog.ColumnSchema("note", db.engine.catalog.DataType.VARCHAR, 50),
+            new db.engine.catalog.ColumnSchema("active", db.engine.catalog.DataType.BOOLEAN, 0));
+        byte[] a = new Record(List.of("Zo\u00eb", 7, "", true)).toBytes(cols);
+        byte[] b = new Record(List.of("Bo", -3, "x,y", false)).toBytes(cols);
+        java.nio.ByteBuffer page = java.nio.ByteBuffer.allocate(a.length + b.length + 5);
+        page.put(5, a).put(5 + a.length, b);
+
+        RecordView view = new RecordView(cols).reset(page, 5);
+        assertEquals(true, view.getBoolean(3)); // last column first
+        assertEquals(7, view.getInt(1));
+        assertEquals("Zo\u00eb", view.getString(0));
+        assertEquals(List.of("Zo\u00eb", 7, "", true), view.toRecord().getValues());
+        view.reset(page, 5 + a.length); // same view, next record
+        assertEquals(-3, view.get(1));
+        assertEquals("x,y", view.get(2));
+        assertEquals(false, view.get(3));
+    }
+
+    @Test
+    void fixedFormatPutsColumnsAtSchemaOffsetsAndLegacyRecordsStillDecode() {
+        List<db.engine.catalog.ColumnSchema> cols = List.of(
+            new db.engine.catalog.ColumnSchema("name", db.engine.catalog.DataType.VARCHAR, 50),
+            new db.engine.catalog.ColumnSchema("id", db.engine.catalog.DataType.INT, 0),
+            new db.engine.catalog.ColumnSchema("note", db.engine.catalog.DataType.VARCHAR, 50),
+            new db.engine.catalog.ColumnSchema("active", db.engine.catalog.DataType.BOOLEAN, 0));
+        Record r = new Record(List.of("Ann", 42, "hi", true));
+        byte[] bytes = r.toBytes(cols);
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(bytes);
+        // [bitmap 1][id 4][active 1][end of name 2][end of note 2][Ann][hi]
+        assertEquals(0, buf.get(0));
+        assertEquals(42, buf.getInt(1));
+        assertEquals(1, buf.get(5));
+        assertEquals(13, buf.getShort(6));
+        assertEquals(15, buf.getShort(8));
+        assertEquals(15, bytes.length);
+        assertEquals(r.getValues(), Record.fromBytes(bytes, cols).getValues());
+
+        int legacy = db.engine.catalog.TableSchema.LEGACY_RECORD_FORMAT;
+        byte[] old = r.toBytes(cols, legacy);
+        assertEquals(4 + 3 + 4 + 4 + 2 + 1, old.length);
+        assertEquals(r.getValues(), Record.fromBytes(old, cols, legacy).getValues());
+        RecordView view = new RecordView(cols, legacy).reset(java.nio.ByteBuffer.wrap(old), 0);
+        assertTrue(view.stringEquals(2, "hi".getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        assertFalse(view.isNull(2));
+        assertThrows(IllegalArgumentException.class, () -> r.toBytes(cols, 7));
+    }
+
+    @Test
+    void nullBitmapMarksColumnsWithoutAValue() {
+        List<db.engine.catalog.ColumnSchema> cols = List.of(
+            new db.engine.catalog.ColumnSchema("id", db.engine.catalog.DataType.INT, 0),
+            new db.engine.catalog.ColumnSchema("name", db.engine.catalog.DataType.VARCHAR, 50),
+            new db.engine.catalog.ColumnSchema("nick", db.engine.catalog.DataType.VARCHAR, 50));
+        byte[] bytes = new Record(java.util.Arrays.asList(5, null, "Bo")).toBytes(cols);
+        RecordView view = new RecordView(cols).reset(java.nio.ByteBuffer.wrap(bytes), 0);
+        assertTrue(view.isNull(1));
+        assertFalse(view.isNull(2));
+        assertNull(view.get(1));
+        assertFalse(view.stringEquals(1, new byte[0]));
+        assertEquals("Bo", view.getString(2)); // an empty slot takes no bytes
+        assertEquals(java.util.Arrays.asList(5, null, "Bo"), view.toRecord().getValues());
+    }
 }
@@ -10,6 +10,7 @@ import db.engine.catalog.ColumnSchema;
 import db.engine.catalog.DataType;
 import db.engine.catalog.TableSchema;
 import db.engine.catalog.TestCatalogManager;
+import db.engine.index.IndexManager;
 
 public class StorageManagerTest {
 
@@ -39,4 +40,423 @@ public class StorageManagerTest {
         assertEquals(1, remaining.size());
         assertEquals(1, remaining.get(0).getValues().get(0));
     }
+
+    @Test
+    void insertsStayInCachedPageUntilCheckpoint() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("wb_people", schemaCols(), "target/test-wb-people.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        long writesBefore = storage.getDiskManager().pageWrites();
+        for (int i = 0; i < 200; i++) {
+            storage.insert("wb_people", new Record(List.of(i, "P" + i, i % 2 == 0)));
+        }
+        assertEquals(1, storage.pageCount("wb_people"));
+        storage.checkpoint();
+        // One page write for 200 rows (plus at most one more if the background flusher ran mid-loop)
+        long written = storage.getDiskManager().pageWrites() - writesBefore;
+        assertTrue(written >= 1 && written <= 2, "page writes: " + written);
+        storage.close();
+
+        // Data is visible to a fresh storage instance after close
+        StorageManager reopened = new StorageManager(catalog);
+        assertEquals(200, reopened.scanTable("wb_people").size());
+        reopened.close();
+    }
+
+    @Test
+    void mappedTableSeesBufferedWritesAndMatchesPoolReads() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog, StorageConfig.defaults().withAccessMode(AccessMode.MMAP));
+        TableSchema ts = new TableSchema("mm_people", schemaCols(), "target/test-mm-people.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        assertTrue(storage.isMapped("mm_people"));
+        List<RID> rids = new java.util.ArrayList<>();
+        for (int i = 0; i < 1500; i++) { // spans several pages
+            rids.add(storage.insert("mm_people", new Record(List.of(i, "P" + i, i % 2 == 0))));
+        }
+        // Inserts sit dirty in the pool; the mapped read path writes them back first
+        assertEquals(1500, storage.scanTable("mm_people").size());
+        assertEquals(List.of(42, "P42", true), storage.read("mm_people", rids.get(42)).getValues());
+        assertTrue(storage.delete("mm_people", rids.get(42)));
+        assertEquals(1499, storage.scanTable("mm_people").size());
+
+        // Same answers through the buffer pool
+        storage.setAccessMode("mm_people", AccessMode.BUFFERED);
+        assertEquals(1499, storage.scanTable("mm_people").size());
+        assertEquals(List.of(1499, "P1499", false), storage.read("mm_people", rids.get(1499)).getValues());
+        storage.close();
+    }
+
+    @Test
+    void mappedFileRemapsAfterGrowth() throws Exception {
+        File temp = File.createTempFile("mapped", ".tbl");
+        temp.deleteOnExit();
+        int ps = StorageManager.PAGE_SIZE;
+        DiskManager disk = new DiskManager(ps);
+        MappedHeapFile mf = new MappedHeapFile(disk, temp.getPath(), ps, 4L * ps);
+        assertEquals(0, mf.page(0).getInt(0)); // empty file: empty page, nothing mapped
+        byte[] buf = new byte[ps];
+        for (int pid = 0; pid < 6; pid++) {
+            java.nio.ByteBuffer.wrap(buf).putInt(0, pid + 100);
+            disk.writePage(temp.getPath(), pid, buf);
+        }
+        assertEquals(100, mf.page(0).getInt(0));
+        assertEquals(105, mf.page(5).getInt(0)); // second chunk
+        java.nio.ByteBuffer.wrap(buf).putInt(0, 106);
+        disk.writePage(temp.getPath(), 6, buf);
+        assertEquals(106, mf.page(6).getInt(0)); // second chunk mapped short before; remapped
+        assertEquals(3, mf.remaps());
+        disk.closeAll();
+    }
+
+    @Test
+    void insertDeleteChurnReusesFreedSpace() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("churn", schemaCols(), "target/test-churn.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        java.util.ArrayDeque<RID> live = new java.util.ArrayDeque<>();
+        for (int i = 0; i < 2000; i++) live.add(storage.insert("churn", new Record(List.of(i, "P" + i, true))));
+        int pagesAfterLoad = storage.pageCount("churn");
+        // Delete the newest rows and insert as many again, many times over
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) assertTrue(storage.delete("churn", live.pollLast()));
+            for (int i = 0; i < 500; i++) live.add(storage.insert("churn", new Record(List.of(i, "P" + i, true))));
+        }
+        assertEquals(pagesAfterLoad, storage.pageCount("churn"));
+        assertEquals(2000, storage.scanTable("churn").size());
+        storage.close();
+    }
+
+    @Test
+    void vacuumCompactsAndTruncatesEmptyTrailingPages() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("vac", schemaCols(), "target/test-vac.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        List<RID> rids = new java.util.ArrayList<>();
+        for (int i = 0; i < 3000; i++) rids.add(storage.insert("vac", new Record(List.of(i, "Name" + i, true))));
+        int pages = storage.pageCount("vac");
+        assertTrue(pages > 3);
+        // Empty the tail pages completely and thin out the first page a little
+        for (RID rid : rids) {
+            if (rid.pageId() >= 2 || (rid.pageId() == 0 && rid.slotId() % 5 == 0)) storage.delete("vac", rid);
+        }
+        StorageManager.VacuumStats stats = storage.vacuum("vac");
+        assertEquals(pages - 2, stats.pagesTruncated());
+        assertEquals(2, storage.pageCount("vac"));
+        assertTrue(stats.bytesReclaimed() > (long) (pages - 2) * StorageManager.PAGE_SIZE);
+        int live = storage.scanTable("vac").size();
+        // New rows land in the freed space, not in a new page
+        storage.insert("vac", new Record(List.of(-1, "Late", false)));
+        assertEquals(2, storage.pageCount("vac"));
+        assertEquals(live + 1, storage.scanTable("vac").size());
+        RID kept = rids.get(1); // page 0, slot 1: survived and keeps its RID
+        assertEquals(List.of(1, "Name1", true), storage.read("vac", kept).getValues());
+        storage.close();
+        assertEquals(2L * StorageManager.PAGE_SIZE, new File(ts.filePath()).length());
+    }
+
+    @Test
+    void bulkLoadWritesWholePagesAndFillsIndexes() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        // No background flusher: it would write index pages while the writes are counted
+        StorageManager storage = new StorageManager(catalog, StorageConfig.defaults().withFlushIntervalMs(0));
+        db.engine.index.IndexManager index = new db.engine.index.IndexManager(catalog, storage, "target/indexes");
+        TableSchema ts = new TableSchema("bulk_people", schemaCols(), "target/test-bulk-people.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        storage.insert("bulk_people", new Record(List.of(-1, "Existing", true)));
+        index.createIndex("bulk_people_id_idx", "bulk_people", "id");
+
+        int rows = 70000;
+        long writesBefore = storage.getDiskManager().pageWrites();
+        int loaded = storage.bulkLoad("bulk_people", java.util.stream.IntStream.range(0, rows)
+                .mapToObj(i -> new Record(List.of(i % 5000, "P" + i, i % 2 == 0))).iterator());
+        assertEquals(rows, loaded);
+        int pages = storage.pageCount("bulk_people");
+        assertTrue(pages > BulkLoader.BATCH_PAGES, "pages: " + pages); // more than one batched write
+        assertEquals(pages - 1, storage.getDiskManager().pageWrites() - writesBefore); // the cached first page is not rewritten
+        assertEquals(rows + 1, storage.scanTable("bulk_people").size());
+        assertEquals(14, index.searchRids("bulk_people_id_idx", 42).size());
+        assertEquals(1, index.searchRids("bulk_people_id_idx", -1).size());
+        assertEquals(List.of(4999, "P69999", false), storage.read("bulk_people", index.searchRids("bulk_people_id_idx", 4999).get(13)).getValues());
+
+        // Row-at-a-time inserts carry on after the loaded pages
+        RID after = storage.insert("bulk_people", new Record(List.of(-2, "After", true)));
+        assertTrue(after.pageId() >= 1);
+        assertThrows(IllegalArgumentException.class, () -> storage.bulkLoad("bulk_people",
+                List.of(new Record(List.of(1, "Bad"))).iterator()));
+        storage.close();
+
+        StorageManager reopened = new StorageManager(catalog); // loaded pages pass checksum verification
+        assertEquals(rows + 2, reopened.scanTable("bulk_people").size());
+        reopened.close();
+    }
+
+    @Test
+    void insertBatchFillsPagesAndCommitsOnce() throws Exception {
+        TestCatalogManager catalog = new TestCatalogManager();
+        new File("target/test-wal-batch.log").delete();
+        StorageManager storage = new StorageManager(catalog, StorageConfig.defaults().withWal("target/test-wal-batch.log"));
+        TableSchema ts = new TableSchema("batch_people", schemaCols(), "target/test-batch-people.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        List<Record> batch = new java.util.ArrayList<>();
+        for (int i = 0; i < 3000; i++) batch.add(new Record(List.of(i, "Name" + i, i % 3 == 0)));
+        List<RID> rids = storage.insertBatch("batch_people", batch);
+        assertEquals(3000, rids.size());
+        assertEquals(new RID(0, 0), rids.get(0));
+        int pages = storage.pageCount("batch_people");
+        assertEquals(pages - 1, rids.get(2999).pageId()); // pages were filled in order
+        assertEquals(List.of(1234, "Name1234", false), storage.read("batch_people", rids.get(1234)).getValues());
+        assertEquals(1, storage.getWal().commits()); // one transaction, one log force
+
+        // A bad row anywhere rejects the whole batch before anything is written
+        List<Record> bad = List.of(new Record(List.of(-1, "ok", true)), new Record(List.of("x", "bad", true)));
+        assertThrows(IllegalArgumentException.class, () -> storage.insertBatch("batch_people", bad));
+        assertEquals(3000, storage.scanTable("batch_people").size());
+
+        storage.checkpoint();
+        assertEquals(pages, storage.getDiskManager().pageWrites()); // each touched page written once
+        storage.close();
+    }
+
+    @Test
+    void legacyFormatTableKeepsWorking() throws Exception {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("old_people", schemaCols(), "target/test-old-people.tbl", TableSchema.LEGACY_RECORD_FORMAT);
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        RID alice = storage.insert("old_people", new Record(List.of(1, "Alice", true)));
+        storage.insertBatch("old_people", List.of(new Record(List.of(2, "Bob", false)), new Record(List.of(3, "Cy", true))));
+        storage.bulkLoad("old_people", List.of(new Record(List.of(4, "Dee", false))).iterator());
+        try (Page page = storage.getBufferManager().pin(ts.filePath(), 0)) {
+            byte[] stored = HeapPage.wrap(ts.filePath(), 0, page.data(), StorageManager.PAGE_SIZE).readSlot(alice.slotId());
+            assertEquals(4 + 4 + 5 + 1, stored.length); // written length-prefixed, as before
+        }
+        assertEquals(List.of(1, "Alice", true), storage.read("old_people", alice).getValues());
+        assertEquals(List.of("Alice", 1), storage.read("old_people", alice, new int[] {1, 0}).getValues());
+        assertEquals(4, storage.scanTable("old_people").size());
+        assertTrue(storage.delete("old_people", alice));
+        assertEquals(3, storage.scanTable("old_people").size());
+        storage.close();
+    }
+
+    @Test
+    void loggedChangesDeferPageWritesToCheckpoint() throws Exception {
+        TestCatalogManager catalog = new TestCatalogManager();
+        new File("target/test-wal-storage.log").delete();
+        StorageManager storage = new StorageManager(catalog, StorageConfig.defaults().withWal("target/test-wal-storage.log"));
+        TableSchema ts = new TableSchema("logged", schemaCols(), "target/test-logged.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        RID first = null;
+        for (int i = 0; i < 200; i++) {
+            RID rid = storage.insert("logged", new Record(List.of(i, "Name" + i, true)));
+            if (first == null) first = rid;
+        }
+        assertTrue(storage.delete("logged", first));
+        WriteAheadLog wal = storage.getWal();
+        assertEquals(201, wal.commits());
+        assertEquals(wal.appendedLsn(), wal.durableLsn()); // every change is durable in the log
+        assertEquals(0, storage.getDiskManager().pageWrites()); // ...while the pages stay in the pool
+
+        List<LogRecord> recs = new java.util.ArrayList<>();
+        WriteAheadLog.read(wal.path(), recs::add);
+        assertEquals(402, recs.size());
+        LogRecord del = recs.get(400);
+        assertEquals(LogRecord.Type.DELETE, del.type());
+        assertEquals(ts.filePath(), del.filePath());
+        assertEquals(List.of(0, "Name0", true), Record.fromBytes(del.payload(), schemaCols()).getValues());
+
+        storage.checkpoint();
+        assertTrue(storage.getDiskManager().pageWrites() > 0);
+        recs.clear();
+        WriteAheadLog.read(wal.path(), recs::add);
+        assertEquals(0, recs.size());
+        storage.close();
+    }
+
+    // Open a logged table; a previous instance left without close() simulates a crash
+    private StorageManager openLogged(TestCatalogManager catalog, TableSchema ts, String walPath) {
+        StorageManager storage = new StorageManager(catalog, StorageConfig.defaults().withWal(walPath));
+        if (catalog.getTableSchema(ts.name()) == null) storage.createTable(ts);
+        return storage;
+    }
+
+    @Test
+    void recoveryRedoesCommittedChangesLostInTheCrash() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        TableSchema ts = new TableSchema("crash", schemaCols(), "target/test-crash.tbl");
+        String walPath = "target/test-crash.log";
+        new File(ts.filePath()).delete();
+        new File(walPath).delete();
+        StorageManager before = openLogged(catalog, ts, walPath);
+        List<RID> rids = new java.util.ArrayList<>();
+        for (int i = 0; i < 10; i++) rids.add(before.insert("crash", new Record(List.of(i, "Name" + i, true))));
+        before.checkpoint(); // pages 0.. on disk, log cut here
+        for (int i = 10; i < 1000; i++) rids.add(before.insert("crash", new Record(List.of(i, "Name" + i, true))));
+        try {
+            before.getBufferManager().flushFile(ts.filePath()); // these pages reach disk stamped with their LSNs
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+        for (int i = 1000; i < 1500; i++) rids.add(before.insert("crash", new Record(List.of(i, "Name" + i, true))));
+        before.delete("crash", rids.get(3));
+        // ...crash: the changes since the flush exist only in the log
+
+        StorageManager after = openLogged(catalog, ts, walPath);
+        StorageManager.RecoveryStats stats = after.lastRecovery();
+        assertEquals(0, stats.undone());
+        assertEquals(2 * 1491, stats.logRecords()); // only what followed the checkpoint
+        assertEquals(990, stats.skipped()); // already on the flushed pages
+        assertEquals(501, stats.redone());
+        assertEquals(1499, after.scanTable("crash").size());
+        assertEquals(List.of(1499, "Name1499", true), after.read("crash", rids.get(1499)).getValues());
+        after.close();
+    }
+
+    @Test
+    void recoveryRollsBackUncommittedChanges() throws Exception {
+        TestCatalogManager catalog = new TestCatalogManager();
+        TableSchema ts = new TableSchema("losers", schemaCols(), "target/test-losers.tbl");
+        String walPath = "target/test-losers.log";
+        new File(ts.filePath()).delete();
+        new File(walPath).delete();
+        StorageManager before = openLogged(catalog, ts, walPath);
+        for (int i = 0; i < 5; i++) before.insert("losers", new Record(List.of(i, "Name" + i, true)));
+        // A transaction that logged an insert and a delete but crashed before committing
+        WriteAheadLog wal = before.getWal();
+        byte[] victim = new Record(List.of(2, "Name2", true)).toBytes(schemaCols());
+        wal.logInsert(999, ts.filePath(), 0, 7, new Record(List.of(99, "Ghost", false)).toBytes(schemaCols()));
+        wal.logDelete(999, ts.filePath(), 0, 2, victim);
+        wal.flush();
+
+        StorageManager after = openLogged(catalog, ts, walPath);
+        StorageManager.RecoveryStats stats = after.lastRecovery();
+        assertEquals(1, stats.rolledBackTxns());
+        assertEquals(2, stats.undone());
+        List<Record> rows = after.scanTable("losers");
+        assertEquals(5, rows.size());
+        assertEquals(List.of(2, "Name2", true), after.read("losers", new RID(0, 2)).getValues());
+        assertTrue(rows.stream().noneMatch(r -> r.getValues().get(0).equals(99)));
+        after.close();
+
+        // Recovery ended with a checkpoint, so the next start has nothing to do
+        StorageManager again = openLogged(catalog, ts, walPath);
+        assertEquals(0, again.lastRecovery().logRecords());
+        assertEquals(5, again.scanTable("losers").size());
+        again.close();
+    }
+
+
+    @Test
+    void vacuumedPagesStayTruncatedAfterRecovery() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        TableSchema ts = new TableSchema("vac_logged", schemaCols(), "target/test-vac-logged.tbl");
+        String walPath = "target/test-vac-logged.log";
+        new File(ts.filePath()).delete();
+        new File(walPath).delete();
+        StorageManager before = openLogged(catalog, ts, walPath);
+        List<RID> rids = new java.util.ArrayList<>();
+        for (int i = 0; i < 1000; i++) rids.add(before.insert("vac_logged", new Record(List.of(i, "Name" + i, true))));
+        for (RID rid : rids) {
+            if (rid.pageId() >= 1) before.delete("vac_logged", rid);
+        }
+        int live = before.scanTable("vac_logged").size();
+        assertTrue(before.vacuum("vac_logged").pagesTruncated() > 0);
+        assertEquals(1, before.pageCount("vac_logged"));
+        // ...crash: the inserts onto the cut pages must not come back from the log
+
+        StorageManager after = openLogged(catalog, ts, walPath);
+        assertEquals(0, after.lastRecovery().logRecords());
+        assertEquals(1, after.pageCount("vac_logged"));
+        assertEquals(live, after.scanTable("vac_logged").size());
+        after.close();
+    }
+
+
+    @Test
+    void undoOfAnUnfinishedDeleteKeepsTheRowsCommittedAfterIt() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        TableSchema ts = new TableSchema("interleaved", schemaCols(), "target/test-interleaved.tbl");
+        String walPath = "target/test-interleaved.log";
+        new File(ts.filePath()).delete();
+        new File(walPath).delete();
+        StorageManager before = openLogged(catalog, ts, walPath);
+        List<RID> rids = new java.util.ArrayList<>();
+        for (int i = 0; i < 5; i++) rids.add(before.insert("interleaved", new Record(List.of(i, "Name" + i, true))));
+        // A delete whose index update fails never commits; its tombstone stays on page 0
+        new IndexManager(catalog, before, "target/indexes") {
+            @Override
+            public void onTableDelete(String tableName, RID rid, Record oldRecord) {
+                throw new IllegalStateException("index write failed");
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> before.delete("interleaved", rids.get(2)));
+        before.attachIndexManager(null);
+        // Committed changes to the same page meanwhile: the loser's slot is not reused
+        assertTrue(before.delete("interleaved", rids.get(3)));
+        RID late = before.insert("interleaved", new Record(List.of(10, "Late", false)));
+        RID later = before.insert("interleaved", new Record(List.of(11, "Later", false)));
+        assertEquals(new RID(0, 3), late); // a committed delete's slot is free again
+        assertEquals(new RID(0, 5), later);
+        // ...crash
+
+        StorageManager after = openLogged(catalog, ts, walPath);
+        assertEquals(1, after.lastRecovery().rolledBackTxns());
+        assertEquals(List.of(2, "Name2", true), after.read("interleaved", rids.get(2)).getValues());
+        assertEquals(List.of(10, "Late", false), after.read("interleaved", late).getValues());
+        assertEquals(List.of(11, "Later", false), after.read("interleaved", later).getValues());
+        assertEquals(6, after.scanTable("interleaved").size());
+        after.close();
+    }
+
+
+    @Test
+    void recoveryStopsAtATornPageAndNamesIt() throws Exception {
+        TestCatalogManager catalog = new TestCatalogManager();
+        TableSchema ts = new TableSchema("torn", schemaCols(), "target/test-torn.tbl");
+        String walPath = "target/test-torn.log";
+        new File(ts.filePath()).delete();
+        new File(walPath).delete();
+        StorageManager before = openLogged(catalog, ts, walPath);
+        for (int i = 0; i < 10; i++) before.insert("torn", new Record(List.of(i, "Name" + i, true)));
+        before.checkpoint(); // page 0 on disk with its checksum
+        before.insert("torn", new Record(List.of(10, "Name10", true)));
+        before.getDiskManager().closeAll();
+        // ...crash while page 0 was being written: part of it is new, part old
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(ts.filePath(), "rw")) {
+            raf.seek(StorageManager.PAGE_SIZE / 2);
+            raf.write(0x7F);
+        }
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> openLogged(catalog, ts, walPath));
+        assertTrue(e.getMessage().contains("page 0 of " + ts.filePath()), e.getMessage());
+        assertTrue(e.getCause() instanceof CorruptPageException);
+    }
+
+
+    @Test
+    void oversizedRowIsRejectedBeforeAPageIsAdded() {
+        TestCatalogManager catalog = new TestCatalogManager();
+        StorageManager storage = new StorageManager(catalog);
+        TableSchema ts = new TableSchema("wide", List.of(new ColumnSchema("doc", DataType.VARCHAR, 20000)), "target/test-wide.tbl");
+        new File(ts.filePath()).delete();
+        storage.createTable(ts);
+        storage.insert("wide", new Record(List.of("small")));
+        int pages = storage.pageCount("wide");
+        Record huge = new Record(List.of("x".repeat(StorageManager.PAGE_SIZE)));
+        assertThrows(IllegalArgumentException.class, () -> storage.insert("wide", huge));
+        assertEquals(pages, storage.pageCount("wide"));
+        assertEquals(1, storage.scanTable("wide").size());
+        storage.close();
+    }
 }
@@ -0,0 +1,138 @@
+package db.engine.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class WriteAheadLogTest {
+
+    private static List<LogRecord> readAll(String path) throws Exception {
+        List<LogRecord> out = new ArrayList<>();
+        WriteAheadLog.read(path, out::add);
+        return out;
+    }
+
+    @Test
+    void recordsRoundTripAndATornTailIsDropped() throws Exception {
+        File f = new File("target/test-wal-roundtrip.log");
+        f.delete();
+        long end;
+        try (WriteAheadLog wal = new WriteAheadLog(f.getPath(), 0)) {
+            long a = wal.logInsert(1, "data/a.tbl", 0, 3, new byte[] {1, 2, 3});
+            long b = wal.logDelete(1, "data/b.tbl", 7, 0, new byte[] {9});
+            wal.commit(1);
+            assertTrue(a < b && b < wal.appendedLsn());
+            assertEquals(wal.appendedLsn(), wal.durableLsn());
+            end = wal.appendedLsn();
+        }
+        List<LogRecord> recs = readAll(f.getPath());
+        assertEquals(3, recs.size());
+        assertEquals(LogRecord.Type.INSERT, recs.get(0).type());
+        assertEquals("data/a.tbl", recs.get(0).filePath());
+        assertEquals(3, recs.get(0).slotId());
+        assertArrayEquals(new byte[] {1, 2, 3}, recs.get(0).payload());
+        assertEquals("data/b.tbl", recs.get(1).filePath());
+        assertEquals(7, recs.get(1).pageId());
+        assertEquals(LogRecord.Type.COMMIT, recs.get(2).type());
+        assertEquals(end, recs.get(2).lsn());
+
+        // A half-written record at the tail (crash mid-append) is ignored and cut on reopen
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(40);
+            raf.writeInt(12345);
+            raf.write(new byte[5]);
+        }
+        assertEquals(3, readAll(f.getPath()).size());
+        try (WriteAheadLog wal = new WriteAheadLog(f.getPath(), 0)) {
+            assertEquals(end, wal.appendedLsn());
+            wal.logInsert(2, "data/a.tbl", 1, 0, new byte[] {4}); // path is still known to the log
+            wal.commit(2);
+        }
+        recs = readAll(f.getPath());
+        assertEquals(5, recs.size());
+        assertEquals("data/a.tbl", recs.get(3).filePath());
+    }
+
+    @Test
+    void truncateEmptiesTheLogButLsnsKeepGrowing() throws Exception {
+        File f = new File("target/test-wal-truncate.log");
+        f.delete();
+        try (WriteAheadLog wal = new WriteAheadLog(f.getPath(), 0)) {
+            wal.logInsert(1, "data/a.tbl", 0, 0, new byte[100]);
+            wal.commit(1);
+            long before = wal.appendedLsn();
+            wal.truncate(before);
+            assertTrue(wal.size() < 100, "only the file dictionary is left: " + wal.size());
+            assertEquals(0, readAll(f.getPath()).size());
+            long next = wal.logInsert(2, "data/a.tbl", 0, 1, new byte[10]);
+            wal.commit(2);
+            assertTrue(next > before);
+        }
+        List<LogRecord> recs = readAll(f.getPath());
+        assertEquals(2, recs.size());
+        assertEquals("data/a.tbl", recs.get(0).filePath()); // restated after the cut
+        try (WriteAheadLog wal = new WriteAheadLog(f.getPath(), 0)) {
+            assertEquals(recs.get(1).lsn(), wal.appendedLsn());
+        }
+    }
+
+    @Test
+    void partialTruncateKeepsLaterRecordsAndTheirLsns() throws Exception {
+        File f = new File("target/test-wal-cut.log");
+        f.delete();
+        try (WriteAheadLog wal = new WriteAheadLog(f.getPath(), 0)) {
+            for (int i = 0; i < 50; i++) {
+                wal.logInsert(i, "data/a.tbl", 0, i, new byte[64]);
+                wal.commit(i);
+            }
+            long cut = wal.appendedLsn();
+            long kept = wal.logInsert(50, "data/a.tbl", 1, 0, new byte[] {7}); // not yet forced when the file is swapped
+            wal.truncate(cut);
+            wal.logDelete(50, "data/a.tbl", 1, 0, new byte[] {7});
+            wal.commit(50);
+            List<LogRecord> recs = readAll(f.getPath());
+            assertEquals(3, recs.size());
+            assertEquals(kept, recs.get(0).lsn());
+            assertEquals("data/a.tbl", recs.get(0).filePath());
+            assertArrayEquals(new byte[] {7}, recs.get(1).payload());
+            assertTrue(wal.size() < 200);
+        }
+    }
+
+    @Test
+    void concurrentCommitsShareForces() throws Exception {
+        File f = new File("target/test-wal-group.log");
+        f.delete();
+        int threads = 8, perThread = 25;
+        try (WriteAheadLog wal = new WriteAheadLog(f.getPath(), 2000)) {
+            java.util.concurrent.atomic.AtomicReference<Throwable> failure = new java.util.concurrent.atomic.AtomicReference<>();
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                workers[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            long txn = id * 1000L + i;
+                            long lsn = wal.logInsert(txn, "data/g.tbl", id, i, new byte[] {(byte) i});
+                            wal.commit(txn);
+                            if (wal.durableLsn() < lsn) throw new AssertionError("commit returned before its record was durable");
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread w : workers) w.join();
+            if (failure.get() != null) throw new AssertionError(failure.get());
+            assertEquals(threads * perThread, wal.commits());
+            assertTrue(wal.syncs() < wal.commits(), "syncs=" + wal.syncs());
+        }
+        assertEquals(2 * threads * perThread, readAll(f.getPath()).size());
+    }
+}